@@ -0,0 +1,89 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Path;
+import java.util.List;
+
+// BulkCreateResources creates every resource in a manifest (see
+// ResourceManifest for the format) and writes the outcome of each row to a
+// result file, by default the manifest's path plus ".results.csv":
+//
+//   gradle run --args="resources.csv"
+//
+// Rerunning the same manifest is safe: rows created before are reported
+// as "exists". SDM_BULK_CONCURRENCY sets how many creates may be in flight
+// (8 by default) and SDM_BULK_RATE how many may start per second (10).
+// SDM_BULK_PORTS, a range such as 20000-29999, gives resources that don't
+// set a port override a free one from that range.
+public class BulkCreateResources {
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        if (args.length < 1) {
+            System.out.println("usage: BulkCreateResources <manifest> [result file]");
+            return;
+        }
+
+        try {
+            // Create the SDM Client
+            var opts = new ClientOptions();
+            var client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            Path manifest = Path.of(args[0]);
+            Path results =
+                    args.length > 1
+                            ? Path.of(args[1])
+                            : manifest.resolveSibling(manifest.getFileName() + ".results.csv");
+            List<ResourceManifest.Row> rows = ResourceManifest.read(manifest);
+            System.out.printf("Creating %d resources from %s\n", rows.size(), manifest);
+
+            var provisioner = new BulkProvisioner(client);
+            String concurrency = System.getenv("SDM_BULK_CONCURRENCY");
+            if (concurrency != null) {
+                provisioner.setConcurrency(Integer.parseInt(concurrency));
+            }
+            String rate = System.getenv("SDM_BULK_RATE");
+            if (rate != null) {
+                double perSecond = Double.parseDouble(rate);
+                provisioner.setRate(perSecond, (int) Math.max(1, Math.ceil(perSecond)));
+            }
+            String ports = System.getenv("SDM_BULK_PORTS");
+            if (ports != null) {
+                String[] range = ports.split("-");
+                var allocator =
+                        PortAllocator.load(
+                                client.resources().list(""),
+                                Integer.parseInt(range[0].trim()),
+                                Integer.parseInt(range[range.length - 1].trim()));
+                System.out.printf("Assigning port overrides from %s\n", allocator);
+                provisioner.setPortAllocator(allocator);
+            }
+
+            var summary = provisioner.provision(rows, results);
+            System.out.println(summary);
+            System.out.printf("Results written to %s\n", results);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
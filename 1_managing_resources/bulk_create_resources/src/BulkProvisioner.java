@@ -0,0 +1,377 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// BulkProvisioner creates the resources of a manifest concurrently. At most
+// concurrency creates are in flight at once, and a TokenBucket keeps them
+// under rate per second however quickly the API answers.
+//
+// Creates that fail with a transient error (by default RateLimitException or
+// InternalException) are retried by a Retrier, up to maxAttempts times; a
+// rate limit also pauses the bucket, so the other workers back off too. A
+// create that fails with AlreadyExistsException is recorded as "exists".
+// That is what a rerun of a partly applied manifest sees for the rows that
+// were created before, and what a retry sees when an earlier attempt failed
+// but went through.
+//
+// Each row's outcome is appended to a CSV result file as it finishes:
+//
+//   line,type,name,status,id,port,attempts,millis,error
+//
+// where status is created, exists, failed, or invalid for rows that don't
+// describe a resource.
+//
+// With a PortAllocator, rows of types that take a port override but don't
+// set one get a free port from it, and rows that set one claim it first, so
+// parallel creates never pick the same port. A port the row was given is
+// given back if the row fails, or if its resource turns out to exist already and so
+// has a port of its own. A create that fails because something created
+// since the allocator was loaded holds the port, as setPortTaken
+// recognizes, leaves that port taken and tries again with another.
+public class BulkProvisioner {
+    public enum Status {
+        CREATED,
+        EXISTS,
+        FAILED,
+        INVALID
+    }
+
+    // How often results are flushed to the result file.
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final Function<Resource, Resource> create;
+    private int concurrency = 8;
+    private double rate = 10;
+    private int burst = 10;
+    private final Retrier retrier = new Retrier();
+    private Predicate<RuntimeException> portTaken = e -> false;
+    private PortAllocator ports;
+
+    public BulkProvisioner(Client client) {
+        this(
+                resource ->
+                        client.resources()
+                                .withDeadlineAfter(30, TimeUnit.SECONDS)
+                                .create(resource)
+                                .getResource());
+    }
+
+    // Creates resources with create, which returns the created resource.
+    public BulkProvisioner(Function<Resource, Resource> create) {
+        this.create = create;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    // The most creates started per second, and how many may be started at
+    // once after a quiet spell.
+    public void setRate(double rate, int burst) {
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        retrier.setMaxAttempts(maxAttempts);
+    }
+
+    public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+        retrier.setBackoff(initialBackoff, maxBackoff);
+    }
+
+    // Which failed creates are worth retrying.
+    public void setRetryable(Predicate<RuntimeException> retryable) {
+        retrier.setRetryable(retryable);
+    }
+
+    // Which failed creates failed because the port override is in use. By
+    // default none are taken for a port conflict, so a failed create gives
+    // its port back and isn't tried with another.
+    public void setPortTaken(Predicate<RuntimeException> portTaken) {
+        this.portTaken = portTaken;
+    }
+
+    // Assigns port overrides from ports, which may be shared with other
+    // provisioners running at the same time.
+    public void setPortAllocator(PortAllocator ports) {
+        this.ports = ports;
+    }
+
+    // Creates the resources of rows and writes a result for each to
+    // resultFile. Returns once every row has a result.
+    public Summary provision(List<ResourceManifest.Row> rows, Path resultFile)
+            throws IOException, InterruptedException {
+        TokenBucket bucket = new TokenBucket(rate, burst);
+        Semaphore inFlight = new Semaphore(concurrency);
+        ExecutorService workers = Workers.fixed(concurrency, "bulk-provisioner");
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        try (BufferedWriter out = Files.newBufferedWriter(resultFile, StandardCharsets.UTF_8)) {
+            out.write("line,type,name,status,id,port,attempts,millis,error\n");
+            for (ResourceManifest.Row row : rows) {
+                inFlight.acquire();
+                workers.execute(
+                        () -> {
+                            try {
+                                Result result = provision(row, bucket, summary);
+                                summary.record(result, out);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+            }
+            inFlight.acquire(concurrency);
+            if (summary.writeError != null) {
+                throw summary.writeError;
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        summary.seconds = (System.nanoTime() - start) / 1e9;
+        return summary;
+    }
+
+    private Result provision(ResourceManifest.Row row, TokenBucket bucket, Summary summary) {
+        long start = System.nanoTime();
+        Result result = new Result(row);
+        Resource resource;
+        try {
+            resource = row.toResource();
+        } catch (IllegalArgumentException e) {
+            return result.finish(Status.INVALID, null, e.getMessage(), start);
+        }
+
+        // The port this row took from ports, and whether ports picked it.
+        int claimed = 0;
+        boolean picked = false;
+        if (ports != null && PortAllocator.hasPortOverride(resource)) {
+            result.port = PortAllocator.portOverride(resource);
+            if (result.port == 0) {
+                picked = true;
+                try {
+                    claimed = ports.claim();
+                } catch (IllegalStateException e) {
+                    return result.finish(Status.FAILED, null, e.getMessage(), start);
+                }
+                PortAllocator.setPortOverride(resource, claimed);
+                result.port = claimed;
+            } else if (result.port > 0 && ports.claim(result.port)) {
+                claimed = result.port;
+            }
+            // A port the row sets that is already in use is most likely the
+            // row's own resource from an earlier run, so the create goes
+            // ahead and the API decides.
+        }
+
+        for (int conflicts = 1; ; conflicts++) {
+            int attempts = result.attempts;
+            create(resource, result, bucket, summary, start);
+            if (claimed == 0 || result.status == Status.CREATED) {
+                return result;
+            }
+            if (result.status == Status.EXISTS) {
+                // Unless an earlier attempt failed but went through, the
+                // resource is from an earlier run and has a port of its own.
+                if (picked && result.attempts == attempts + 1) {
+                    ports.release(claimed);
+                }
+                return result;
+            }
+            if (result.cause == null || !portTaken.test(result.cause)) {
+                ports.release(claimed);
+                return result;
+            }
+            // Something the allocator doesn't know about holds the port, so
+            // it stays taken; a port of the row's own can't be replaced.
+            if (!picked || conflicts >= retrier.getMaxAttempts()) {
+                return result;
+            }
+            try {
+                claimed = ports.claim();
+            } catch (IllegalStateException e) {
+                return result.finish(Status.FAILED, null, e.getMessage(), start);
+            }
+            PortAllocator.setPortOverride(resource, claimed);
+            result.port = claimed;
+            result.cause = null;
+        }
+    }
+
+    private Result create(
+            Resource resource, Result result, TokenBucket bucket, Summary summary, long start) {
+        Retrier.Listener attempts =
+                new Retrier.Listener() {
+                    public void onAttempt(int attempt) {
+                        result.attempts++;
+                    }
+
+                    public void onRetry(RuntimeException e) {
+                        summary.retries.incrementAndGet();
+                        if (e instanceof RateLimitException) {
+                            summary.rateLimited.incrementAndGet();
+                        }
+                    }
+                };
+        try {
+            Resource created = retrier.call(() -> create.apply(resource), bucket, attempts);
+            return result.finish(Status.CREATED, created.getId(), null, start);
+        } catch (AlreadyExistsException e) {
+            return result.finish(Status.EXISTS, null, null, start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result.finish(Status.FAILED, null, "interrupted", start);
+        } catch (RuntimeException e) {
+            result.cause = e;
+            return result.finish(Status.FAILED, null, e.toString(), start);
+        }
+    }
+
+    // The outcome of one row.
+    public static class Result {
+        private final ResourceManifest.Row row;
+        private Status status;
+        private String id;
+        private int port;
+        private int attempts;
+        private long millis;
+        private String error;
+        // The exception a failed create ended with.
+        private RuntimeException cause;
+
+        Result(ResourceManifest.Row row) {
+            this.row = row;
+        }
+
+        public ResourceManifest.Row getRow() {
+            return row;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        // The ID of the created resource, if it was created by this run.
+        public String getId() {
+            return id;
+        }
+
+        // The port override the row was created with, or 0.
+        public int getPort() {
+            return port;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        Result finish(Status status, String id, String error, long startNanos) {
+            this.status = status;
+            this.id = id;
+            this.error = error;
+            this.millis = (System.nanoTime() - startNanos) / 1_000_000;
+            return this;
+        }
+
+        String toCsv() {
+            return String.join(
+                    ",",
+                    Integer.toString(row.getLine()),
+                    ResourceManifest.csvCell(row.getType()),
+                    ResourceManifest.csvCell(row.getName()),
+                    status.name().toLowerCase(),
+                    ResourceManifest.csvCell(id),
+                    port > 0 ? Integer.toString(port) : "",
+                    Integer.toString(attempts),
+                    Long.toString(millis),
+                    ResourceManifest.csvCell(error));
+        }
+    }
+
+    // Counts of the results of a run.
+    public static class Summary {
+        private final long[] counts = new long[Status.values().length];
+        private long written;
+        private double seconds;
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        private IOException writeError;
+
+        public long count(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        synchronized void record(Result result, BufferedWriter out) {
+            counts[result.status.ordinal()]++;
+            if (writeError != null) {
+                return;
+            }
+            try {
+                out.write(result.toCsv());
+                out.write('\n');
+                if (++written % FLUSH_INTERVAL == 0) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                writeError = e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            long rows = 0;
+            for (long c : counts) {
+                rows += c;
+            }
+            return String.format(
+                    "%d rows in %.1f s (%.1f/s): %d created, %d already existed, %d failed,"
+                            + " %d invalid; %d retries, %d of them rate limited",
+                    rows,
+                    seconds,
+                    rows / seconds,
+                    count(Status.CREATED),
+                    count(Status.EXISTS),
+                    count(Status.FAILED),
+                    count(Status.INVALID),
+                    retries.get(),
+                    rateLimited.get());
+        }
+    }
+}
@@ -0,0 +1,164 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// BulkProvisionerBenchmark creates the resources of a synthetic manifest
+// against a fake API at increasing concurrency, without needing API keys:
+//
+//   gradle provisionBenchmark --args="1000"
+//
+// The argument is the number of rows (1,000 by default). The fake takes
+// LATENCY_MILLIS per create, rejects creates beyond SERVER_RATE per second
+// with RateLimitException, fails one in a hundred with InternalException,
+// and already holds a few of the manifest's resources. A handful of rows
+// are invalid. Every run must account for every row and create no
+// resource twice.
+public class BulkProvisionerBenchmark {
+    static final int[] CONCURRENCY = {1, 4, 16, 64};
+    static final long LATENCY_MILLIS = 20;
+    static final int SERVER_RATE = 400;
+    static final String[] TYPES = {"Postgres", "SSH", "Redis"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        Path dir = Files.createTempDirectory("bulk-provisioner-benchmark");
+        Path manifest = dir.resolve("resources.csv");
+        Path results = dir.resolve("results.csv");
+        try {
+            writeManifest(manifest, count);
+            List<ResourceManifest.Row> rows = ResourceManifest.read(manifest);
+
+            // A client rate above the server's shows rate-limit handling; the
+            // last run stays under it.
+            for (int concurrency : CONCURRENCY) {
+                run(rows, results, concurrency, 1_000);
+            }
+            run(rows, results, 64, SERVER_RATE * 0.9);
+        } finally {
+            Files.deleteIfExists(manifest);
+            Files.deleteIfExists(results);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    static void run(List<ResourceManifest.Row> rows, Path results, int concurrency, double rate)
+            throws Exception {
+        FakeResourceApi api = new FakeResourceApi();
+        BulkProvisioner provisioner = new BulkProvisioner(api::create);
+        provisioner.setConcurrency(concurrency);
+        provisioner.setRate(rate, concurrency);
+        provisioner.setBackoff(Duration.ofMillis(50), Duration.ofSeconds(2));
+        BulkProvisioner.Summary summary = provisioner.provision(rows, results);
+        System.out.printf(
+                "concurrency %2d, rate %4.0f/s: %s; %d creates rejected by the server\n",
+                concurrency, rate, summary, api.rejected.get());
+
+        long accounted = 0;
+        for (BulkProvisioner.Status status : BulkProvisioner.Status.values()) {
+            accounted += summary.count(status);
+        }
+        if (accounted != rows.size() || Files.readAllLines(results).size() != rows.size() + 1) {
+            throw new IllegalStateException("not every row has a result");
+        }
+        if (api.duplicates.get() != 0) {
+            throw new IllegalStateException("a resource was created twice");
+        }
+    }
+
+    static void writeManifest(Path manifest, int count) throws Exception {
+        Random random = new Random(1);
+        try (BufferedWriter out = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            out.write("type,name,hostname,port,username,password,database,tags\n");
+            for (int i = 0; i < count; i++) {
+                String type = TYPES[i % TYPES.length];
+                String port = Integer.toString(type.equals("SSH") ? 22 : 5432);
+                if (i % 200 == 199) {
+                    port = "not-a-port";
+                }
+                out.write(
+                        String.join(
+                                ",",
+                                type,
+                                "region-2-" + type.toLowerCase() + "-" + i,
+                                "host-" + i + ".region-2.internal",
+                                port,
+                                "svc",
+                                type.equals("SSH") ? "" : "pw-" + random.nextInt(1_000_000),
+                                type.equals("Postgres") ? "app" : "",
+                                "\"env=prod;region=2;team=team-" + i % 7 + "\""));
+                out.write('\n');
+            }
+        }
+    }
+
+    // Stands in for client.resources().create. Resources whose names end in
+    // a multiple of 50 already exist.
+    static class FakeResourceApi {
+        final Map<String, Resource> byName = new ConcurrentHashMap<>();
+        final AtomicLong ids = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        private long windowStart = System.nanoTime();
+        private int windowCount;
+
+        Resource create(Resource resource) {
+            if (!admit()) {
+                rejected.incrementAndGet();
+                throw new RateLimitException("rate limit exceeded");
+            }
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalException("interrupted");
+            }
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                throw new InternalException("transient failure");
+            }
+            String name = resource.getName();
+            if (name.endsWith("0") && Integer.parseInt(name.replaceAll(".*-", "")) % 50 == 0) {
+                throw new AlreadyExistsException("resource " + name + " already exists");
+            }
+            Resource created = resource.clone();
+            created.setId("rs-" + Long.toHexString(0x10000 + ids.incrementAndGet()));
+            if (byName.putIfAbsent(name, created) != null) {
+                duplicates.incrementAndGet();
+                throw new AlreadyExistsException("resource " + name + " already exists");
+            }
+            return created;
+        }
+
+        // Admits SERVER_RATE creates per second, in windows of 100 ms.
+        private synchronized boolean admit() {
+            long now = System.nanoTime();
+            if (now - windowStart >= 100_000_000L) {
+                windowStart = now;
+                windowCount = 0;
+            }
+            return ++windowCount <= SERVER_RATE / 10;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.lang.reflect.Method;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// PortAllocator hands out port overrides between first and last that no
+// other resource uses. It is loaded once from the existing resources, one
+// bit per port, so the whole range fits in 8 KB; after that, claims and
+// releases are compare-and-set operations on single words of the bitmap,
+// and any number of threads can create resources without picking the same
+// port or asking the API which ports are taken.
+//
+// claim starts looking at the word the last claim came from, so while the
+// range has room it finds a free port in the first word or two it reads.
+//
+// Resources created elsewhere after the allocator was loaded aren't known to
+// it; ports they took will fail to create and should be claimed with
+// claim(port) so they aren't handed out again.
+public class PortAllocator {
+    private static final Map<Class<?>, Optional<Method>> GETTERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Optional<Method>> SETTERS = new ConcurrentHashMap<>();
+
+    private final int first;
+    private final int last;
+    private final AtomicLongArray used;
+    private final AtomicInteger free;
+    // The word the last claim came from.
+    private final AtomicInteger hint = new AtomicInteger();
+
+    // Builds an allocator for first to last, with the ports set in used
+    // (indexed by port number) already taken.
+    public PortAllocator(int first, int last, BitSet used) {
+        if (first < 1 || last > 65535 || first > last) {
+            throw new IllegalArgumentException("bad port range " + first + "-" + last);
+        }
+        this.first = first;
+        this.last = last;
+        int size = last - first + 1;
+        BitSet bits = used.get(first, last + 1);
+        // Bits past the end of the range are taken, so claim never returns
+        // them.
+        bits.set(size, (size + 63) / 64 * 64);
+        long[] words = bits.toLongArray();
+        this.used = new AtomicLongArray((size + 63) / 64);
+        for (int i = 0; i < words.length; i++) {
+            this.used.set(i, words[i]);
+        }
+        this.free = new AtomicInteger(size - bits.get(0, size).cardinality());
+    }
+
+    // Builds an allocator for first to last from the port overrides of
+    // resources, which is typically client.resources().list("").
+    public static PortAllocator load(Iterable<Resource> resources, int first, int last) {
+        BitSet used = new BitSet();
+        for (Resource resource : resources) {
+            int port = portOverride(resource);
+            if (port > 0) {
+                used.set(port);
+            }
+        }
+        return new PortAllocator(first, last, used);
+    }
+
+    // Takes a free port. Throws IllegalStateException if every port in the
+    // range is taken.
+    public int claim() {
+        int words = used.length();
+        int start = hint.get();
+        for (int i = 0; i < words; i++) {
+            int w = start + i < words ? start + i : start + i - words;
+            long word = used.get(w);
+            while (word != -1L) {
+                // The lowest clear bit.
+                long bit = ~word & (word + 1);
+                if (used.compareAndSet(w, word, word | bit)) {
+                    free.decrementAndGet();
+                    if (w != start) {
+                        hint.set(w);
+                    }
+                    return first + w * 64 + Long.numberOfTrailingZeros(bit);
+                }
+                word = used.get(w);
+            }
+        }
+        throw new IllegalStateException("no free port between " + first + " and " + last);
+    }
+
+    // Takes port if it is free. Returns whether it was; ports outside the
+    // range are never taken here and always return true.
+    public boolean claim(int port) {
+        if (port < first || port > last) {
+            return true;
+        }
+        int w = (port - first) / 64;
+        long bit = 1L << (port - first);
+        while (true) {
+            long word = used.get(w);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (used.compareAndSet(w, word, word | bit)) {
+                free.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // Gives back a port taken with claim, for a resource that wasn't created.
+    public void release(int port) {
+        if (port < first || port > last) {
+            return;
+        }
+        int w = (port - first) / 64;
+        long bit = 1L << (port - first);
+        while (true) {
+            long word = used.get(w);
+            if ((word & bit) == 0) {
+                return;
+            }
+            if (used.compareAndSet(w, word, word & ~bit)) {
+                free.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    public boolean isUsed(int port) {
+        if (port < first || port > last) {
+            return false;
+        }
+        return (used.get((port - first) / 64) & (1L << (port - first))) != 0;
+    }
+
+    // How many ports are left.
+    public int free() {
+        return free.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ports %d-%d, %d free", first, last, free());
+    }
+
+    // Whether resource's type takes a port override.
+    public static boolean hasPortOverride(Resource resource) {
+        return GETTERS.computeIfAbsent(resource.getClass(), c -> method(c, "getPortOverride"))
+                .isPresent();
+    }
+
+    // The port override of resource, or 0 if it has none or its type
+    // doesn't take one.
+    public static int portOverride(Resource resource) {
+        Optional<Method> getter =
+                GETTERS.computeIfAbsent(resource.getClass(), c -> method(c, "getPortOverride"));
+        if (getter.isEmpty()) {
+            return 0;
+        }
+        try {
+            return ((Number) getter.get().invoke(resource)).intValue();
+        } catch (ReflectiveOperationException e) {
+            return 0;
+        }
+    }
+
+    // Sets the port override of resource. Returns false if its type doesn't
+    // take one.
+    public static boolean setPortOverride(Resource resource, int port) {
+        Optional<Method> setter =
+                SETTERS.computeIfAbsent(
+                        resource.getClass(), c -> method(c, "setPortOverride", int.class));
+        if (setter.isEmpty()) {
+            return false;
+        }
+        try {
+            setter.get().invoke(resource, port);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Optional<Method> method(Class<?> cls, String name, Class<?>... parameters) {
+        try {
+            return Optional.of(cls.getMethod(name, parameters));
+        } catch (NoSuchMethodException e) {
+            return Optional.empty();
+        }
+    }
+}
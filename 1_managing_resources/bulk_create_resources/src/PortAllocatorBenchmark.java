@@ -0,0 +1,297 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// PortAllocatorBenchmark compares picking port overrides at random, as the
+// role_grant_migration example does, with a PortAllocator, without needing
+// API keys:
+//
+//   gradle portBenchmark
+//
+// It starts from EXISTING resources spread over the ports from FIRST to
+// LAST and then:
+//
+//   - creates CREATES more from THREADS threads, picking a random port and
+//     trying again while it is taken, and then from a PortAllocator;
+//   - times claim and release at 1 to 16 threads, and checks that no port is
+//     handed out twice;
+//   - runs two BulkProvisioners at once with one allocator against a fake
+//     API that fails any create whose port is taken, after ELSEWHERE
+//     resources the allocator doesn't know about have been created.
+public class PortAllocatorBenchmark {
+    static final int FIRST = 3000;
+    static final int LAST = 22999;
+    static final int EXISTING = 12_000;
+    static final int CREATES = 6_000;
+    static final int THREADS = 16;
+    static final int ELSEWHERE = 500;
+
+    public static void main(String[] args) throws Exception {
+        List<Resource> existing = existingResources();
+
+        long start = System.nanoTime();
+        PortAllocator allocator = PortAllocator.load(existing, FIRST, LAST);
+        System.out.printf(
+                "loaded %d resources in %.1f ms: %s\n",
+                existing.size(), (System.nanoTime() - start) / 1e6, allocator);
+
+        pickPorts("random", existing, () -> FIRST + ThreadLocalRandom.current().nextInt(20000));
+        PortAllocator picker = PortAllocator.load(existing, FIRST, LAST);
+        pickPorts("allocator", existing, picker::claim);
+
+        for (int threads : new int[] {1, 4, 16}) {
+            claimAndRelease(PortAllocator.load(existing, FIRST, LAST), threads);
+        }
+
+        provisionInParallel(existing);
+    }
+
+    // Resources of a few types with ports spread at random over the range.
+    static List<Resource> existingResources() {
+        Random random = new Random(1);
+        BitSet taken = new BitSet();
+        List<Resource> resources = new ArrayList<>();
+        while (resources.size() < EXISTING) {
+            int port = FIRST + random.nextInt(LAST - FIRST + 1);
+            if (taken.get(port)) {
+                continue;
+            }
+            taken.set(port);
+            Resource resource = resources.size() % 2 == 0 ? new Postgres() : new SSH();
+            resource.setName("existing-" + resources.size());
+            PortAllocator.setPortOverride(resource, port);
+            resources.add(resource);
+        }
+        return resources;
+    }
+
+    interface PortSource {
+        int next();
+    }
+
+    // Creates CREATES resources from THREADS threads against a fake port
+    // registry, counting the picks that were already taken.
+    static void pickPorts(String name, List<Resource> existing, PortSource source)
+            throws InterruptedException {
+        Map<Integer, Boolean> registry = new ConcurrentHashMap<>();
+        for (Resource resource : existing) {
+            registry.put(PortAllocator.portOverride(resource), true);
+        }
+        AtomicLong collisions = new AtomicLong();
+        long start = System.nanoTime();
+        runThreads(
+                THREADS,
+                () -> {
+                    for (int i = 0; i < CREATES / THREADS; i++) {
+                        while (registry.putIfAbsent(source.next(), true) != null) {
+                            collisions.incrementAndGet();
+                        }
+                    }
+                });
+        System.out.printf(
+                "%-9s: %d creates from %d threads, %d of them on a port in use, %.1f ms\n",
+                name,
+                CREATES / THREADS * THREADS,
+                THREADS,
+                collisions.get(),
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    // Times claims and releases, and checks every claimed port is unique.
+    static void claimAndRelease(PortAllocator allocator, int threads) throws Exception {
+        int free = allocator.free();
+        int perThread = free / threads;
+        BitSet[] claimed = new BitSet[threads];
+        long start = System.nanoTime();
+        runThreads(
+                threads,
+                index -> {
+                    BitSet mine = new BitSet();
+                    for (int round = 0; round < 10; round++) {
+                        int[] ports = new int[perThread];
+                        for (int i = 0; i < perThread; i++) {
+                            ports[i] = allocator.claim();
+                        }
+                        for (int i = 0; i < perThread; i++) {
+                            if (round < 9) {
+                                allocator.release(ports[i]);
+                            } else {
+                                mine.set(ports[i]);
+                            }
+                        }
+                    }
+                    claimed[index] = mine;
+                });
+        long nanos = System.nanoTime() - start;
+
+        BitSet all = new BitSet();
+        long total = 0;
+        for (BitSet mine : claimed) {
+            total += mine.cardinality();
+            all.or(mine);
+        }
+        if (all.cardinality() != total || allocator.free() != free - total) {
+            throw new IllegalStateException("a port was handed out twice");
+        }
+        System.out.printf(
+                "%2d threads: %d claims and releases, %.0f ns each, no port handed out twice\n",
+                threads,
+                20L * perThread * threads,
+                nanos / (20.0 * perThread * threads) * threads);
+    }
+
+    // Two provisioners share an allocator; the fake API fails creates on a
+    // port that is taken.
+    static void provisionInParallel(List<Resource> existing) throws Exception {
+        PortAllocator allocator = PortAllocator.load(existing, FIRST, LAST);
+        Map<Integer, String> ports = new ConcurrentHashMap<>();
+        for (Resource resource : existing) {
+            ports.put(PortAllocator.portOverride(resource), resource.getName());
+        }
+        // Ports taken behind the allocator's back; each may be tried once.
+        for (int port = FIRST; ports.size() < EXISTING + ELSEWHERE; port += 7) {
+            ports.putIfAbsent(port, "elsewhere");
+        }
+        Set<Integer> conflicted = ConcurrentHashMap.newKeySet();
+        AtomicLong collisions = new AtomicLong();
+        Path dir = Files.createTempDirectory("port-allocator-benchmark");
+        try {
+            BulkProvisioner.Summary[] summaries = new BulkProvisioner.Summary[2];
+            runThreads(
+                    2,
+                    index -> {
+                        List<ResourceManifest.Row> rows = new ArrayList<>();
+                        for (int i = 0; i < CREATES / 2; i++) {
+                            Map<String, Object> fields = new LinkedHashMap<>();
+                            fields.put("type", "Postgres");
+                            fields.put("name", "batch-" + index + "-" + i);
+                            fields.put("hostname", "db-" + i + ".internal");
+                            fields.put("port", "5432");
+                            rows.add(new ResourceManifest.Row(i + 2, fields));
+                        }
+                        BulkProvisioner provisioner =
+                                new BulkProvisioner(
+                                        resource -> {
+                                            int port = PortAllocator.portOverride(resource);
+                                            String holder =
+                                                    ports.putIfAbsent(port, resource.getName());
+                                            if (holder != null) {
+                                                if (!holder.equals("elsewhere")
+                                                        || !conflicted.add(port)) {
+                                                    collisions.incrementAndGet();
+                                                }
+                                                throw new PortInUseException(port);
+                                            }
+                                            Resource created = resource.clone();
+                                            created.setId("rs-" + resource.getName());
+                                            return created;
+                                        });
+                        provisioner.setConcurrency(16);
+                        provisioner.setRate(1e6, 1000);
+                        provisioner.setPortAllocator(allocator);
+                        provisioner.setPortTaken(e -> e instanceof PortInUseException);
+                        summaries[index] =
+                                provisioner.provision(rows, dir.resolve(index + ".csv"));
+                    });
+            for (BulkProvisioner.Summary summary : summaries) {
+                System.out.println("provisioner: " + summary);
+            }
+            System.out.printf(
+                    "two provisioners sharing an allocator: %d creates on a port taken"
+                            + " elsewhere, %d on a port handed out twice, %s\n",
+                    conflicted.size(), collisions.get(), allocator);
+            if (collisions.get() != 0) {
+                throw new IllegalStateException("a port was handed out twice");
+            }
+            for (BulkProvisioner.Summary summary : summaries) {
+                if (summary.count(BulkProvisioner.Status.CREATED) != CREATES / 2) {
+                    throw new IllegalStateException("a row wasn't created");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(dir.resolve("0.csv"));
+            Files.deleteIfExists(dir.resolve("1.csv"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    interface Task {
+        void run(int index) throws Exception;
+    }
+
+    static void runThreads(int threads, Runnable task) throws InterruptedException {
+        try {
+            runThreads(threads, index -> task.run());
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Runs task on threads threads, started together, and rethrows the first
+    // failure.
+    static void runThreads(int threads, Task task) throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        Exception[] failure = new Exception[1];
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                try {
+                                    go.await();
+                                    task.run(index);
+                                } catch (Exception e) {
+                                    synchronized (failure) {
+                                        if (failure[0] == null) {
+                                            failure[0] = e;
+                                        }
+                                    }
+                                }
+                            });
+            thread.start();
+            started.add(thread);
+        }
+        go.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    // The fake API's failure for a create on a port that is taken.
+    static class PortInUseException extends RuntimeException {
+        PortInUseException(int port) {
+            super("port " + port + " is in use");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// BulkDeleteResources deletes every resource a filter matches, such as the
+// resources the role_grant_migration example leaves behind. By default it
+// only lists what it would delete:
+//
+//   gradle run --args="name:exampleResource-*"
+//   gradle run --args="name:exampleResource-* --apply"
+//
+// Progress is recorded in a journal, bulk-delete.journal unless
+// SDM_BULK_DELETE_JOURNAL names another file; running the same command
+// again after an interruption carries on where it stopped. Once every match
+// is deleted the journal is renamed to <journal>.done, so the next run
+// lists again. SDM_BULK_CONCURRENCY sets how many
+// deletes may be in flight (8 by default) and SDM_BULK_RATE how many may
+// start per second (10).
+public class BulkDeleteResources {
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        if (args.length < 1 || args[0].isBlank()) {
+            System.out.println("usage: BulkDeleteResources <filter> [--apply]");
+            return;
+        }
+        String filter = args[0];
+        List<String> flags = List.of(args).subList(1, args.length);
+
+        try {
+            // Create the SDM Client
+            var opts = new ClientOptions();
+            var client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            var deleter = new BulkDeleter(client);
+            String concurrency = System.getenv("SDM_BULK_CONCURRENCY");
+            if (concurrency != null) {
+                deleter.setConcurrency(Integer.parseInt(concurrency));
+            }
+            String rate = System.getenv("SDM_BULK_RATE");
+            if (rate != null) {
+                double perSecond = Double.parseDouble(rate);
+                deleter.setRate(perSecond, (int) Math.max(1, Math.ceil(perSecond)));
+            }
+
+            if (!flags.contains("--apply")) {
+                long count =
+                        deleter.dryRun(
+                                filter,
+                                r ->
+                                        System.out.printf(
+                                                "would delete %s %s %s\n",
+                                                r.getId(),
+                                                r.getClass().getSimpleName(),
+                                                r.getName()));
+                System.out.printf(
+                        "%d resources match %s; add --apply to delete them\n", count, filter);
+                return;
+            }
+
+            String journal = System.getenv("SDM_BULK_DELETE_JOURNAL");
+            Path journalFile = Path.of(journal == null ? "bulk-delete.journal" : journal);
+            var summary = deleter.delete(filter, journalFile);
+            System.out.println(summary);
+            if (Files.exists(journalFile)) {
+                System.out.printf("Progress recorded in %s\n", journalFile);
+            } else {
+                System.out.printf("Done; the journal was moved to %s.done\n", journalFile);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
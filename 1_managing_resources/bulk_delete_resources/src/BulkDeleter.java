@@ -0,0 +1,289 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// BulkDeleter deletes every resource a filter matches. The matches are
+// recorded as they are listed and queued for a pool of concurrency workers,
+// so deletes start while the listing goes on and the listing, which is much
+// quicker, is soon finished. No more than rate deletes start per second;
+// rate limits and internal errors are retried by a Retrier, with jittered
+// exponential backoff, and a rate limit also pauses the other workers.
+//
+// Progress goes to a DeleteJournal. A run with the journal of one that was
+// interrupted skips the resources that one deleted, and if that one had
+// finished listing, it doesn't list again but works through the recorded
+// matches. A resource that is already gone is recorded as such, not as a
+// failure, so a delete that went through but wasn't recorded is harmless.
+// Once every match is deleted the journal is retired to journalFile.done,
+// and a journal left complete by an earlier run is retired before listing,
+// so a later run with the same filter lists again.
+public class BulkDeleter {
+    // The resource calls a bulk delete makes.
+    public interface Api {
+        Iterable<Resource> list(String filter);
+
+        void delete(String id);
+
+        static Api of(Client client) {
+            return new Api() {
+                public Iterable<Resource> list(String filter) {
+                    return client.resources().list(filter);
+                }
+
+                public void delete(String id) {
+                    client.resources().withDeadlineAfter(30, TimeUnit.SECONDS).delete(id);
+                }
+            };
+        }
+    }
+
+    // Tells a worker there are no more IDs to delete.
+    private static final String END = "";
+
+    private final Api api;
+    private int concurrency = 8;
+    private double rate = 10;
+    private int burst = 10;
+    private final Retrier retrier = new Retrier();
+
+    public BulkDeleter(Client client) {
+        this(Api.of(client));
+    }
+
+    public BulkDeleter(Api api) {
+        this.api = api;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setRate(double rate, int burst) {
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        retrier.setMaxAttempts(maxAttempts);
+    }
+
+    public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+        retrier.setBackoff(initialBackoff, maxBackoff);
+    }
+
+    // Lists what a delete of filter would delete, passing each match to
+    // match, and returns how many there are. Nothing is deleted or recorded.
+    public long dryRun(String filter, Consumer<Resource> match) {
+        long count = 0;
+        for (Resource resource : api.list(filter)) {
+            match.accept(resource);
+            count++;
+        }
+        return count;
+    }
+
+    // Deletes every resource filter matches, recording progress in
+    // journalFile. Returns once every match has been deleted or has failed.
+    public Summary delete(String filter, Path journalFile)
+            throws IOException, InterruptedException {
+        if (filter.isBlank()) {
+            throw new IllegalArgumentException("a bulk delete needs a filter");
+        }
+        TokenBucket bucket = new TokenBucket(rate, burst);
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        ExecutorService workers = Workers.fixed(concurrency, "bulk-deleter");
+        Summary summary = new Summary();
+        AtomicReference<IOException> journalError = new AtomicReference<>();
+        long start = System.nanoTime();
+        DeleteJournal journal = DeleteJournal.open(journalFile, filter);
+        if (journal.isComplete()) {
+            journal.close();
+            DeleteJournal.retire(journalFile);
+            journal = DeleteJournal.open(journalFile, filter);
+        }
+        boolean complete;
+        try (DeleteJournal j = journal) {
+            try {
+                for (int i = 0; i < concurrency; i++) {
+                    workers.execute(() -> work(queue, j, bucket, summary, journalError));
+                }
+                queueMatches(filter, queue, j, summary);
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } finally {
+                workers.shutdownNow();
+            }
+            complete = j.isComplete();
+        }
+        summary.seconds = (System.nanoTime() - start) / 1e9;
+        if (journalError.get() != null) {
+            throw new IOException(
+                    "couldn't record progress in " + journalFile + "; " + summary,
+                    journalError.get());
+        }
+        if (complete) {
+            DeleteJournal.retire(journalFile);
+        }
+        return summary;
+    }
+
+    // Queues the matches that are left, from the journal if an earlier run
+    // listed them all and from a listing if not.
+    private void queueMatches(
+            String filter, BlockingQueue<String> queue, DeleteJournal journal, Summary summary)
+            throws IOException {
+        summary.resumed = journal.isListed();
+        if (journal.isListed()) {
+            for (String id : journal.getMatched().keySet()) {
+                summary.matched++;
+                enqueue(id, queue, journal, summary);
+            }
+        } else {
+            for (Resource resource : api.list(filter)) {
+                summary.matched++;
+                journal.match(resource.getId(), resource.getName());
+                enqueue(resource.getId(), queue, journal, summary);
+            }
+            journal.listed();
+        }
+        for (int i = 0; i < concurrency; i++) {
+            queue.add(END);
+        }
+    }
+
+    private static void enqueue(
+            String id, BlockingQueue<String> queue, DeleteJournal journal, Summary summary) {
+        if (journal.isDone(id)) {
+            summary.skipped.incrementAndGet();
+        } else {
+            queue.add(id);
+        }
+    }
+
+    // Deletes the IDs on queue until it reaches END. A journal that can't
+    // be written stops the worker, and the error is left in journalError.
+    private void work(
+            BlockingQueue<String> queue,
+            DeleteJournal journal,
+            TokenBucket bucket,
+            Summary summary,
+            AtomicReference<IOException> journalError) {
+        try {
+            while (true) {
+                String id = queue.take();
+                if (id.equals(END)) {
+                    return;
+                }
+                delete(id, journal, bucket, summary);
+            }
+        } catch (IOException e) {
+            journalError.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            // The run is being stopped; the journal says what's left.
+        }
+    }
+
+    private void delete(String id, DeleteJournal journal, TokenBucket bucket, Summary summary)
+            throws IOException, InterruptedException {
+        Retrier.Listener retries =
+                new Retrier.Listener() {
+                    public void onRetry(RuntimeException e) {
+                        summary.retries.incrementAndGet();
+                    }
+                };
+        try {
+            retrier.call(
+                    () -> {
+                        api.delete(id);
+                        return null;
+                    },
+                    bucket,
+                    retries);
+            journal.deleted(id);
+            summary.deleted.incrementAndGet();
+        } catch (NotFoundException e) {
+            journal.gone(id);
+            summary.gone.incrementAndGet();
+        } catch (RuntimeException e) {
+            journal.failed(id, e.toString());
+            summary.failed.incrementAndGet();
+        }
+    }
+
+    // Counts of what a run did.
+    public static class Summary {
+        private long matched;
+        private boolean resumed;
+        private final AtomicLong deleted = new AtomicLong();
+        private final AtomicLong gone = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private double seconds;
+
+        public long getMatched() {
+            return matched;
+        }
+
+        public long getDeleted() {
+            return deleted.get();
+        }
+
+        // Matches that were already gone when this run got to them.
+        public long getGone() {
+            return gone.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        // Matches an earlier run had already deleted.
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        // Matches this run didn't get to, because it was stopped.
+        public long getNotDone() {
+            return matched - deleted.get() - gone.get() - failed.get() - skipped.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d matched%s: %d deleted, %d already gone, %d failed, %d done before,"
+                            + " %d not done; %d retries, %.1f s",
+                    matched,
+                    resumed ? " (from the journal)" : "",
+                    deleted.get(),
+                    gone.get(),
+                    failed.get(),
+                    skipped.get(),
+                    getNotDone(),
+                    retries.get(),
+                    seconds);
+        }
+    }
+}
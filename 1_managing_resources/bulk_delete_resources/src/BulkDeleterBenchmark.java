@@ -0,0 +1,197 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// BulkDeleterBenchmark deletes the example resources of a fake
+// organization, one at a time and then with a BulkDeleter that is
+// interrupted part way and run again with its journal. It needs no API
+// keys:
+//
+//   gradle deleteBenchmark
+//
+// Each delete takes DELETE_MILLIS, the fake rejects deletes beyond
+// SERVER_RATE per second with RateLimitException and fails one in a hundred
+// with InternalException. The resumed run must not list again, every
+// example resource must end up deleted, and nothing else. A third run, once
+// more resources match, must list again and delete them.
+public class BulkDeleterBenchmark {
+    static final int RESOURCES = 10_000;
+    static final int SERIAL_DELETES = 300;
+    static final long DELETE_MILLIS = 10;
+    static final int SERVER_RATE = 400;
+    static final String FILTER = "name:exampleResource-*";
+
+    public static void main(String[] args) throws Exception {
+        FakeApi serialOrg = organization();
+        long start = System.nanoTime();
+        int serial = 0;
+        for (Resource resource : serialOrg.list(FILTER)) {
+            if (serial++ == SERIAL_DELETES) {
+                break;
+            }
+            while (true) {
+                try {
+                    serialOrg.delete(resource.getId());
+                    break;
+                } catch (RateLimitException | InternalException e) {
+                    // Try again.
+                }
+            }
+        }
+        double serialRate = SERIAL_DELETES / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("one at a time: %.0f deletes/s\n", serialRate);
+
+        FakeApi api = organization();
+        long matches = api.matching();
+        Path journal = Files.createTempFile("bulk-delete", ".journal");
+        Files.delete(journal);
+        try {
+            BulkDeleter deleter = new BulkDeleter(api);
+            deleter.setConcurrency(32);
+            deleter.setRate(SERVER_RATE * 0.9, 32);
+            long wouldDelete = deleter.dryRun(FILTER, r -> {});
+            System.out.printf("dry run: %d resources would be deleted\n", wouldDelete);
+
+            // Interrupt the first run part way.
+            BulkDeleter.Summary[] first = new BulkDeleter.Summary[1];
+            Thread run =
+                    new Thread(
+                            () -> {
+                                try {
+                                    first[0] = deleter.delete(FILTER, journal);
+                                } catch (InterruptedException e) {
+                                    System.out.println("first run interrupted");
+                                } catch (Exception e) {
+                                    e.printStackTrace();
+                                }
+                            });
+            start = System.nanoTime();
+            run.start();
+            Thread.sleep(4_000);
+            run.interrupt();
+            run.join();
+            System.out.printf(
+                    "after %.1f s: %d of %d deleted\n",
+                    (System.nanoTime() - start) / 1e9, matches - api.matching(), matches);
+
+            long lists = api.lists.get();
+            BulkDeleter.Summary second = deleter.delete(FILTER, journal);
+            System.out.printf("resumed: %s; %d listings\n", second, api.lists.get() - lists);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(
+                    "bulk delete: %d resources in %.1f s (%.0f/s, %.0fx one at a time)\n",
+                    matches, seconds, matches / seconds, matches / seconds / serialRate);
+
+            if (wouldDelete != matches
+                    || api.lists.get() != lists
+                    || api.matching() != 0
+                    || api.resources.size() != RESOURCES - matches
+                    || second.getFailed() != 0) {
+                throw new IllegalStateException("the bulk delete didn't resume cleanly");
+            }
+
+            // The finished journal was retired; new matches are found.
+            for (int i = 0; i < 100; i++) {
+                Redis redis = new Redis();
+                redis.setId(String.format("rs-new-%03d", i));
+                redis.setName("exampleResource-new-" + i);
+                api.resources.put(redis.getId(), redis);
+            }
+            BulkDeleter.Summary third = deleter.delete(FILTER, journal);
+            System.out.printf("next run: %s\n", third);
+            if (third.getDeleted() != 100 || api.matching() != 0) {
+                throw new IllegalStateException("the next run didn't list again");
+            }
+        } finally {
+            Files.deleteIfExists(journal);
+            Files.deleteIfExists(journal.resolveSibling(journal.getFileName() + ".done"));
+        }
+    }
+
+    // Half the resources are named like the ones role_grant_migration
+    // leaves behind.
+    static FakeApi organization() {
+        FakeApi api = new FakeApi();
+        for (int i = 0; i < RESOURCES; i++) {
+            Redis redis = new Redis();
+            redis.setId(String.format("rs-%06d", i));
+            redis.setName(i % 2 == 0 ? "exampleResource-" + (1000000 + i) : "redis-" + i);
+            api.resources.put(redis.getId(), redis);
+        }
+        return api;
+    }
+
+    // An in-memory organization. list supports "name:prefix*" filters.
+    static class FakeApi implements BulkDeleter.Api {
+        final Map<String, Resource> resources = new ConcurrentSkipListMap<>();
+        final AtomicLong lists = new AtomicLong();
+        private long windowStart = System.nanoTime();
+        private int windowCount;
+
+        public Iterable<Resource> list(String filter) {
+            lists.incrementAndGet();
+            String prefix = filter.substring("name:".length(), filter.length() - 1);
+            List<Resource> found = new ArrayList<>();
+            for (Resource resource : resources.values()) {
+                if (resource.getName().startsWith(prefix)) {
+                    found.add(resource.clone());
+                }
+            }
+            return found;
+        }
+
+        public void delete(String id) {
+            if (!admit()) {
+                throw new RateLimitException("rate limit exceeded");
+            }
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                throw new InternalException("transient failure");
+            }
+            try {
+                Thread.sleep(DELETE_MILLIS);
+            } catch (InterruptedException e) {
+                // The delete goes through even if the caller gives up.
+                Thread.currentThread().interrupt();
+            }
+            if (resources.remove(id) == null) {
+                throw new NotFoundException("no resource " + id);
+            }
+        }
+
+        long matching() {
+            return resources.values().stream()
+                    .filter(r -> r.getName().startsWith("exampleResource-"))
+                    .count();
+        }
+
+        // Admits SERVER_RATE deletes per second, in windows of 100 ms.
+        private synchronized boolean admit() {
+            long now = System.nanoTime();
+            if (now - windowStart >= 100_000_000L) {
+                windowStart = now;
+                windowCount = 0;
+            }
+            return ++windowCount <= SERVER_RATE / 10;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// DeleteJournal is the append-only record of a bulk delete, from which an
+// interrupted run picks up where it stopped. It is a text file of
+// tab-separated lines:
+//
+//   filter  <filter>         the filter the run deletes, written first
+//   match   <id>  <name>     a resource the filter matched
+//   listed                   every match has been recorded
+//   deleted <id>             the resource was deleted
+//   gone    <id>             the resource was already gone
+//   failed  <id>  <error>    the delete failed; a later run tries again
+//
+// Each line is flushed as it is written, so a run that is killed loses at
+// most the lines of the deletes in flight; those are tried again and
+// reported as gone. A last line without a line break was cut short and is
+// ignored.
+//
+// A journal whose matches were all listed and deleted is complete, and
+// retire moves it aside, so that the next run with the filter lists again
+// instead of finding nothing left to do.
+public class DeleteJournal implements AutoCloseable {
+    private final String filter;
+    private final Map<String, String> matched = new LinkedHashMap<>();
+    private final Set<String> done = new HashSet<>();
+    private boolean listed;
+    private final BufferedWriter out;
+    private boolean closed;
+
+    private DeleteJournal(Path file, String filter) throws IOException {
+        this.filter = filter;
+        String recorded = null;
+        boolean torn = false;
+        if (Files.exists(file)) {
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            String[] lines = text.split("\n", -1);
+            // The text after the last line break is a line cut short, or
+            // nothing.
+            torn = !lines[lines.length - 1].isEmpty();
+            for (int i = 0; i < lines.length - 1; i++) {
+                String[] fields = lines[i].split("\t", 3);
+                switch (fields[0]) {
+                    case "filter":
+                        recorded = fields.length > 1 ? fields[1] : "";
+                        break;
+                    case "match":
+                        matched.put(fields[1], fields.length > 2 ? fields[2] : "");
+                        break;
+                    case "listed":
+                        listed = true;
+                        break;
+                    case "deleted":
+                    case "gone":
+                        done.add(fields[1]);
+                        break;
+                    default:
+                        // failed: nothing to remember.
+                }
+            }
+            if (recorded != null && !recorded.equals(filter)) {
+                throw new IllegalArgumentException(
+                        file + " is the journal of a delete of \"" + recorded + "\"");
+            }
+        }
+        this.out =
+                Files.newBufferedWriter(
+                        file,
+                        StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        if (torn) {
+            out.write('\n');
+        }
+        if (recorded == null) {
+            write("filter", filter);
+        }
+    }
+
+    // Opens the journal of a delete of filter, reading what an earlier run
+    // recorded. Throws IllegalArgumentException if the journal is for
+    // another filter.
+    public static DeleteJournal open(Path file, String filter) throws IOException {
+        return new DeleteJournal(file, filter);
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    // Whether an earlier run recorded every match.
+    public synchronized boolean isListed() {
+        return listed;
+    }
+
+    // The matches recorded so far, by ID, with their names.
+    public synchronized Map<String, String> getMatched() {
+        return new LinkedHashMap<>(matched);
+    }
+
+    public synchronized boolean isDone(String id) {
+        return done.contains(id);
+    }
+
+    // Whether every match was listed and has been deleted or was gone.
+    public synchronized boolean isComplete() {
+        return listed && done.containsAll(matched.keySet());
+    }
+
+    // Records a match, and returns false if it was recorded before.
+    public synchronized boolean match(String id, String name) throws IOException {
+        if (matched.containsKey(id)) {
+            return false;
+        }
+        matched.put(id, name);
+        write("match", id, name.replace('\t', ' ').replace('\n', ' '));
+        return true;
+    }
+
+    public synchronized void listed() throws IOException {
+        listed = true;
+        write("listed");
+    }
+
+    public synchronized void deleted(String id) throws IOException {
+        done.add(id);
+        write("deleted", id);
+    }
+
+    public synchronized void gone(String id) throws IOException {
+        done.add(id);
+        write("gone", id);
+    }
+
+    public synchronized void failed(String id, String error) throws IOException {
+        write("failed", id, error.replace('\t', ' ').replace('\n', ' '));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    // Renames the journal file to file.done, replacing an older one.
+    public static Path retire(Path file) throws IOException {
+        Path done = file.resolveSibling(file.getFileName() + ".done");
+        Files.move(file, done, StandardCopyOption.REPLACE_EXISTING);
+        return done;
+    }
+
+    private void write(String... fields) throws IOException {
+        if (closed) {
+            throw new IOException("the journal is closed");
+        }
+        out.write(String.join("\t", fields));
+        out.write('\n');
+        out.flush();
+    }
+}
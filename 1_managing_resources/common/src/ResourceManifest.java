@@ -0,0 +1,357 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONObject;
+
+// ResourceManifest reads the resources to create from a CSV file with a
+// header row, or from JSON lines. Every row has a "type", the SDK class of
+// the resource (Postgres, SSH, RDP, AmazonEKS, ...), and a "name"; the other
+// fields are set with the matching setters, so any resource type and field
+// the SDK has can be used without changes here:
+//
+//   type,name,hostname,port,username,password,database,tags
+//   Postgres,orders-db,orders.internal,5432,app,secret,orders,env=prod;team=db
+//
+//   {"type": "SSH", "name": "bastion-1", "hostname": "10.0.0.5", "port": 22,
+//    "username": "ops", "tags": {"env": "prod"}}
+//
+// Field names match setters ignoring case and underscores, so "port_override"
+// and "portOverride" both call setPortOverride. In CSV, empty cells are left
+// unset and tags are written as key=value pairs separated by semicolons.
+public class ResourceManifest {
+    private static final Map<Class<?>, Map<String, Method>> SETTERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<String, Method>> GETTERS = new ConcurrentHashMap<>();
+
+    // One resource to create.
+    public static class Row {
+        private final int line;
+        private final Map<String, Object> fields;
+
+        Row(int line, Map<String, Object> fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+
+        // The line of the manifest the row starts on.
+        public int getLine() {
+            return line;
+        }
+
+        public String getType() {
+            return stringField("type");
+        }
+
+        public String getName() {
+            return stringField("name");
+        }
+
+        public Object get(String field) {
+            return fields.get(field);
+        }
+
+        // The fields the row sets, other than type.
+        public Set<String> fields() {
+            Set<String> names = new LinkedHashSet<>(fields.keySet());
+            names.remove("type");
+            return names;
+        }
+
+        // Builds the resource the row describes. Throws
+        // IllegalArgumentException if the type or a field isn't known, or a
+        // value can't be converted.
+        public Resource toResource() {
+            String type = getType();
+            if (type == null || getName() == null) {
+                throw new IllegalArgumentException("type and name are required");
+            }
+            Resource resource;
+            try {
+                Class<?> cls = Class.forName("com.strongdm.api." + type);
+                if (!Resource.class.isAssignableFrom(cls)) {
+                    throw new IllegalArgumentException(type + " is not a resource type");
+                }
+                resource = (Resource) cls.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("unknown resource type " + type);
+            }
+            apply(resource);
+            return resource;
+        }
+
+        // Sets the row's fields, other than type, on resource, which must be
+        // of a type that has them.
+        public void apply(Resource resource) {
+            String type = resource.getClass().getSimpleName();
+            Map<String, Method> setters = setters(resource.getClass());
+            for (Map.Entry<String, Object> field : fields.entrySet()) {
+                if (field.getKey().equals("type")) {
+                    continue;
+                }
+                Method setter = setters.get(normalize(field.getKey()));
+                if (setter == null) {
+                    throw new IllegalArgumentException(
+                            type + " has no field " + field.getKey());
+                }
+                try {
+                    setter.invoke(resource, convert(field.getValue(), setter));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalArgumentException(
+                            "can't set " + field.getKey() + ": " + e.getCause(), e);
+                }
+            }
+        }
+
+        private String stringField(String name) {
+            Object value = fields.get(name);
+            return value == null ? null : value.toString();
+        }
+    }
+
+    // Reads a manifest, as JSON lines if the file name ends in .jsonl or
+    // .json and as CSV otherwise. Rows that can't be turned into resources
+    // are still returned; toResource reports what's wrong with them.
+    public static List<Row> read(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+                return readJsonLines(in);
+            }
+            return readCsv(in);
+        }
+    }
+
+    static List<Row> readJsonLines(BufferedReader in) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        String line;
+        int number = 0;
+        while ((line = in.readLine()) != null) {
+            number++;
+            if (line.isBlank()) {
+                continue;
+            }
+            JSONObject json = new JSONObject(line);
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (String key : json.keySet()) {
+                Object value = json.get(key);
+                if (value instanceof JSONObject) {
+                    value = ((JSONObject) value).toMap();
+                }
+                fields.put(key, value);
+            }
+            rows.add(new Row(number, fields));
+        }
+        return rows;
+    }
+
+    static List<Row> readCsv(BufferedReader in) throws IOException {
+        Csv csv = new Csv(in);
+        List<String> header = csv.next();
+        if (header == null) {
+            return List.of();
+        }
+        List<Row> rows = new ArrayList<>();
+        while (true) {
+            int line = csv.line + 1;
+            List<String> cells = csv.next();
+            if (cells == null) {
+                return rows;
+            }
+            if (cells.size() == 1 && cells.get(0).isEmpty()) {
+                continue;
+            }
+            Map<String, Object> fields = new LinkedHashMap<>();
+            for (int i = 0; i < cells.size() && i < header.size(); i++) {
+                if (!cells.get(i).isEmpty()) {
+                    fields.put(header.get(i).trim(), cells.get(i));
+                }
+            }
+            rows.add(new Row(line, fields));
+        }
+    }
+
+    // Quotes a value for a CSV cell if it needs it.
+    static String csvCell(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0
+                && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // Reads field, named as in a manifest, from resource. Throws
+    // IllegalArgumentException if resource's type has no such field.
+    public static Object getField(Resource resource, String field) {
+        Method getter = getters(resource.getClass()).get(normalize(field));
+        if (getter == null) {
+            throw new IllegalArgumentException(
+                    resource.getClass().getSimpleName() + " has no field " + field);
+        }
+        try {
+            return getter.invoke(resource);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("can't read " + field + ": " + e.getCause(), e);
+        }
+    }
+
+    private static Map<String, Method> getters(Class<?> cls) {
+        return GETTERS.computeIfAbsent(
+                cls,
+                c -> {
+                    Map<String, Method> getters = new HashMap<>();
+                    for (Method m : c.getMethods()) {
+                        if (m.getName().startsWith("get") && m.getParameterCount() == 0) {
+                            getters.put(normalize(m.getName().substring(3)), m);
+                        }
+                    }
+                    return getters;
+                });
+    }
+
+    private static Map<String, Method> setters(Class<?> cls) {
+        return SETTERS.computeIfAbsent(
+                cls,
+                c -> {
+                    Map<String, Method> setters = new HashMap<>();
+                    for (Method m : c.getMethods()) {
+                        if (m.getName().startsWith("set") && m.getParameterCount() == 1) {
+                            setters.put(normalize(m.getName().substring(3)), m);
+                        }
+                    }
+                    return setters;
+                });
+    }
+
+    private static String normalize(String field) {
+        return field.replace("_", "").toLowerCase();
+    }
+
+    // Converts a manifest value, which is a string from CSV or a JSON value,
+    // to the setter's parameter type.
+    private static Object convert(Object value, Method setter) {
+        Class<?> type = setter.getParameterTypes()[0];
+        String text = value.toString().trim();
+        if (type == String.class) {
+            return value.toString();
+        } else if (type == int.class || type == Integer.class) {
+            return Integer.parseInt(text);
+        } else if (type == long.class || type == Long.class) {
+            return Long.parseLong(text);
+        } else if (type == boolean.class || type == Boolean.class) {
+            if (!text.equalsIgnoreCase("true") && !text.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("not a boolean: " + text);
+            }
+            return Boolean.parseBoolean(text);
+        } else if (Map.class.isAssignableFrom(type)) {
+            Map<String, String> map = new LinkedHashMap<>();
+            if (value instanceof Map) {
+                ((Map<?, ?>) value).forEach((k, v) -> map.put(k.toString(), v.toString()));
+                return map;
+            }
+            for (String pair : text.split(";")) {
+                if (pair.isBlank()) {
+                    continue;
+                }
+                int eq = pair.indexOf('=');
+                if (eq < 0) {
+                    map.put(pair.trim(), "");
+                } else {
+                    map.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+                }
+            }
+            return map;
+        }
+        throw new IllegalArgumentException(
+                "can't set " + setter.getName() + " from a manifest, it takes " + type);
+    }
+
+    // Reads RFC 4180 CSV: quoted cells may hold commas, doubled quotes and
+    // line breaks.
+    private static class Csv {
+        private final BufferedReader in;
+        int line;
+
+        Csv(BufferedReader in) {
+            this.in = in;
+        }
+
+        List<String> next() throws IOException {
+            String text = in.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+            List<String> cells = new ArrayList<>();
+            StringBuilder cell = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == text.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    // A line break inside quotes.
+                    String more = in.readLine();
+                    if (more == null) {
+                        throw new IOException("unterminated quote at line " + line);
+                    }
+                    line++;
+                    cell.append('\n');
+                    text = more;
+                    i = 0;
+                    continue;
+                }
+                char c = text.charAt(i++);
+                if (quoted) {
+                    if (c != '"') {
+                        cell.append(c);
+                    } else if (i < text.length() && text.charAt(i) == '"') {
+                        cell.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    cells.add(cell.toString());
+                    cell.setLength(0);
+                } else {
+                    cell.append(c);
+                }
+            }
+            cells.add(cell.toString());
+            return cells;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Retrier makes an API call and tries it again when it fails with an error
+// worth retrying: by default a rate limit or an internal error. Each
+// attempt takes a token from a TokenBucket first. After a failure the next
+// attempt waits for a backoff that doubles each time up to maxBackoff,
+// jittered within its upper half so callers that failed together don't
+// retry together, and a rate limit also pauses the bucket, which holds back
+// every caller sharing it.
+//
+// Deadline timeouts aren't retried by default. A write that timed out may
+// still have gone through, and only the caller knows whether repeating it
+// is safe; setRetryable can add them. An internal error can hide a write
+// that went through in the same way, so a retried create may find that its
+// resource already exists.
+//
+// A Retrier only holds its settings and can be shared between threads.
+public class Retrier {
+    // Told about the attempts of a call, to count them.
+    public interface Listener {
+        // Before each attempt; the first is 1.
+        default void onAttempt(int attempt) {}
+
+        // After an attempt failed and before the backoff for the next one.
+        default void onRetry(RuntimeException e) {}
+    }
+
+    private static final Listener NONE = new Listener() {};
+
+    private int maxAttempts = 5;
+    private Duration initialBackoff = Duration.ofMillis(250);
+    private Duration maxBackoff = Duration.ofSeconds(10);
+    private Predicate<RuntimeException> retryable =
+            e -> e instanceof RateLimitException || e instanceof InternalException;
+
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    // Which failed attempts are worth retrying.
+    public void setRetryable(Predicate<RuntimeException> retryable) {
+        this.retryable = retryable;
+    }
+
+    public <T> T call(Supplier<T> call, TokenBucket bucket) throws InterruptedException {
+        return call(call, bucket, NONE);
+    }
+
+    // Makes call until an attempt succeeds, and returns what it returned.
+    // Throws what the last attempt threw if that isn't worth retrying or
+    // there have been maxAttempts.
+    public <T> T call(Supplier<T> call, TokenBucket bucket, Listener listener)
+            throws InterruptedException {
+        long backoff = initialBackoff.toNanos();
+        for (int attempt = 1; ; attempt++) {
+            bucket.acquire();
+            listener.onAttempt(attempt);
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (!retryable.test(e) || attempt >= maxAttempts) {
+                    throw e;
+                }
+                listener.onRetry(e);
+                long sleep = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                if (e instanceof RateLimitException) {
+                    bucket.pause(Duration.ofNanos(sleep));
+                }
+                TimeUnit.NANOSECONDS.sleep(sleep);
+                backoff = Math.min(maxBackoff.toNanos(), backoff * 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// TokenBucket limits how often requests are made: it holds up to burst
+// tokens, refilled at a steady rate, and each request takes one. Callers
+// that find the bucket empty reserve a future token and sleep until it is
+// due, outside the lock, so waiting threads are released in order and at
+// the configured rate.
+//
+// pause stops handing out tokens for a while, for when the server says
+// requests are coming too fast.
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    // When tokens were last added; in the future while paused.
+    private long refilledAt = System.nanoTime();
+
+    public TokenBucket(double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("perSecond and burst must be positive");
+        }
+        this.tokensPerNano = perSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    // Takes a token, waiting for one if the bucket is empty or paused.
+    public void acquire() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            refill(now);
+            tokens -= 1;
+            wait = Math.max(0, refilledAt - now);
+            if (tokens < 0) {
+                wait += (long) Math.ceil(-tokens / tokensPerNano);
+            }
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    // Hands out no tokens for the given time, and starts again with an
+    // empty bucket so requests resume at the steady rate rather than in a
+    // burst. Requests already waiting for a token keep their place.
+    public synchronized void pause(Duration duration) {
+        long now = System.nanoTime();
+        long until = now + duration.toNanos();
+        refill(now);
+        if (until - refilledAt > 0) {
+            tokens = Math.min(tokens, 0);
+            refilledAt = until;
+        }
+    }
+
+    private void refill(long now) {
+        if (now - refilledAt > 0) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Workers makes the thread pools bulk operations run their API calls on.
+public class Workers {
+    private Workers() {}
+
+    // A pool of threads threads named name. They are daemon threads, so a
+    // run that is given up on doesn't keep the program alive.
+    public static ExecutorService fixed(int threads, String name) {
+        return Executors.newFixedThreadPool(
+                threads,
+                r -> {
+                    Thread t = new Thread(r, name);
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+// ReconcileResources makes the resources of the organization match a
+// manifest (see ResourceManifest for the format). By default it only
+// prints the plan, the changes it would make:
+//
+//   gradle run --args="resources.csv"
+//   gradle run --args="resources.csv --apply"
+//
+// --prune also deletes the resources the manifest doesn't name, and
+// --force-secrets writes the secrets rows set even where nothing else
+// differs, since the API doesn't return them to compare. Set
+// SDM_RECONCILE_FILTER to a resource filter, such as
+// "tags:managed-by=manifest", to limit which resources are looked at.
+// SDM_RECONCILE_IGNORE lists fields never to compare, separated by commas.
+// SDM_RECONCILE_CONCURRENCY and SDM_RECONCILE_RATE bound the writes made.
+public class ReconcileResources {
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        if (args.length < 1) {
+            System.out.println("usage: ReconcileResources <manifest> [--apply] [--prune]");
+            return;
+        }
+        List<String> flags = List.of(args).subList(1, args.length);
+
+        try {
+            // Create the SDM Client
+            var opts = new ClientOptions();
+            var client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            var reconciler = new Reconciler(client);
+            reconciler.setPrune(flags.contains("--prune"));
+            reconciler.setForceSecrets(flags.contains("--force-secrets"));
+            String filter = System.getenv("SDM_RECONCILE_FILTER");
+            if (filter != null) {
+                reconciler.setFilter(filter);
+            }
+            String ignore = System.getenv("SDM_RECONCILE_IGNORE");
+            if (ignore != null) {
+                reconciler.setIgnoredFields(Set.of(ignore.split("\\s*,\\s*")));
+            }
+            String concurrency = System.getenv("SDM_RECONCILE_CONCURRENCY");
+            if (concurrency != null) {
+                reconciler.setConcurrency(Integer.parseInt(concurrency));
+            }
+            String rate = System.getenv("SDM_RECONCILE_RATE");
+            if (rate != null) {
+                double perSecond = Double.parseDouble(rate);
+                reconciler.setRate(perSecond, (int) Math.max(1, Math.ceil(perSecond)));
+            }
+
+            var plan = reconciler.plan(ResourceManifest.read(Path.of(args[0])));
+            plan.print(System.out);
+            if (!flags.contains("--apply") || plan.isEmpty() || !plan.getErrors().isEmpty()) {
+                return;
+            }
+
+            var summary = reconciler.apply(plan);
+            for (String failure : summary.getFailures()) {
+                System.out.println("failed: " + failure);
+            }
+            System.out.println(summary);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
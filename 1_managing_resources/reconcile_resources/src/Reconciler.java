@@ -0,0 +1,573 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// Reconciler makes the resources of an organization match a manifest (see
+// ResourceManifest), writing only what differs. plan reads the actual
+// resources once, as a stream from the API, and compares each with the
+// manifest row of the same name, field by field; the result says what would
+// be created, updated, replaced or deleted and why. apply carries out a
+// plan, with at most concurrency writes in flight and no more than rate
+// started per second, retrying rate limits and internal errors with a
+// Retrier like BulkProvisioner does.
+//
+// Only the fields a row sets are compared and written, so fields the
+// manifest leaves out keep whatever value they have. A resource whose type
+// differs from its row's is replaced: deleted and created again. Resources
+// the manifest doesn't name are left alone unless prune is set; the filter
+// narrows which resources are considered at all, e.g. to those with a
+// "managed-by" tag. Secrets such as passwords, which the API doesn't return,
+// are written along with a resource's other changes but don't make it
+// differ by themselves, unless forceSecrets is set.
+public class Reconciler {
+    public enum Action {
+        CREATE,
+        UPDATE,
+        REPLACE,
+        DELETE
+    }
+
+    // The resource calls a reconciler makes.
+    public interface Api {
+        Iterable<Resource> list(String filter);
+
+        Resource create(Resource resource);
+
+        Resource update(Resource resource);
+
+        void delete(String id);
+
+        static Api of(Client client) {
+            return new Api() {
+                public Iterable<Resource> list(String filter) {
+                    return client.resources().list(filter);
+                }
+
+                public Resource create(Resource resource) {
+                    return client.resources()
+                            .withDeadlineAfter(30, TimeUnit.SECONDS)
+                            .create(resource)
+                            .getResource();
+                }
+
+                public Resource update(Resource resource) {
+                    return client.resources()
+                            .withDeadlineAfter(30, TimeUnit.SECONDS)
+                            .update(resource)
+                            .getResource();
+                }
+
+                public void delete(String id) {
+                    client.resources().withDeadlineAfter(30, TimeUnit.SECONDS).delete(id);
+                }
+            };
+        }
+    }
+
+    // Values of fields matching this are not printed in plans, and unless
+    // forceSecrets is set, they aren't compared when the API returns none.
+    private static final Pattern SENSITIVE =
+            Pattern.compile("(?i).*(password|secret|token|privatekey|accesskey).*");
+
+    private final Api api;
+    private String filter = "";
+    private boolean prune;
+    private boolean forceSecrets;
+    private Set<String> ignoredFields = Set.of();
+    private int concurrency = 8;
+    private double rate = 10;
+    private int burst = 10;
+    private final Retrier retrier = new Retrier();
+
+    public Reconciler(Client client) {
+        this(Api.of(client));
+    }
+
+    public Reconciler(Api api) {
+        this.api = api;
+    }
+
+    // The filter the actual resources are listed with, "" for all of them.
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    // Whether resources the manifest doesn't name are deleted.
+    public void setPrune(boolean prune) {
+        this.prune = prune;
+    }
+
+    // Whether secrets the API doesn't return are written anyway. They can't
+    // be compared, so each plan then updates every resource whose row sets
+    // one.
+    public void setForceSecrets(boolean forceSecrets) {
+        this.forceSecrets = forceSecrets;
+    }
+
+    // Fields never compared.
+    public void setIgnoredFields(Set<String> ignoredFields) {
+        this.ignoredFields = new HashSet<>();
+        for (String field : ignoredFields) {
+            this.ignoredFields.add(normalize(field));
+        }
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setRate(double rate, int burst) {
+        this.rate = rate;
+        this.burst = burst;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        retrier.setMaxAttempts(maxAttempts);
+    }
+
+    public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+        retrier.setBackoff(initialBackoff, maxBackoff);
+    }
+
+    // Works out the changes that would make the actual resources match
+    // rows. Rows that don't describe a resource, or that repeat a name, are
+    // reported as errors of the plan.
+    public Plan plan(List<ResourceManifest.Row> rows) {
+        Plan plan = new Plan();
+        Map<String, ResourceManifest.Row> byName = new LinkedHashMap<>();
+        Map<String, Resource> desired = new HashMap<>();
+        for (ResourceManifest.Row row : rows) {
+            Resource resource;
+            try {
+                resource = row.toResource();
+            } catch (IllegalArgumentException e) {
+                plan.errors.add("line " + row.getLine() + ": " + e.getMessage());
+                continue;
+            }
+            if (byName.putIfAbsent(row.getName(), row) != null) {
+                plan.errors.add(
+                        "line " + row.getLine() + ": " + row.getName() + " appears more than once");
+                continue;
+            }
+            desired.put(row.getName(), resource);
+        }
+
+        Set<String> found = new HashSet<>();
+        for (Resource actual : api.list(filter)) {
+            plan.listed++;
+            ResourceManifest.Row row = byName.get(actual.getName());
+            if (row == null) {
+                if (prune) {
+                    plan.changes.add(new Change(Action.DELETE, null, null, actual, List.of()));
+                }
+                continue;
+            }
+            found.add(actual.getName());
+            Resource want = desired.get(actual.getName());
+            if (!want.getClass().equals(actual.getClass())) {
+                plan.changes.add(new Change(Action.REPLACE, row, want, actual, List.of()));
+                continue;
+            }
+            List<FieldDiff> diffs = diff(row, want, actual);
+            if (diffs.isEmpty()) {
+                plan.unchanged++;
+            } else {
+                plan.changes.add(new Change(Action.UPDATE, row, want, actual, diffs));
+            }
+        }
+        for (ResourceManifest.Row row : byName.values()) {
+            if (!found.contains(row.getName())) {
+                Resource want = desired.get(row.getName());
+                plan.changes.add(new Change(Action.CREATE, row, want, null, List.of()));
+            }
+        }
+        return plan;
+    }
+
+    private List<FieldDiff> diff(ResourceManifest.Row row, Resource want, Resource actual) {
+        List<FieldDiff> diffs = new ArrayList<>();
+        for (String field : row.fields()) {
+            String key = normalize(field);
+            if (key.equals("name") || ignoredFields.contains(key)) {
+                continue;
+            }
+            Object to = ResourceManifest.getField(want, field);
+            Object from = ResourceManifest.getField(actual, field);
+            if (!forceSecrets
+                    && SENSITIVE.matcher(field).matches()
+                    && (from == null || from.equals(""))) {
+                // A secret the API doesn't return.
+                continue;
+            }
+            if (!Objects.equals(from, to)) {
+                diffs.add(new FieldDiff(field, from, to));
+            }
+        }
+        return diffs;
+    }
+
+    // Carries out plan. Throws IllegalStateException if the plan has errors.
+    public Summary apply(Plan plan) throws InterruptedException {
+        if (!plan.errors.isEmpty()) {
+            throw new IllegalStateException(
+                    "the plan has " + plan.errors.size() + " errors; fix the manifest first");
+        }
+        TokenBucket bucket = new TokenBucket(rate, burst);
+        Semaphore inFlight = new Semaphore(concurrency);
+        ExecutorService workers = Workers.fixed(concurrency, "reconciler");
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        try {
+            for (Change change : plan.changes) {
+                inFlight.acquire();
+                workers.execute(
+                        () -> {
+                            try {
+                                apply(change, bucket, summary);
+                                summary.applied(change.action);
+                            } catch (RuntimeException e) {
+                                summary.failed(change, e);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+            }
+            inFlight.acquire(concurrency);
+        } finally {
+            workers.shutdownNow();
+        }
+        summary.seconds = (System.nanoTime() - start) / 1e9;
+        return summary;
+    }
+
+    private void apply(Change change, TokenBucket bucket, Summary summary) {
+        switch (change.action) {
+            case CREATE:
+                create(change.desired, bucket, summary);
+                break;
+            case UPDATE:
+                Resource update = change.actual.clone();
+                change.row.apply(update);
+                call(() -> api.update(update), bucket, summary);
+                break;
+            case REPLACE:
+                delete(change.actual.getId(), bucket, summary);
+                try {
+                    create(change.desired, bucket, summary);
+                } catch (RuntimeException e) {
+                    throw new IllegalStateException(
+                            "deleted "
+                                    + change.actual.getId()
+                                    + " but couldn't create its replacement: "
+                                    + e,
+                            e);
+                }
+                break;
+            case DELETE:
+                delete(change.actual.getId(), bucket, summary);
+                break;
+        }
+    }
+
+    // Creates resource. A resource of the same name that exists although
+    // the plan didn't see it, for instance because the filter leaves it out,
+    // is a conflict; one that appears after a retried attempt is the
+    // resource that attempt created.
+    private void create(Resource resource, TokenBucket bucket, Summary summary) {
+        AtomicLong attempts = new AtomicLong();
+        try {
+            call(
+                    () -> {
+                        attempts.incrementAndGet();
+                        return api.create(resource);
+                    },
+                    bucket,
+                    summary);
+        } catch (AlreadyExistsException e) {
+            if (attempts.get() == 1) {
+                throw new IllegalStateException(
+                        "a resource named "
+                                + resource.getName()
+                                + " already exists outside what the plan listed",
+                        e);
+            }
+        }
+    }
+
+    private void delete(String id, TokenBucket bucket, Summary summary) {
+        try {
+            call(
+                    () -> {
+                        api.delete(id);
+                        return null;
+                    },
+                    bucket,
+                    summary);
+        } catch (NotFoundException e) {
+            // Already gone.
+        }
+    }
+
+    // Makes one write with the retrier, counting its attempts.
+    private <T> T call(Supplier<T> write, TokenBucket bucket, Summary summary) {
+        try {
+            return retrier.call(
+                    write,
+                    bucket,
+                    new Retrier.Listener() {
+                        public void onAttempt(int attempt) {
+                            summary.writes.incrementAndGet();
+                        }
+
+                        public void onRetry(RuntimeException e) {
+                            summary.retries.incrementAndGet();
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        }
+    }
+
+    private static String normalize(String field) {
+        return field.replace("_", "").toLowerCase();
+    }
+
+    // The changes that would make the actual resources match a manifest.
+    public static class Plan {
+        private final List<Change> changes = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private long listed;
+        private long unchanged;
+
+        public List<Change> getChanges() {
+            return Collections.unmodifiableList(changes);
+        }
+
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        public long count(Action action) {
+            return changes.stream().filter(c -> c.action == action).count();
+        }
+
+        // How many resources already match their rows.
+        public long getUnchanged() {
+            return unchanged;
+        }
+
+        public boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        // Prints each change, with the fields an update changes, then a
+        // count of each kind:
+        //
+        //   ~ update Postgres orders-db (rs-2b1c)
+        //       hostname: "orders.internal" -> "orders-2.internal"
+        //   + create SSH bastion-3
+        public void print(PrintStream out) {
+            for (String error : errors) {
+                out.printf("! %s\n", error);
+            }
+            for (Change change : changes) {
+                out.println(change);
+                for (FieldDiff diff : change.diffs) {
+                    out.printf("    %s\n", diff);
+                }
+            }
+            out.println(this);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Plan: %d to create, %d to update, %d to replace, %d to delete;"
+                            + " %d unchanged of %d listed; %d errors",
+                    count(Action.CREATE),
+                    count(Action.UPDATE),
+                    count(Action.REPLACE),
+                    count(Action.DELETE),
+                    unchanged,
+                    listed,
+                    errors.size());
+        }
+    }
+
+    // One resource to create, update, replace or delete.
+    public static class Change {
+        private static final Map<Action, String> SYMBOLS =
+                Map.of(
+                        Action.CREATE, "+",
+                        Action.UPDATE, "~",
+                        Action.REPLACE, "-/+",
+                        Action.DELETE, "-");
+
+        private final Action action;
+        private final ResourceManifest.Row row;
+        private final Resource desired;
+        private final Resource actual;
+        private final List<FieldDiff> diffs;
+
+        Change(
+                Action action,
+                ResourceManifest.Row row,
+                Resource desired,
+                Resource actual,
+                List<FieldDiff> diffs) {
+            this.action = action;
+            this.row = row;
+            this.desired = desired;
+            this.actual = actual;
+            this.diffs = diffs;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getName() {
+            return actual != null ? actual.getName() : row.getName();
+        }
+
+        // The ID of the resource changed, or null for a create.
+        public String getId() {
+            return actual != null ? actual.getId() : null;
+        }
+
+        public List<FieldDiff> getDiffs() {
+            return diffs;
+        }
+
+        @Override
+        public String toString() {
+            String type =
+                    action == Action.REPLACE
+                            ? actual.getClass().getSimpleName() + " -> " + row.getType()
+                            : (desired != null ? desired : actual).getClass().getSimpleName();
+            String id = getId() != null ? " (" + getId() + ")" : "";
+            return String.format(
+                    "%s %s %s %s%s",
+                    SYMBOLS.get(action), action.name().toLowerCase(), type, getName(), id);
+        }
+    }
+
+    // A field an update changes.
+    public static class FieldDiff {
+        private final String field;
+        private final Object from;
+        private final Object to;
+
+        FieldDiff(String field, Object from, Object to) {
+            this.field = field;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Object getFrom() {
+            return from;
+        }
+
+        public Object getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            if (SENSITIVE.matcher(field).matches()) {
+                return field + ": (sensitive)";
+            }
+            return field + ": " + quote(from) + " -> " + quote(to);
+        }
+
+        private static String quote(Object value) {
+            return value instanceof String ? '"' + (String) value + '"' : String.valueOf(value);
+        }
+    }
+
+    // What applying a plan did.
+    public static class Summary {
+        private final Map<Action, AtomicLong> applied = new LinkedHashMap<>();
+        private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private double seconds;
+
+        Summary() {
+            for (Action action : Action.values()) {
+                applied.put(action, new AtomicLong());
+            }
+        }
+
+        void applied(Action action) {
+            applied.get(action).incrementAndGet();
+        }
+
+        void failed(Change change, RuntimeException e) {
+            failures.add(change + ": " + e);
+        }
+
+        public long count(Action action) {
+            return applied.get(action).get();
+        }
+
+        // One line per change that failed.
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        // How many API writes were made, counting retries.
+        public long getWrites() {
+            return writes.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d created, %d updated, %d replaced, %d deleted, %d failed;"
+                            + " %d writes, %d retries, %.1f s",
+                    count(Action.CREATE),
+                    count(Action.UPDATE),
+                    count(Action.REPLACE),
+                    count(Action.DELETE),
+                    failures.size(),
+                    writes.get(),
+                    retries.get(),
+                    seconds);
+        }
+    }
+}
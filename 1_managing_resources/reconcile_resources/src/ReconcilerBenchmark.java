@@ -0,0 +1,265 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ReconcilerBenchmark brings a fake organization of RESOURCES resources in
+// line with a manifest that differs from it in a few hundred places, once
+// by updating every resource the manifest names and once with a Reconciler,
+// and counts the writes each makes. It needs no API keys:
+//
+//   gradle reconcileBenchmark
+//
+// Each write to the fake takes WRITE_MILLIS, and both approaches make
+// CONCURRENCY at once. Postgres rows set a password, which the fake, like
+// the API, doesn't list. After the reconciler has applied its plan,
+// planning again must find nothing to do.
+public class ReconcilerBenchmark {
+    static final int RESOURCES = 20_000;
+    static final long WRITE_MILLIS = 2;
+    static final int CONCURRENCY = 16;
+
+    public static void main(String[] args) throws Exception {
+        Path manifest = Files.createTempFile("reconciler-benchmark", ".csv");
+        try {
+            FakeApi blanketOrg = organization();
+            FakeApi reconciledOrg = organization();
+            writeManifest(manifest, blanketOrg);
+            List<ResourceManifest.Row> rows = ResourceManifest.read(manifest);
+
+            long start = System.nanoTime();
+            blanket(blanketOrg, rows);
+            System.out.printf(
+                    "blanket updates: %d writes in %.1f s\n",
+                    blanketOrg.writes.get(), (System.nanoTime() - start) / 1e9);
+
+            Reconciler reconciler = new Reconciler(reconciledOrg);
+            reconciler.setPrune(true);
+            reconciler.setConcurrency(CONCURRENCY);
+            reconciler.setRate(1e6, 1000);
+            start = System.nanoTime();
+            Reconciler.Plan plan = reconciler.plan(rows);
+            System.out.printf(
+                    "planned in %.0f ms: %s\n", (System.nanoTime() - start) / 1e6, plan);
+            printSample(plan);
+            Reconciler.Summary summary = reconciler.apply(plan);
+            System.out.printf(
+                    "reconciler: %d writes; %s\n", reconciledOrg.writes.get(), summary);
+
+            Reconciler.Plan again = reconciler.plan(rows);
+            System.out.println("planning again: " + again);
+            if (!again.isEmpty() || !summary.getFailures().isEmpty()) {
+                throw new IllegalStateException("the organization doesn't match the manifest");
+            }
+
+            // Passwords aren't listed, so forcing them updates every
+            // resource whose row sets one.
+            reconciler.setForceSecrets(true);
+            Reconciler.Plan forced = reconciler.plan(rows);
+            System.out.println("with forceSecrets: " + forced);
+            if (forced.isEmpty()) {
+                throw new IllegalStateException("forceSecrets didn't plan the passwords");
+            }
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    // Updates every resource the manifest names and creates the rest.
+    static void blanket(FakeApi api, List<ResourceManifest.Row> rows) throws Exception {
+        Map<String, Resource> byName = new HashMap<>();
+        for (Resource resource : api.list("")) {
+            byName.put(resource.getName(), resource);
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY);
+        for (ResourceManifest.Row row : rows) {
+            workers.execute(
+                    () -> {
+                        Resource actual = byName.get(row.getName());
+                        if (actual == null
+                                || !actual.getClass().getSimpleName().equals(row.getType())) {
+                            if (actual != null) {
+                                api.delete(actual.getId());
+                            }
+                            api.create(row.toResource());
+                        } else {
+                            Resource update = actual.clone();
+                            row.apply(update);
+                            api.update(update);
+                        }
+                    });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    static void printSample(Reconciler.Plan plan) {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        plan.print(new PrintStream(text, true, StandardCharsets.UTF_8));
+        String[] lines = text.toString(StandardCharsets.UTF_8).split("\n");
+        System.out.println("  first lines of the plan:");
+        for (int i = 0; i < 8 && i < lines.length; i++) {
+            System.out.println("  " + lines[i]);
+        }
+    }
+
+    static FakeApi organization() {
+        FakeApi api = new FakeApi();
+        for (int i = 0; i < RESOURCES; i++) {
+            Resource resource;
+            if (i % 3 == 0) {
+                Postgres postgres = new Postgres();
+                postgres.setHostname("db-" + i + ".internal");
+                postgres.setPort(5432);
+                postgres.setUsername("app");
+                postgres.setDatabase("app");
+                resource = postgres;
+            } else if (i % 3 == 1) {
+                SSH ssh = new SSH();
+                ssh.setHostname("host-" + i + ".internal");
+                ssh.setPort(22);
+                ssh.setUsername("ops");
+                resource = ssh;
+            } else {
+                Redis redis = new Redis();
+                redis.setHostname("cache-" + i + ".internal");
+                redis.setPort(6379);
+                resource = redis;
+            }
+            resource.setName("resource-" + i);
+            resource.setTags(Map.of("env", "prod", "team", "team-" + i % 9));
+            api.create(resource);
+        }
+        api.writes.set(0);
+        return api;
+    }
+
+    // Writes a manifest for the organization with 1 in 100 hostnames, 1 in
+    // 200 tags and 1 in 1,000 types changed, 1 in 200 resources left out
+    // and 100 new ones.
+    static void writeManifest(Path manifest, FakeApi api) throws Exception {
+        Random random = new Random(1);
+        try (BufferedWriter out = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            out.write("type,name,hostname,port,username,database,password,tags\n");
+            for (Resource resource : api.list("")) {
+                int roll = random.nextInt(1000);
+                if (roll < 5) {
+                    continue;
+                }
+                String type = resource.getClass().getSimpleName();
+                String hostname = (String) ResourceManifest.getField(resource, "hostname");
+                Map<String, String> tags = new java.util.TreeMap<>(resource.getTags());
+                if (roll < 15) {
+                    hostname = "moved-" + hostname;
+                } else if (roll < 20) {
+                    tags.put("owner", "platform");
+                } else if (roll < 21) {
+                    type = type.equals("Redis") ? "Postgres" : "Redis";
+                }
+                writeRow(out, type, resource.getName(), hostname, tags);
+            }
+            for (int i = 0; i < 100; i++) {
+                writeRow(out, "SSH", "new-" + i, "new-" + i + ".internal", Map.of("env", "prod"));
+            }
+        }
+    }
+
+    static void writeRow(
+            BufferedWriter out, String type, String name, String hostname, Map<String, String> tags)
+            throws Exception {
+        String port = type.equals("Postgres") ? "5432" : type.equals("SSH") ? "22" : "6379";
+        List<String> tagPairs = new ArrayList<>();
+        tags.forEach((k, v) -> tagPairs.add(k + "=" + v));
+        out.write(
+                String.join(
+                        ",",
+                        type,
+                        name,
+                        hostname,
+                        port,
+                        type.equals("Postgres") ? "app" : type.equals("SSH") ? "ops" : "",
+                        type.equals("Postgres") ? "app" : "",
+                        type.equals("Postgres") ? "s3cret" : "",
+                        ResourceManifest.csvCell(String.join(";", tagPairs))));
+        out.write('\n');
+    }
+
+    // An in-memory organization whose writes take WRITE_MILLIS. Like the
+    // API, it doesn't list passwords.
+    static class FakeApi implements Reconciler.Api {
+        final Map<String, Resource> byId = new ConcurrentSkipListMap<>();
+        final AtomicLong ids = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+
+        public Iterable<Resource> list(String filter) {
+            List<Resource> copies = new ArrayList<>();
+            for (Resource resource : byId.values()) {
+                Resource copy = resource.clone();
+                if (copy instanceof Postgres) {
+                    ((Postgres) copy).setPassword(null);
+                }
+                copies.add(copy);
+            }
+            return copies;
+        }
+
+        public Resource create(Resource resource) {
+            write();
+            Resource created = resource.clone();
+            created.setId(String.format("rs-%08d", ids.incrementAndGet()));
+            byId.put(created.getId(), created);
+            return created.clone();
+        }
+
+        public Resource update(Resource resource) {
+            write();
+            if (byId.replace(resource.getId(), resource.clone()) == null) {
+                throw new NotFoundException("no resource " + resource.getId());
+            }
+            return resource;
+        }
+
+        public void delete(String id) {
+            write();
+            if (byId.remove(id) == null) {
+                throw new NotFoundException("no resource " + id);
+            }
+        }
+
+        private void write() {
+            writes.incrementAndGet();
+            try {
+                Thread.sleep(WRITE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+
+// ResolveResources turns resource names into IDs, as bulk scripts do before
+// granting, updating or deleting the resources, with one listing of the
+// organization instead of one per name. Each argument is a name, or a tag
+// as key=value, which resolves to every resource with that tag:
+//
+//   gradle run --args="redis-1 redis-2 env=example"
+//
+// Each line printed is a resource's ID, type and name, or "not found".
+public class ResolveResources {
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        if (args.length == 0) {
+            System.out.println("usage: ResolveResources <name or key=value>...");
+            return;
+        }
+
+        try {
+            // Create the SDM Client
+            var opts = new ClientOptions();
+            var client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            try (var inventory = ResourceInventory.load(client)) {
+                for (String arg : args) {
+                    int eq = arg.indexOf('=');
+                    if (eq < 0) {
+                        print(arg, inventory.getByName(arg));
+                        continue;
+                    }
+                    var tagged = inventory.getByTag(arg.substring(0, eq), arg.substring(eq + 1));
+                    if (tagged.isEmpty()) {
+                        print(arg, null);
+                    }
+                    for (Resource resource : tagged) {
+                        print(arg, resource);
+                    }
+                }
+                System.out.println(inventory);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void print(String arg, Resource resource) {
+        if (resource == null) {
+            System.out.printf("%s: not found\n", arg);
+        } else {
+            System.out.printf(
+                    "%s: %s %s %s\n",
+                    arg,
+                    resource.getId(),
+                    resource.getClass().getSimpleName(),
+                    resource.getName());
+        }
+    }
+}
@@ -0,0 +1,334 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ResourceInventory answers "which resource is this" without a request per
+// question. Instead of calling
+//
+//   client.resources().list("name:?", name)
+//
+// every time a name has to become an ID, it lists all resources once and
+// indexes them by ID and by name, and keeps inverted indexes from each
+// type and each tag (key=value, and key alone) to the IDs that have it.
+// Lookups are then hash lookups; finding by type and tags intersects the
+// smallest of the matching sets with the others. That pays off where names
+// are resolved over and over, as in ResolveResources; to look up one name,
+// a listing is cheaper.
+//
+// refresh brings the inventory up to date from the resource history, so it
+// only reads what changed since the last refresh; start runs it in the
+// background. A name or ID that isn't known falls back to a listing, and
+// what that finds is added.
+//
+// An inventory can be shared between threads. The indexes are updated one
+// resource at a time, so a lookup during a refresh may see some of the
+// refresh's changes and not others. The resources returned are shared and
+// must not be modified.
+public class ResourceInventory implements AutoCloseable {
+    // How far back each refresh reads, in case history is recorded a little
+    // out of order. Changes seen twice are applied twice, which is harmless.
+    private static final Duration OVERLAP = Duration.ofMinutes(1);
+
+    // Where an inventory gets resources and their history from.
+    public interface Source {
+        Iterable<Resource> list(String filter, Object... args);
+
+        Iterable<ResourceHistory> history(String filter, Object... args);
+
+        static Source of(Client client) {
+            return new Source() {
+                public Iterable<Resource> list(String filter, Object... args) {
+                    return client.resources().list(filter, args);
+                }
+
+                public Iterable<ResourceHistory> history(String filter, Object... args) {
+                    return client.resourcesHistory().list(filter, args);
+                }
+            };
+        }
+    }
+
+    private final Source source;
+    private final Map<String, Resource> byId = new ConcurrentHashMap<>();
+    private final Map<String, Resource> byName = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byType = new ConcurrentHashMap<>();
+    // Keyed by "key=value" and by "key".
+    private final Map<String, Set<String>> byTag = new ConcurrentHashMap<>();
+    // The time of the newest change applied.
+    private volatile Date cursor;
+    private ScheduledExecutorService refresher;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    private ResourceInventory(Source source) {
+        this.source = source;
+    }
+
+    // Loads every resource with a single paginated listing.
+    public static ResourceInventory load(Client client) {
+        return load(Source.of(client));
+    }
+
+    public static ResourceInventory load(Source source) {
+        ResourceInventory inventory = new ResourceInventory(source);
+        // Changes made while the listing runs are picked up by the first
+        // refresh.
+        inventory.cursor = new Date();
+        for (Resource resource : source.list("")) {
+            inventory.put(resource);
+        }
+        return inventory;
+    }
+
+    // Refreshes the inventory every interval on a background thread, until
+    // the inventory is closed. A refresh that fails is tried again at the
+    // next interval.
+    public synchronized void start(Duration interval) {
+        if (refresher != null) {
+            return;
+        }
+        refresher =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread t = new Thread(r, "resource-inventory");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        refresher.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        refresh();
+                    } catch (RuntimeException e) {
+                        refreshFailures.incrementAndGet();
+                    }
+                },
+                interval.toMillis(),
+                interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    // Applies the resource changes recorded since the last refresh, in the
+    // order they were made, and returns how many there were.
+    public int refresh() {
+        Date since = new Date(cursor.getTime() - OVERLAP.toMillis());
+        List<ResourceHistory> history = new ArrayList<>();
+        for (ResourceHistory h : source.history("timestamp:>=?", since.toInstant().toString())) {
+            history.add(h);
+        }
+        history.sort(Comparator.comparing(ResourceHistory::getTimestamp));
+        Date newest = cursor;
+        for (ResourceHistory h : history) {
+            if (h.getDeletedAt() != null) {
+                remove(h.getResource().getId());
+            } else {
+                put(h.getResource());
+            }
+            if (h.getTimestamp().after(newest)) {
+                newest = h.getTimestamp();
+            }
+        }
+        cursor = newest;
+        refreshes.incrementAndGet();
+        changes.addAndGet(history.size());
+        return history.size();
+    }
+
+    // Returns the resource with the given ID, or null if there is none.
+    public Resource getById(String id) {
+        Resource resource = byId.get(id);
+        if (resource != null) {
+            hits.incrementAndGet();
+            return resource;
+        }
+        return fallback("id:?", id);
+    }
+
+    // Returns the resource with the given name, or null if there is none.
+    public Resource getByName(String name) {
+        Resource resource = byName.get(name);
+        if (resource != null) {
+            hits.incrementAndGet();
+            return resource;
+        }
+        return fallback("name:?", name);
+    }
+
+    // Returns the resources of a type, named as its SDK class (Postgres,
+    // SSH, ...).
+    public List<Resource> getByType(String type) {
+        return find(type, Map.of());
+    }
+
+    // Returns the resources with a tag key set to value.
+    public List<Resource> getByTag(String key, String value) {
+        return find(null, Map.of(key, value));
+    }
+
+    // Returns the resources with a tag key, whatever its value.
+    public List<Resource> getByTagKey(String key) {
+        return resolve(List.of(byTag.getOrDefault(key, Set.of())));
+    }
+
+    // Returns the resources of a type, or of any type if type is null, that
+    // have all of tags.
+    public List<Resource> find(String type, Map<String, String> tags) {
+        List<Set<String>> sets = new ArrayList<>();
+        if (type != null) {
+            sets.add(byType.getOrDefault(type, Set.of()));
+        }
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            sets.add(byTag.getOrDefault(tag.getKey() + "=" + tag.getValue(), Set.of()));
+        }
+        if (sets.isEmpty()) {
+            return new ArrayList<>(byId.values());
+        }
+        return resolve(sets);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long fallbacks() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (refresher != null) {
+                refresher.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "resources: %d known, %d resolved locally, %d listings; %d refreshes"
+                        + " applied %d changes, %d failed",
+                size(),
+                hits(),
+                fallbacks(),
+                refreshes.get(),
+                changes.get(),
+                refreshFailures.get());
+    }
+
+    // Returns the resources whose IDs are in every one of sets, walking the
+    // smallest.
+    private List<Resource> resolve(List<Set<String>> sets) {
+        hits.incrementAndGet();
+        Set<String> smallest = sets.get(0);
+        for (Set<String> set : sets) {
+            if (set.size() < smallest.size()) {
+                smallest = set;
+            }
+        }
+        List<Resource> found = new ArrayList<>();
+        for (String id : smallest) {
+            boolean inAll = true;
+            for (Set<String> set : sets) {
+                if (set != smallest && !set.contains(id)) {
+                    inAll = false;
+                    break;
+                }
+            }
+            Resource resource = inAll ? byId.get(id) : null;
+            if (resource != null) {
+                found.add(resource);
+            }
+        }
+        return found;
+    }
+
+    private Resource fallback(String filter, String value) {
+        fallbacks.incrementAndGet();
+        Resource found = null;
+        for (Resource resource : source.list(filter, value)) {
+            put(resource);
+            found = resource;
+        }
+        return found;
+    }
+
+    // Adds or replaces a resource in every index. Writers are serialized so
+    // that a resource's old index entries are always the ones removed.
+    private synchronized void put(Resource resource) {
+        Resource old = byId.put(resource.getId(), resource);
+        if (old != null) {
+            unindex(old);
+        }
+        byName.put(resource.getName(), resource);
+        index(byType, resource.getClass().getSimpleName(), resource.getId());
+        if (resource.getTags() != null) {
+            for (Map.Entry<String, String> tag : resource.getTags().entrySet()) {
+                index(byTag, tag.getKey() + "=" + tag.getValue(), resource.getId());
+                index(byTag, tag.getKey(), resource.getId());
+            }
+        }
+    }
+
+    private synchronized void remove(String id) {
+        Resource old = byId.remove(id);
+        if (old != null) {
+            unindex(old);
+        }
+    }
+
+    private void unindex(Resource old) {
+        byName.remove(old.getName(), old);
+        unindex(byType, old.getClass().getSimpleName(), old.getId());
+        if (old.getTags() != null) {
+            for (Map.Entry<String, String> tag : old.getTags().entrySet()) {
+                unindex(byTag, tag.getKey() + "=" + tag.getValue(), old.getId());
+                unindex(byTag, tag.getKey(), old.getId());
+            }
+        }
+    }
+
+    private static void index(Map<String, Set<String>> index, String key, String id) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static void unindex(Map<String, Set<String>> index, String key, String id) {
+        index.computeIfPresent(
+                key,
+                (k, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+    }
+}
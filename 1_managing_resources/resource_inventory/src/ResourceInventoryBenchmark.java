@@ -0,0 +1,303 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ResourceInventoryBenchmark compares looking resources up with a listing
+// each time against a ResourceInventory, on a fake organization of
+// RESOURCES resources, without needing API keys:
+//
+//   gradle inventoryBenchmark
+//
+// Each request to the fake takes REQUEST_MILLIS, and a full listing takes
+// one request per PAGE_SIZE resources. After timing lookups it changes
+// CHANGES resources (renames, retags, creates and deletes), refreshes the
+// inventory while other threads keep looking things up, and checks every
+// index against a scan of the fake.
+public class ResourceInventoryBenchmark {
+    static final int RESOURCES = 20_000;
+    static final int PAGE_SIZE = 100;
+    static final long REQUEST_MILLIS = 5;
+    static final int LISTED_LOOKUPS = 200;
+    static final int LOOKUPS = 1_000_000;
+    static final int CHANGES = 2_000;
+    static final String[] TYPES = {"Postgres", "SSH", "Redis", "RDP"};
+
+    public static void main(String[] args) throws Exception {
+        FakeSource source = new FakeSource();
+        Random random = new Random(1);
+        for (int i = 0; i < RESOURCES; i++) {
+            source.create(resource(i, random));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LISTED_LOOKUPS; i++) {
+            for (Resource r : source.list("name:?", "resource-" + random.nextInt(RESOURCES))) {
+                r.getId();
+            }
+        }
+        double listedMicros = (System.nanoTime() - start) / 1e3 / LISTED_LOOKUPS;
+        System.out.printf("name lookup with a listing: %.0f us\n", listedMicros);
+
+        start = System.nanoTime();
+        ResourceInventory inventory = ResourceInventory.load(source);
+        System.out.printf(
+                "loaded %d resources in %.0f ms (%d requests)\n",
+                inventory.size(), (System.nanoTime() - start) / 1e6, source.requests.get());
+
+        String[] names = new String[4096];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "resource-" + random.nextInt(RESOURCES);
+        }
+        long found = 0;
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                found += inventory.getByName(names[i & 4095]) != null ? 1 : 0;
+            }
+        }
+        double nameNanos = (System.nanoTime() - start) / (double) LOOKUPS;
+        System.out.printf(
+                "name lookup with the inventory: %.0f ns, %.0fx faster\n",
+                nameNanos, listedMicros * 1e3 / nameNanos);
+
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                found += inventory.getByTag("team", "team-" + i % 40).size();
+            }
+        }
+        System.out.printf(
+                "tag lookup (%d resources each): %.1f us\n",
+                inventory.getByTag("team", "team-0").size(),
+                (System.nanoTime() - start) / 1e3 / 10_000);
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                Map<String, String> tags = Map.of("env", "prod", "team", "team-" + i % 40);
+                found += inventory.find(TYPES[i % 4], tags).size();
+            }
+        }
+        System.out.printf(
+                "type and two tags (%d resources each): %.1f us\n",
+                inventory.find("SSH", Map.of("env", "prod", "team", "team-1")).size(),
+                (System.nanoTime() - start) / 1e3 / 10_000);
+
+        // Change the organization, then refresh while readers keep looking
+        // things up.
+        source.clock = System.currentTimeMillis();
+        for (int i = 0; i < CHANGES; i++) {
+            String id = source.randomId(random);
+            Resource resource = source.resources.get(id).clone();
+            switch (i % 4) {
+                case 0:
+                    resource.setName(resource.getName() + "-renamed");
+                    source.update(resource);
+                    break;
+                case 1:
+                    Map<String, String> tags = new HashMap<>(resource.getTags());
+                    tags.put("team", "team-" + random.nextInt(40));
+                    tags.remove("env");
+                    resource.setTags(tags);
+                    source.update(resource);
+                    break;
+                case 2:
+                    source.delete(id);
+                    break;
+                default:
+                    source.create(resource(RESOURCES + i, random));
+            }
+        }
+        AtomicBoolean refreshing = new AtomicBoolean(true);
+        AtomicLong readerLookups = new AtomicLong();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader =
+                    new Thread(
+                            () -> {
+                                int i = 0;
+                                while (refreshing.get()) {
+                                    inventory.getByTag("team", "team-" + i++ % 40);
+                                    readerLookups.incrementAndGet();
+                                }
+                            });
+            reader.start();
+            readers.add(reader);
+        }
+        start = System.nanoTime();
+        int applied = inventory.refresh();
+        double refreshMillis = (System.nanoTime() - start) / 1e6;
+        refreshing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        System.out.printf(
+                "refresh applied %d changes in %.0f ms, while 4 readers made %d lookups\n",
+                applied, refreshMillis, readerLookups.get());
+
+        check(inventory, source);
+        System.out.printf("%s; %d resources found by the timed lookups\n", inventory, found);
+    }
+
+    static Resource resource(int i, Random random) {
+        Resource resource;
+        switch (TYPES[i % TYPES.length]) {
+            case "Postgres":
+                resource = new Postgres();
+                break;
+            case "SSH":
+                resource = new SSH();
+                break;
+            case "Redis":
+                resource = new Redis();
+                break;
+            default:
+                resource = new RDP();
+        }
+        resource.setName("resource-" + i);
+        resource.setTags(
+                Map.of(
+                        "env", random.nextInt(4) == 0 ? "staging" : "prod",
+                        "team", "team-" + random.nextInt(40)));
+        return resource;
+    }
+
+    // Checks every index of inventory against a scan of source.
+    static void check(ResourceInventory inventory, FakeSource source) {
+        long fallbacks = inventory.fallbacks();
+        Map<String, Set<String>> byTag = new HashMap<>();
+        for (Resource resource : source.resources.values()) {
+            Resource known = inventory.getByName(resource.getName());
+            if (known == null || !known.getId().equals(resource.getId())) {
+                throw new IllegalStateException("wrong resource for " + resource.getName());
+            }
+            resource.getTags()
+                    .forEach(
+                            (k, v) ->
+                                    byTag.computeIfAbsent(k + "=" + v, x -> new HashSet<>())
+                                            .add(resource.getId()));
+        }
+        if (inventory.size() != source.resources.size() || inventory.fallbacks() != fallbacks) {
+            throw new IllegalStateException("the inventory doesn't match the organization");
+        }
+        for (Map.Entry<String, Set<String>> tag : byTag.entrySet()) {
+            String[] kv = tag.getKey().split("=");
+            Set<String> ids = new HashSet<>();
+            for (Resource resource : inventory.getByTag(kv[0], kv[1])) {
+                ids.add(resource.getId());
+            }
+            if (!ids.equals(tag.getValue())) {
+                throw new IllegalStateException("wrong resources for tag " + tag.getKey());
+            }
+        }
+        System.out.printf(
+                "checked %d resources and %d tags against the organization\n",
+                source.resources.size(), byTag.size());
+    }
+
+    // An organization kept in memory, recording its changes as history.
+    static class FakeSource implements ResourceInventory.Source {
+        final Map<String, Resource> resources = new ConcurrentHashMap<>();
+        final List<ResourceHistory> history = new ArrayList<>();
+        final List<String> ids = new ArrayList<>();
+        final AtomicLong requests = new AtomicLong();
+        // When the next change is recorded; the organization is built an
+        // hour ago, and changes after that are made now.
+        long clock = System.currentTimeMillis() - 3_600_000;
+
+        public Iterable<Resource> list(String filter, Object... args) {
+            List<Resource> found = new ArrayList<>();
+            for (Resource resource : resources.values()) {
+                if (filter.isEmpty()
+                        || (filter.equals("name:?") && resource.getName().equals(args[0]))
+                        || (filter.equals("id:?") && resource.getId().equals(args[0]))) {
+                    found.add(resource.clone());
+                }
+            }
+            request(Math.max(1, (found.size() + PAGE_SIZE - 1) / PAGE_SIZE));
+            return found;
+        }
+
+        public Iterable<ResourceHistory> history(String filter, Object... args) {
+            Date since = Date.from(Instant.parse((String) args[0]));
+            List<ResourceHistory> found = new ArrayList<>();
+            synchronized (history) {
+                for (ResourceHistory h : history) {
+                    if (!h.getTimestamp().before(since)) {
+                        found.add(h);
+                    }
+                }
+            }
+            request(Math.max(1, (found.size() + PAGE_SIZE - 1) / PAGE_SIZE));
+            return found;
+        }
+
+        void create(Resource resource) {
+            resource.setId("rs-" + Integer.toHexString(0x100000 + ids.size()));
+            ids.add(resource.getId());
+            update(resource);
+        }
+
+        void update(Resource resource) {
+            resources.put(resource.getId(), resource);
+            record(resource, false);
+        }
+
+        void delete(String id) {
+            record(resources.remove(id), true);
+        }
+
+        String randomId(Random random) {
+            while (true) {
+                String id = ids.get(random.nextInt(ids.size()));
+                if (resources.containsKey(id)) {
+                    return id;
+                }
+            }
+        }
+
+        private void record(Resource resource, boolean deleted) {
+            ResourceHistory h = new ResourceHistory();
+            h.setResource(resource.clone());
+            h.setTimestamp(new Date(clock++));
+            if (deleted) {
+                h.setDeletedAt(h.getTimestamp());
+            }
+            synchronized (history) {
+                history.add(h);
+            }
+        }
+
+        private void request(long pages) {
+            requests.addAndGet(pages);
+            try {
+                Thread.sleep(pages * REQUEST_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -14,6 +14,7 @@
 //
 import com.strongdm.api.*;
 import java.util.Date;
+import java.util.List;
 
 public class AuditResource {
     public static void main(String[] args) {
@@ -51,23 +52,27 @@ public class AuditResource {
 
             String resourceId = resp.getResource().getId();
 
-            Thread.sleep(1000);
+            // Wait for each change to reach the audit history before making
+            // the next one, so the snapshot times below fall between them.
+            AuditVisibility visibility = new AuditVisibility();
+
+            visibility.awaitResource(client, resourceId, h -> true);
             Date createdAt = new Date();
 
             resp.getResource().setName("example-redis-renamed");
             client.resources().update(resp.getResource());
 
-            Thread.sleep(1000);
+            visibility.awaitResource(
+                    client,
+                    resourceId,
+                    h -> "example-redis-renamed".equals(h.getResource().getName()));
             Date renamedAt = new Date();
 
             client.resources().delete(resourceId);
 
-            Thread.sleep(1000);
+            visibility.awaitResource(client, resourceId, h -> h.getDeletedAt() != null);
             Date deletedAt = new Date();
 
-            // Audit records may take a few seconds to be processed.
-            Thread.sleep(3000);
-
             try {
                 client.snapshotAt(start).resources().get(resourceId);
             } catch (NotFoundException e){
@@ -87,10 +92,13 @@ public class AuditResource {
             }
 
             System.out.println("Full history of the resource:");
-            Iterable<ResourceHistory> history = client.resourcesHistory().list("id:?", resourceId);
-            for (ResourceHistory h : history) {
-                ActivityGetResponse activity = client.activities().get(h.getActivityId());
-                System.out.println(activity.getActivity().getDescription()); // created, updated, deleted resource; in order
+            // The builder fetches activities concurrently and only once each,
+            // and can build the timelines of many resources in one call.
+            try (ResourceTimelineBuilder timelines = new ResourceTimelineBuilder(client, 8)) {
+                List<String> ids = List.of(resourceId);
+                for (ResourceTimelineBuilder.Event e : timelines.build(ids).get(resourceId)) {
+                    System.out.println(e.getActivity().getDescription()); // created, updated, deleted resource; in order
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
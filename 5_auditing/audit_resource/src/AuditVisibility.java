@@ -0,0 +1,103 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// AuditVisibility waits for a change to show up in the audit history, which
+// happens a moment after the API call that made it returns. Rather than
+// sleeping for a fixed time, it polls the history until an expected entry
+// appears, backing off exponentially with jitter up to a deadline:
+//
+//   AuditVisibility visibility = new AuditVisibility();
+//   client.resources().update(resource);
+//   visibility.awaitResource(client, id, h -> h.getResource().getName().equals(name));
+//
+// Any history works, since the entry to wait for is picked by a predicate:
+//
+//   visibility.await(() -> client.accountsHistory().list("id:?", id), h -> true);
+//
+// Rate limit errors while polling are treated like an entry not being there
+// yet; other errors are thrown.
+public class AuditVisibility {
+    private Duration deadline = Duration.ofSeconds(30);
+    private Duration initialDelay = Duration.ofMillis(50);
+    private Duration maxDelay = Duration.ofSeconds(2);
+
+    private final AtomicLong polls = new AtomicLong();
+
+    // How long to wait for an entry before giving up.
+    public void setDeadline(Duration deadline) {
+        this.deadline = deadline;
+    }
+
+    // The delay after the first poll; each later delay doubles, up to
+    // maxDelay. Each delay is drawn at random from the upper half of its
+    // range, so clients waiting together don't poll in lockstep.
+    public void setInitialDelay(Duration initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    // Waits until an entry in the resource's history matches expected, and
+    // returns it.
+    public ResourceHistory awaitResource(
+            Client client, String resourceId, Predicate<ResourceHistory> expected)
+            throws InterruptedException, TimeoutException {
+        return await(() -> client.resourcesHistory().list("id:?", resourceId), expected);
+    }
+
+    // Waits until an entry listed by history matches expected, and returns
+    // it. Throws TimeoutException if none does before the deadline.
+    public <T> T await(Supplier<? extends Iterable<T>> history, Predicate<? super T> expected)
+            throws InterruptedException, TimeoutException {
+        long start = System.nanoTime();
+        long delay = initialDelay.toNanos();
+        while (true) {
+            polls.incrementAndGet();
+            try {
+                for (T entry : history.get()) {
+                    if (expected.test(entry)) {
+                        return entry;
+                    }
+                }
+            } catch (RateLimitException e) {
+                // Back off and try again.
+            }
+
+            long remaining = deadline.toNanos() - (System.nanoTime() - start);
+            if (remaining <= 0) {
+                throw new TimeoutException(
+                        "audit entry not visible after " + deadline.toMillis() + " ms");
+            }
+            long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, jittered));
+            delay = Math.min(maxDelay.toNanos(), delay * 2);
+        }
+    }
+
+    // The number of times a history has been listed.
+    public long polls() {
+        return polls.get();
+    }
+}
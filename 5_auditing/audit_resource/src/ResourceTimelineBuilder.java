@@ -0,0 +1,206 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// ResourceTimelineBuilder joins the history of resources with the activities
+// that caused each change. Looking up the activity of every history entry one
+// at a time costs a round trip per entry; instead, the builder lists the
+// histories of many resources concurrently, requests each distinct activity
+// once, keeps up to `concurrency` requests in flight, and joins the results
+// in memory:
+//
+//   try (ResourceTimelineBuilder timelines = new ResourceTimelineBuilder(client, 16)) {
+//       for (ResourceTimelineBuilder.Event e : timelines.build(ids).get(id)) { ... }
+//   }
+//
+// One activity often touches several resources (a bulk import, say), so
+// activities are cached for the life of the builder, and concurrent requests
+// for the same activity share one fetch. Failed fetches aren't cached.
+public class ResourceTimelineBuilder implements AutoCloseable {
+    // A history entry and the activity that produced it.
+    public static class Event {
+        private final ResourceHistory history;
+        private final Activity activity;
+
+        Event(ResourceHistory history, Activity activity) {
+            this.history = history;
+            this.activity = activity;
+        }
+
+        public ResourceHistory getHistory() {
+            return history;
+        }
+
+        public Activity getActivity() {
+            return activity;
+        }
+    }
+
+    private static final Comparator<Event> TIMESTAMP_ORDER =
+            Comparator.comparing(e -> e.getHistory().getTimestamp());
+
+    private final Function<String, Iterable<ResourceHistory>> histories;
+    private final Function<String, Activity> activities;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<Activity>> cache = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    public ResourceTimelineBuilder(Client client, int concurrency) {
+        this(
+                id -> client.resourcesHistory().list("id:?", id),
+                id -> client.activities().get(id).getActivity(),
+                concurrency);
+    }
+
+    // Builds timelines from other sources of history and activities, such as
+    // a snapshot client or a fake.
+    ResourceTimelineBuilder(
+            Function<String, Iterable<ResourceHistory>> histories,
+            Function<String, Activity> activities,
+            int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.histories = histories;
+        this.activities = activities;
+        this.executor =
+                Executors.newFixedThreadPool(
+                        concurrency,
+                        r -> {
+                            Thread t = new Thread(r, "resource-timeline");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    // Returns the timeline of each resource, in the order the IDs are given,
+    // with events in timestamp order. Duplicate IDs are built once.
+    public Map<String, List<Event>> build(Collection<String> resourceIds) throws Exception {
+        Map<String, CompletableFuture<List<Event>>> pending = new LinkedHashMap<>();
+        for (String id : resourceIds) {
+            pending.computeIfAbsent(
+                    id,
+                    k ->
+                            CompletableFuture.supplyAsync(() -> list(k), executor)
+                                    .thenCompose(this::join));
+        }
+        Map<String, List<Event>> timelines = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<Event>>> e : pending.entrySet()) {
+            timelines.put(e.getKey(), await(e.getValue()));
+        }
+        return timelines;
+    }
+
+    // The number of activities fetched, and the number of lookups answered
+    // by an earlier or in-flight fetch.
+    public long fetches() {
+        return fetches.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("activities: %d fetched, %d cache hits", fetches(), hits());
+    }
+
+    private List<ResourceHistory> list(String resourceId) {
+        List<ResourceHistory> entries = new ArrayList<>();
+        for (ResourceHistory h : histories.apply(resourceId)) {
+            entries.add(h);
+        }
+        return entries;
+    }
+
+    // Looks up the activity of every entry, then pairs them up once all of
+    // them have arrived.
+    private CompletableFuture<List<Event>> join(List<ResourceHistory> entries) {
+        List<CompletableFuture<Activity>> lookups = new ArrayList<>(entries.size());
+        for (ResourceHistory h : entries) {
+            lookups.add(activity(h.getActivityId()));
+        }
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+                .thenApply(
+                        done -> {
+                            List<Event> events = new ArrayList<>(entries.size());
+                            for (int i = 0; i < entries.size(); i++) {
+                                events.add(new Event(entries.get(i), lookups.get(i).join()));
+                            }
+                            // The sort is stable, so entries with equal
+                            // timestamps stay in the order they were listed.
+                            events.sort(TIMESTAMP_ORDER);
+                            return events;
+                        });
+    }
+
+    private CompletableFuture<Activity> activity(String id) {
+        CompletableFuture<Activity> mine = new CompletableFuture<>();
+        CompletableFuture<Activity> existing = cache.putIfAbsent(id, mine);
+        if (existing != null) {
+            hits.incrementAndGet();
+            return existing;
+        }
+        fetches.incrementAndGet();
+        executor.execute(
+                () -> {
+                    try {
+                        mine.complete(activities.apply(id));
+                    } catch (Throwable t) {
+                        cache.remove(id, mine);
+                        mine.completeExceptionally(t);
+                    }
+                });
+        return mine;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // Stages chained with thenCompose wrap their failures.
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
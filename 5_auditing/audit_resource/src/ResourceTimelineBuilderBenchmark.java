@@ -0,0 +1,173 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ResourceTimelineBuilderBenchmark builds the timelines of RESOURCES
+// resources of a fake organization, first one call at a time, as
+// AuditResource used to, and then with a ResourceTimelineBuilder. It needs
+// no API keys:
+//
+//   gradle timelineBenchmark
+//
+// Each resource has ENTRIES history entries and each call to the fake takes
+// REQUEST_MILLIS. Half the entries belong to one of BULK_ACTIVITIES bulk
+// activities that touch many resources; the rest have an activity of their
+// own. The one at a time run covers the first SERIAL_RESOURCES resources
+// and is scaled up; the timelines it builds must match the builder's.
+public class ResourceTimelineBuilderBenchmark {
+    static final int RESOURCES = 2_000;
+    static final int ENTRIES = 5;
+    static final int BULK_ACTIVITIES = 500;
+    static final int SERIAL_RESOURCES = 200;
+    static final long REQUEST_MILLIS = 2;
+    static final int CONCURRENCY = 32;
+
+    public static void main(String[] args) throws Exception {
+        FakeSource source = new FakeSource();
+        Random random = new Random(1);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < RESOURCES; i++) {
+            ids.add(source.resource(i, random));
+        }
+        System.out.printf(
+                "%d resources, %d history entries, %d distinct activities\n",
+                RESOURCES, RESOURCES * ENTRIES, source.activities.size());
+
+        // One call per history listing and one per entry's activity.
+        Map<String, List<String>> serial = new HashMap<>();
+        long start = System.nanoTime();
+        for (String id : ids.subList(0, SERIAL_RESOURCES)) {
+            List<String> timeline = new ArrayList<>();
+            for (ResourceHistory h : source.history(id)) {
+                timeline.add(describe(h, source.activity(h.getActivityId())));
+            }
+            serial.put(id, timeline);
+        }
+        double sampleSecs = (System.nanoTime() - start) / 1e9;
+        double serialSecs = sampleSecs * RESOURCES / SERIAL_RESOURCES;
+        System.out.printf(
+                "one call at a time: %.1f s for %d resources, %.1f s for %d scaled up\n",
+                sampleSecs, SERIAL_RESOURCES, serialSecs, RESOURCES);
+
+        long requests = source.requests.get();
+        start = System.nanoTime();
+        Map<String, List<ResourceTimelineBuilder.Event>> timelines;
+        long fetches;
+        try (ResourceTimelineBuilder builder =
+                new ResourceTimelineBuilder(source::history, source::activity, CONCURRENCY)) {
+            timelines = builder.build(ids);
+            fetches = builder.fetches();
+            System.out.printf("%s\n", builder);
+        }
+        double builderSecs = (System.nanoTime() - start) / 1e9;
+        System.out.printf(
+                "builder, %d in flight: %.2f s, %d requests, %.0fx faster\n",
+                CONCURRENCY,
+                builderSecs,
+                source.requests.get() - requests,
+                serialSecs / builderSecs);
+
+        if (timelines.size() != RESOURCES || fetches != source.activities.size()) {
+            throw new IllegalStateException("the builder didn't fetch each activity once");
+        }
+        for (Map.Entry<String, List<String>> e : serial.entrySet()) {
+            List<String> built = new ArrayList<>();
+            for (ResourceTimelineBuilder.Event event : timelines.get(e.getKey())) {
+                built.add(describe(event.getHistory(), event.getActivity()));
+            }
+            if (!built.equals(e.getValue())) {
+                throw new IllegalStateException("wrong timeline for " + e.getKey());
+            }
+        }
+        System.out.printf("checked %d timelines against the one at a time run\n", serial.size());
+    }
+
+    static String describe(ResourceHistory h, Activity activity) {
+        return h.getTimestamp().getTime() + " " + activity.getId() + " " + activity.getVerb();
+    }
+
+    // Resource histories and activities kept in memory. Histories are
+    // listed oldest first, as the API does.
+    static class FakeSource {
+        final Map<String, List<ResourceHistory>> histories = new HashMap<>();
+        final Map<String, Activity> activities = new HashMap<>();
+        final AtomicLong requests = new AtomicLong();
+        private final long epoch = System.currentTimeMillis() - 86_400_000;
+
+        // Records the history of resource i and returns its ID.
+        String resource(int i, Random random) {
+            String id = String.format("rs-%06d", i);
+            Resource resource = new Redis();
+            resource.setId(id);
+            resource.setName("resource-" + i);
+            List<ResourceHistory> entries = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            long at = epoch + i;
+            for (int e = 0; e < ENTRIES; e++) {
+                String activityId;
+                do {
+                    activityId =
+                            random.nextBoolean()
+                                    ? "a-bulk-" + random.nextInt(BULK_ACTIVITIES)
+                                    : String.format("a-%06d-%d", i, e);
+                } while (!seen.add(activityId));
+                activities.computeIfAbsent(activityId, this::newActivity);
+                ResourceHistory h = new ResourceHistory();
+                h.setActivityId(activityId);
+                h.setResource(resource);
+                at += 1 + random.nextInt(60_000);
+                h.setTimestamp(new Date(at));
+                entries.add(h);
+            }
+            histories.put(id, entries);
+            return id;
+        }
+
+        Iterable<ResourceHistory> history(String resourceId) {
+            request();
+            return histories.get(resourceId);
+        }
+
+        Activity activity(String id) {
+            request();
+            return activities.get(id);
+        }
+
+        private Activity newActivity(String id) {
+            Activity activity = new Activity();
+            activity.setId(id);
+            activity.setVerb(id.startsWith("a-bulk-") ? "resources imported" : "resource updated");
+            return activity;
+        }
+
+        private void request() {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(REQUEST_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// AccountResolver answers "which account was this at the time" for query
+// attribution. Instead of calling
+//
+//   client.snapshotAt(q.getTimestamp()).accounts().get(q.getAccountId())
+//
+// once per query, it loads the account history once and keeps, for each
+// account ID, the sorted list of intervals during which each version of the
+// account was current. Lookups are a binary search over that list. If the
+// history doesn't cover a lookup (for example an account created after the
+// history was loaded) it falls back to a snapshot request.
+//
+// Once loaded, an AccountResolver can be shared between threads.
+public class AccountResolver {
+    private final Client client;
+    private final Map<String, Versions> accounts;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private AccountResolver(Client client, Map<String, Versions> accounts) {
+        this.client = client;
+        this.accounts = accounts;
+    }
+
+    // Loads the full account history with a single paginated listing.
+    public static AccountResolver load(Client client) {
+        Map<String, List<AccountHistory>> byId = new HashMap<>();
+        for (AccountHistory h : client.accountsHistory().list("")) {
+            byId.computeIfAbsent(h.getAccount().getId(), id -> new ArrayList<>()).add(h);
+        }
+
+        Map<String, Versions> accounts = new HashMap<>();
+        for (Map.Entry<String, List<AccountHistory>> e : byId.entrySet()) {
+            accounts.put(e.getKey(), new Versions(e.getValue()));
+        }
+        return new AccountResolver(client, accounts);
+    }
+
+    // Returns the account as it was at the given time.
+    public Account get(String accountId, Date timestamp) {
+        Versions versions = accounts.get(accountId);
+        if (versions != null) {
+            Account account = versions.at(timestamp.getTime());
+            if (account != null) {
+                hits.incrementAndGet();
+                return account;
+            }
+        }
+        fallbacks.incrementAndGet();
+        return client.snapshotAt(timestamp).accounts().get(accountId).getAccount();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long fallbacks() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "accounts: %d resolved locally, %d snapshot lookups", hits(), fallbacks());
+    }
+
+    // The versions of one account, sorted by the time they took effect. Each
+    // version is current until the next one starts, or until the account was
+    // deleted.
+    private static class Versions {
+        final long[] from;
+        final long[] until;
+        final Account[] accounts;
+
+        Versions(List<AccountHistory> history) {
+            history.sort(Comparator.comparing(AccountHistory::getTimestamp));
+            int n = history.size();
+            from = new long[n];
+            until = new long[n];
+            accounts = new Account[n];
+            for (int i = 0; i < n; i++) {
+                AccountHistory h = history.get(i);
+                from[i] = h.getTimestamp().getTime();
+                until[i] = Long.MAX_VALUE;
+                if (h.getDeletedAt() != null) {
+                    until[i] = h.getDeletedAt().getTime();
+                }
+                if (i > 0) {
+                    until[i - 1] = Math.min(until[i - 1], from[i]);
+                }
+                accounts[i] = h.getAccount();
+            }
+        }
+
+        Account at(long timestamp) {
+            int i = Arrays.binarySearch(from, timestamp);
+            if (i < 0) {
+                // Not an exact match: take the version that started most
+                // recently before the timestamp.
+                i = -i - 2;
+            } else {
+                // Several versions may share a timestamp; take the last.
+                while (i + 1 < from.length && from[i + 1] == timestamp) {
+                    i++;
+                }
+            }
+            if (i < 0 || timestamp >= until[i]) {
+                return null;
+            }
+            return accounts[i];
+        }
+    }
+}
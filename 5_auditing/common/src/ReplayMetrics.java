@@ -0,0 +1,272 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// ReplayMetrics records where the replay examples spend their time: a
+// latency histogram for each stage (listing queries, looking up accounts,
+// fetching chunks, decrypting, parsing, playing back) and counters for
+// things like chunks and bytes. Stages and counters are created on first
+// use and are safe to record from any thread.
+//
+//   ReplayMetrics.Stage fetch = metrics.stage("list_chunks");
+//   long start = System.nanoTime();
+//   ...
+//   fetch.record(start);
+//
+// At the end of a run, report() gives a table of counts and percentiles,
+// and writePrometheus writes the same numbers in the Prometheus text format,
+// e.g. for node_exporter's textfile collector, so runs before and after an
+// SDK upgrade can be compared.
+public class ReplayMetrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String example;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+
+    // example labels the exported metrics, e.g. "ssh_replay".
+    public ReplayMetrics(String example) {
+        this.example = example;
+    }
+
+    public synchronized Stage stage(String name) {
+        return stages.computeIfAbsent(name, Stage::new);
+    }
+
+    public synchronized LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    // Wraps items so the time spent getting each one from the underlying
+    // iterator is recorded in stage. SDK listings fetch a page at a time as
+    // they are iterated, so most items take no time and the first of each
+    // page takes a round trip.
+    public static <T> Iterable<T> timed(Stage stage, Iterable<T> items) {
+        return () -> {
+            Iterator<T> it = items.iterator();
+            return new Iterator<T>() {
+                // Time spent in hasNext since the last item.
+                long pending;
+
+                public boolean hasNext() {
+                    long start = System.nanoTime();
+                    boolean more = it.hasNext();
+                    pending += System.nanoTime() - start;
+                    if (!more && pending > 0) {
+                        // The request that found the end of the listing.
+                        stage.recordNanos(pending);
+                        pending = 0;
+                    }
+                    return more;
+                }
+
+                public T next() {
+                    long start = System.nanoTime();
+                    T item = it.next();
+                    stage.recordNanos(pending + System.nanoTime() - start);
+                    pending = 0;
+                    return item;
+                }
+            };
+        };
+    }
+
+    // A table with a line per stage and per counter.
+    public synchronized String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(
+                String.format(
+                        "%-16s %9s %10s %10s %10s %10s %10s %10s\n",
+                        "stage", "count", "total s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms",
+                        "max ms"));
+        for (Stage s : stages.values()) {
+            Snapshot h = s.snapshot();
+            out.append(
+                    String.format(
+                            "%-16s %9d %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f\n",
+                            s.name,
+                            h.count,
+                            h.sum / 1e9,
+                            h.quantile(0.5) / 1e6,
+                            h.quantile(0.9) / 1e6,
+                            h.quantile(0.99) / 1e6,
+                            h.quantile(0.999) / 1e6,
+                            h.max / 1e6));
+        }
+        for (Map.Entry<String, LongAdder> c : counters.entrySet()) {
+            out.append(String.format("%-16s %9d\n", c.getKey(), c.getValue().sum()));
+        }
+        return out.toString();
+    }
+
+    // Writes the metrics in the Prometheus text format. The file is written
+    // next to its destination and moved into place, so a collector never
+    // reads it half written.
+    public synchronized void writePrometheus(Path file) throws IOException {
+        String label = "example=\"" + example + "\"";
+        StringBuilder out = new StringBuilder();
+        out.append("# HELP sdm_replay_stage_seconds Time spent in each replay stage.\n");
+        out.append("# TYPE sdm_replay_stage_seconds summary\n");
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Stage s : stages.values()) {
+            Snapshot h = s.snapshot();
+            snapshots.add(h);
+            String labels = label + ",stage=\"" + s.name + "\"";
+            for (double q : QUANTILES) {
+                out.append(
+                        String.format(
+                                "sdm_replay_stage_seconds{%s,quantile=\"%s\"} %s\n",
+                                labels, q, seconds(h.quantile(q))));
+            }
+            out.append(
+                    String.format(
+                            "sdm_replay_stage_seconds_sum{%s} %s\n", labels, seconds(h.sum)));
+            out.append(String.format("sdm_replay_stage_seconds_count{%s} %d\n", labels, h.count));
+        }
+        out.append("# HELP sdm_replay_stage_max_seconds Longest time spent in a replay stage.\n");
+        out.append("# TYPE sdm_replay_stage_max_seconds gauge\n");
+        int i = 0;
+        for (Stage s : stages.values()) {
+            out.append(
+                    String.format(
+                            "sdm_replay_stage_max_seconds{%s,stage=\"%s\"} %s\n",
+                            label, s.name, seconds(snapshots.get(i++).max)));
+        }
+        for (Map.Entry<String, LongAdder> c : counters.entrySet()) {
+            String name = "sdm_replay_" + c.getKey() + "_total";
+            out.append("# TYPE " + name + " counter\n");
+            out.append(String.format("%s{%s} %d\n", name, label, c.getValue().sum()));
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, out.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(
+                tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // A stage's latency histogram. Like an HdrHistogram, it keeps 64 linear
+    // buckets for each power of two, so any recorded time is reported to
+    // within about 1.5%, from nanoseconds up to hours, in a fixed 30 KB.
+    // Recording is a handful of atomic increments and never allocates.
+    public static class Stage {
+        // Values below 2^SUB_BITS nanoseconds get a bucket each; above that
+        // each power of two is split into 2^(SUB_BITS - 1) buckets.
+        private static final int SUB_BITS = 7;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int HALF_COUNT = SUB_COUNT / 2;
+        private static final int BUCKETS = SUB_COUNT + (64 - SUB_BITS) * HALF_COUNT;
+
+        private final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Records the time since startNanos, a System.nanoTime() reading.
+        public void record(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public void recordNanos(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            counts.incrementAndGet(bucket(nanos));
+            sum.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        static int bucket(long value) {
+            int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+            if (shift == 0) {
+                return (int) value;
+            }
+            return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+        }
+
+        // The largest value that falls in bucket i.
+        static long highestValue(int i) {
+            if (i < SUB_COUNT) {
+                return i;
+            }
+            int shift = (i - SUB_COUNT) / HALF_COUNT + 1;
+            long low = (long) ((i - SUB_COUNT) % HALF_COUNT + HALF_COUNT) << shift;
+            return low + (1L << shift) - 1;
+        }
+
+        Snapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] = counts.get(i);
+                count += copy[i];
+            }
+            return new Snapshot(copy, count, sum.get(), max.get());
+        }
+    }
+
+    private static class Snapshot {
+        final long[] counts;
+        final long count;
+        final long sum;
+        final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        // The value at quantile q, in nanoseconds, or 0 with no samples.
+        long quantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(Stage.highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
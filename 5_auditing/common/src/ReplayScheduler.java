@@ -0,0 +1,419 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// ReplayScheduler plays back replay events on a ScheduledExecutorService
+// instead of calling Thread.sleep between events. A handful of threads can
+// drive dozens of sessions at once, each at its own speed:
+//
+//   ReplayScheduler scheduler = new ReplayScheduler(2);
+//   ReplayScheduler.Options opts = new ReplayScheduler.Options();
+//   opts.setSpeed(10);
+//   opts.setIdleLimit(Duration.ofSeconds(1));
+//   scheduler.play(session, opts, ev -> System.out.print(...)).await();
+//
+// Events are written in order and never concurrently for one session.
+//
+// A session can be given whole, or streamed: Session.streaming returns one
+// that plays events as they are added and holds at most capacity of them
+// that haven't been played, so a long session can play while its chunks
+// are still being listed and decrypted, without being buffered first.
+public class ReplayScheduler implements AutoCloseable {
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    public interface Sink {
+        void write(ReplayChunkEvent event) throws Exception;
+    }
+
+    public static class Options {
+        private double speed = 1;
+        private Duration idleLimit = null;
+        private Duration startAt = Duration.ZERO;
+
+        // The playback speed multiplier: 1 for real time, 10 for ten times
+        // as fast, or MAX_SPEED to write events without waiting at all.
+        public void setSpeed(double speed) {
+            if (!(speed > 0)) {
+                throw new IllegalArgumentException("speed must be positive");
+            }
+            this.speed = speed;
+        }
+
+        public double getSpeed() {
+            return speed;
+        }
+
+        // Pauses between events longer than the limit are shortened to it,
+        // which skips over idle time in a session. Null disables this.
+        public void setIdleLimit(Duration idleLimit) {
+            this.idleLimit = idleLimit;
+        }
+
+        public Duration getIdleLimit() {
+            return idleLimit;
+        }
+
+        // Starts playback at the first event at or after this offset into
+        // the session, measured in original (real time) session time.
+        public void setStartAt(Duration startAt) {
+            this.startAt = startAt;
+        }
+
+        public Duration getStartAt() {
+            return startAt;
+        }
+
+        // Reads options from the environment: SDM_REPLAY_SPEED sets the
+        // speed ("10" for ten times as fast, or "max"), and
+        // SDM_REPLAY_IDLE_LIMIT_MS shortens any pause longer than the limit.
+        public static Options fromEnvironment() {
+            Options opts = new Options();
+            String speed = System.getenv("SDM_REPLAY_SPEED");
+            if ("max".equals(speed)) {
+                opts.setSpeed(MAX_SPEED);
+            } else if (speed != null) {
+                opts.setSpeed(Double.parseDouble(speed));
+            }
+            String idleLimit = System.getenv("SDM_REPLAY_IDLE_LIMIT_MS");
+            if (idleLimit != null) {
+                opts.setIdleLimit(Duration.ofMillis(Long.parseLong(idleLimit)));
+            }
+            return opts;
+        }
+    }
+
+    // Session is a replay's events with an index of when each event starts,
+    // relative to the start of the session, so that seeking is a binary
+    // search rather than a walk through the events.
+    //
+    // A streaming session has no index: its events wait in a bounded queue
+    // until they are played, add blocks while the queue is full, and end
+    // says no more are coming. It can be played once, and starting at an
+    // offset skips the events before it as they arrive.
+    public static class Session {
+        // Returned by poll once a streaming session has ended.
+        private static final ReplayChunkEvent END = new ReplayChunkEvent();
+
+        private final List<ReplayChunkEvent> events;
+        private final long[] offsetNanos;
+        private long lengthNanos;
+
+        private final BlockingQueue<ReplayChunkEvent> pending;
+        private int added;
+        private boolean ended;
+        private boolean stopped;
+        // The step to run when a streaming session gets more events.
+        private Runnable resume;
+        // The original offset of the next event to be played.
+        private long playedNanos;
+
+        public Session(List<ReplayChunkEvent> events) {
+            this.events = events;
+            this.offsetNanos = new long[events.size()];
+            long offset = 0;
+            for (int i = 0; i < events.size(); i++) {
+                offsetNanos[i] = offset;
+                offset += events.get(i).getDuration().toNanos();
+            }
+            this.lengthNanos = offset;
+            this.pending = null;
+        }
+
+        private Session(int capacity) {
+            this.events = null;
+            this.offsetNanos = null;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+        }
+
+        // A session whose events are added while it plays, holding at most
+        // capacity events that haven't been played yet.
+        public static Session streaming(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be positive");
+            }
+            return new Session(capacity);
+        }
+
+        public static Session of(Iterable<ReplayChunk> chunks) {
+            List<ReplayChunkEvent> events = new ArrayList<>();
+            for (ReplayChunk chunk : chunks) {
+                events.addAll(chunk.getEvents());
+            }
+            return new Session(events);
+        }
+
+        // Adds an event to a streaming session, waiting while capacity
+        // events are waiting to be played. Once playback has stopped, because
+        // it was cancelled or the sink failed, events are dropped.
+        public void add(ReplayChunkEvent event) throws InterruptedException {
+            Runnable next;
+            synchronized (this) {
+                if (ended) {
+                    throw new IllegalStateException("the session has ended");
+                }
+                while (!stopped && pending.remainingCapacity() == 0) {
+                    wait();
+                }
+                if (stopped) {
+                    return;
+                }
+                pending.add(event);
+                added++;
+                lengthNanos += event.getDuration().toNanos();
+                next = resume;
+                resume = null;
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+
+        public void addAll(Iterable<ReplayChunkEvent> events) throws InterruptedException {
+            for (ReplayChunkEvent event : events) {
+                add(event);
+            }
+        }
+
+        // Says a streaming session has no more events, so its playback
+        // finishes once the ones added have been played.
+        public void end() {
+            Runnable next;
+            synchronized (this) {
+                ended = true;
+                next = resume;
+                resume = null;
+            }
+            if (next != null) {
+                next.run();
+            }
+        }
+
+        // The events of a streaming session so far, or of the whole session.
+        public synchronized Duration getLength() {
+            return Duration.ofNanos(lengthNanos);
+        }
+
+        public synchronized int size() {
+            return pending == null ? events.size() : added;
+        }
+
+        // Returns the index of the first event starting at or after offset.
+        // Streaming sessions have no index.
+        public int indexAt(Duration offset) {
+            if (pending != null) {
+                throw new UnsupportedOperationException("a streaming session can't seek");
+            }
+            int i = Arrays.binarySearch(offsetNanos, offset.toNanos());
+            if (i < 0) {
+                return -i - 1;
+            }
+            // Zero-length events share an offset; start from the first.
+            while (i > 0 && offsetNanos[i - 1] == offsetNanos[i]) {
+                i--;
+            }
+            return i;
+        }
+
+        // Takes the next event of a streaming session. If there is none yet,
+        // returns null and runs resume once there is, or END if the session
+        // has ended.
+        private synchronized ReplayChunkEvent poll(Runnable resume) {
+            ReplayChunkEvent event = pending.poll();
+            if (event != null) {
+                notifyAll();
+                return event;
+            }
+            if (ended) {
+                return END;
+            }
+            this.resume = resume;
+            return null;
+        }
+
+        // Drops what is waiting and wakes a blocked add, once playback has
+        // stopped early.
+        private synchronized void stop() {
+            stopped = true;
+            pending.clear();
+            notifyAll();
+        }
+    }
+
+    // Playback is the handle for a session being replayed.
+    public static class Playback {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+            done.cancel(false);
+        }
+
+        public boolean isDone() {
+            return done.isDone();
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return done;
+        }
+
+        // Blocks until every event has been written, rethrowing any
+        // exception thrown by the sink.
+        public void await() throws Exception {
+            try {
+                done.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+
+    public ReplayScheduler(int threads) {
+        this(
+                Executors.newScheduledThreadPool(
+                        threads,
+                        r -> {
+                            Thread t = new Thread(r, "replay-scheduler");
+                            t.setDaemon(true);
+                            return t;
+                        }));
+    }
+
+    public ReplayScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public Playback play(Session session, Options opts, Sink sink) {
+        Playback playback = new Playback();
+        int first = session.pending == null ? session.indexAt(opts.getStartAt()) : 0;
+        long start = System.nanoTime();
+        executor.execute(() -> step(session, opts, sink, playback, first, start, 0));
+        return playback;
+    }
+
+    // Writes every event that is due, then schedules itself for the next
+    // one. Due times are computed from the start of playback rather than
+    // from the previous event, so scheduling delays don't accumulate.
+    private void step(
+            Session session,
+            Options opts,
+            Sink sink,
+            Playback playback,
+            int index,
+            long start,
+            long elapsed) {
+        try {
+            while (true) {
+                if (playback.cancelled) {
+                    stop(session);
+                    return;
+                }
+                long delay = start + elapsed - System.nanoTime();
+                int next = index;
+                long at = elapsed;
+                if (delay > 0) {
+                    executor.schedule(
+                            () -> step(session, opts, sink, playback, next, start, at),
+                            delay,
+                            TimeUnit.NANOSECONDS);
+                    return;
+                }
+                ReplayChunkEvent event;
+                if (session.pending == null) {
+                    if (index == session.size()) {
+                        break;
+                    }
+                    event = session.events.get(index);
+                } else {
+                    // With nothing to play yet, no thread waits: resume runs
+                    // once an event is added.
+                    event =
+                            session.poll(
+                                    () -> resume(session, opts, sink, playback, next, start, at));
+                    if (event == null) {
+                        return;
+                    }
+                    if (event == Session.END) {
+                        break;
+                    }
+                    long offset = session.playedNanos;
+                    session.playedNanos += event.getDuration().toNanos();
+                    if (offset < opts.getStartAt().toNanos()) {
+                        continue;
+                    }
+                }
+                sink.write(event);
+                elapsed += pause(event.getDuration(), opts);
+                index++;
+            }
+            playback.done.complete(null);
+        } catch (Throwable t) {
+            stop(session);
+            playback.done.completeExceptionally(t);
+        }
+    }
+
+    // Continues a streaming session that was waiting for events. It wasn't
+    // playing while it waited, so the clock restarts from now.
+    private void resume(
+            Session session,
+            Options opts,
+            Sink sink,
+            Playback playback,
+            int index,
+            long start,
+            long elapsed) {
+        long restart = Math.max(start, System.nanoTime() - elapsed);
+        executor.execute(() -> step(session, opts, sink, playback, index, restart, elapsed));
+    }
+
+    private static void stop(Session session) {
+        if (session.pending != null) {
+            session.stop();
+        }
+    }
+
+    private static long pause(Duration duration, Options opts) {
+        if (opts.getSpeed() == MAX_SPEED) {
+            return 0;
+        }
+        long nanos = duration.toNanos();
+        if (opts.getIdleLimit() != null) {
+            nanos = Math.min(nanos, opts.getIdleLimit().toNanos());
+        }
+        return (long) (nanos / opts.getSpeed());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,104 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+// ChunkDecryptBenchmark measures the throughput and allocation rate of
+// decrypting a single replay chunk with EncryptedQueryReplay.decryptQueryData
+// and with ChunkDecryptor, for a few chunk sizes. Allocation is measured per
+// thread with com.sun.management.ThreadMXBean, so run it on a HotSpot JVM.
+// Run it with `gradle chunkBenchmark`.
+public class ChunkDecryptBenchmark {
+    static final int[] CHUNK_SIZES = {64 * 1024, 1024 * 1024, 4 * 1024 * 1024};
+    static final long MEASURE_NANOS = 2_000_000_000L;
+
+    interface Op {
+        int run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        SecureRandom random = new SecureRandom();
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        System.out.printf("%-10s %-16s %10s %14s\n", "chunk", "method", "MB/s", "alloc B/op");
+        for (int size : CHUNK_SIZES) {
+            // Printable plaintext, like the JSON in a real chunk, with some
+            // NUL padding at the end for the decryptors to trim.
+            StringBuilder text = new StringBuilder(size);
+            while (text.length() < size - 7) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            byte[] encrypted = ReplayPipelineBenchmark.encrypt(keyBytes, text.toString());
+
+            ChunkDecryptor heap = new ChunkDecryptor(new ChunkDecryptor.Pool(1, false));
+            ChunkDecryptor direct = new ChunkDecryptor(new ChunkDecryptor.Pool(1, true));
+
+            measure(
+                    threads,
+                    size,
+                    "decryptQueryData",
+                    () -> EncryptedQueryReplay.decryptQueryData(key, encrypted).length());
+            measure(threads, size, "pooled heap", () -> decryptAndRelease(heap, key, encrypted));
+            measure(
+                    threads,
+                    size,
+                    "pooled direct",
+                    () -> decryptAndRelease(direct, key, encrypted));
+        }
+    }
+
+    static int decryptAndRelease(ChunkDecryptor decryptor, SecretKey key, byte[] encrypted)
+            throws Exception {
+        ByteBuffer plaintext = decryptor.decrypt(key, encrypted);
+        int length = plaintext.remaining();
+        decryptor.release(plaintext);
+        return length;
+    }
+
+    static void measure(com.sun.management.ThreadMXBean threads, int size, String name, Op op)
+            throws Exception {
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so JIT compilation and pool growth aren't measured.
+        long warmupEnd = System.nanoTime() + MEASURE_NANOS / 2;
+        while (System.nanoTime() < warmupEnd) {
+            op.run();
+        }
+
+        long ops = 0;
+        long bytes = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long end = start + MEASURE_NANOS;
+        while (System.nanoTime() < end) {
+            bytes += op.run();
+            ops++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf(
+                "%-10s %-16s %10.1f %14d\n",
+                size / 1024 + "KB", name, bytes / seconds / (1024 * 1024), allocated / ops);
+    }
+}
@@ -0,0 +1,113 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+// ChunkDecryptor decrypts AES-CBC query and replay data into pooled buffers.
+//
+// EncryptedQueryReplay.decryptQueryData copies the IV and the ciphertext out
+// of the encrypted data, allocates a plaintext array, turns it into a String
+// and then strips the NUL padding with a regex, which is five copies of every
+// chunk. Here the IV and ciphertext are read in place, the plaintext is
+// written straight into a reused buffer and the padding is trimmed by moving
+// the buffer's limit.
+//
+// A ChunkDecryptor holds its own Cipher and is not thread safe; give each
+// thread its own decryptor and share a Pool between them.
+public class ChunkDecryptor {
+    private final Pool pool;
+    private final Cipher cipher;
+
+    public ChunkDecryptor(Pool pool) throws GeneralSecurityException {
+        this.pool = pool;
+        this.cipher = Cipher.getInstance("AES/CBC/NoPadding");
+    }
+
+    // Decrypts encryptedData (the IV followed by the ciphertext) and returns
+    // a pooled buffer holding the plaintext between its position and limit,
+    // without the trailing NUL padding. Hand the buffer back with release
+    // once it has been consumed.
+    public ByteBuffer decrypt(SecretKey symmetricKey, byte[] encryptedData)
+            throws GeneralSecurityException {
+        int blockSize = cipher.getBlockSize();
+        if (encryptedData.length < blockSize) {
+            throw new IllegalArgumentException("encrypted data is shorter than the IV");
+        }
+        cipher.init(
+                Cipher.DECRYPT_MODE,
+                symmetricKey,
+                new IvParameterSpec(encryptedData, 0, blockSize));
+
+        ByteBuffer in = ByteBuffer.wrap(encryptedData, blockSize, encryptedData.length - blockSize);
+        ByteBuffer out = pool.acquire(cipher.getOutputSize(in.remaining()));
+        try {
+            cipher.doFinal(in, out);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            pool.release(out);
+            throw e;
+        }
+        out.flip();
+
+        int end = out.limit();
+        while (end > 0 && out.get(end - 1) == 0) {
+            end--;
+        }
+        out.limit(end);
+        return out;
+    }
+
+    public void release(ByteBuffer buffer) {
+        pool.release(buffer);
+    }
+
+    // Pool is a bounded, thread-safe pool of byte buffers. Buffers grow to
+    // fit the largest chunk seen, so after a short warm up decrypting a chunk
+    // allocates nothing new.
+    //
+    // Direct buffers are supported, but the SunJCE provider decrypts a heap
+    // array into a direct buffer through a temporary array the size of the
+    // output, so heap buffers are the better choice unless the plaintext is
+    // headed for a channel.
+    public static class Pool {
+        private final BlockingQueue<ByteBuffer> free;
+        private final boolean direct;
+
+        public Pool(int maxPooled, boolean direct) {
+            this.free = new ArrayBlockingQueue<>(maxPooled);
+            this.direct = direct;
+        }
+
+        public ByteBuffer acquire(int size) {
+            ByteBuffer buffer = free.poll();
+            if (buffer == null || buffer.capacity() < size) {
+                // A pooled buffer that is too small is dropped and replaced
+                // with a larger one, so the pool converges on the chunk size.
+                buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+            }
+            buffer.clear();
+            buffer.limit(size);
+            return buffer;
+        }
+
+        public void release(ByteBuffer buffer) {
+            free.offer(buffer);
+        }
+    }
+}
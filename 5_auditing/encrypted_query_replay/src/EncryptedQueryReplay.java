@@ -13,13 +13,12 @@
 // limitations under the License.
 //
 import com.strongdm.api.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.spec.MGF1ParameterSpec;
-import java.security.spec.PKCS8EncodedKeySpec;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Base64;
@@ -33,6 +32,9 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 public class EncryptedQueryReplay {
+    // How many events of a session may wait to be played.
+    static final int PLAYBACK_BUFFER = 4096;
+
     public static void main(String[] args) {
         // Load the SDM API keys from the environment.
         // If these values are not set in your environment,
@@ -55,7 +57,9 @@ public class EncryptedQueryReplay {
         }
 
         try {
-            PrivateKey privateKey = loadPrivateKeyFromFile(privateKeyFile);
+            // The decryptor parses the key once and keeps a cipher per
+            // thread, so it can be shared by the decryption workers.
+            QueryDecryptor decryptor = new QueryDecryptor(loadPrivateKeyFromFile(privateKeyFile));
 
             // Create the SDM Client
             ClientOptions opts = new ClientOptions();
@@ -73,98 +77,172 @@ public class EncryptedQueryReplay {
             }
             System.out.printf("Queries made against %s:\n", resourceName);
 
+            // Load the account history once, rather than looking up the
+            // account behind every query with its own snapshot request.
+            AccountResolver accounts = AccountResolver.load(client);
+
+            // Decryption is spread across a pool of workers, sized to the
+            // available cores unless SDM_REPLAY_WORKERS says otherwise.
+            int workers = Runtime.getRuntime().availableProcessors();
+            if (System.getenv("SDM_REPLAY_WORKERS") != null) {
+                workers = Integer.parseInt(System.getenv("SDM_REPLAY_WORKERS"));
+            }
+            // Every stage records how long it takes, for a report at the end.
+            // Set SDM_REPLAY_METRICS_FILE to also write the numbers in the
+            // Prometheus text format.
+            ReplayMetrics metrics = new ReplayMetrics("encrypted_query_replay");
+            ReplayMetrics.Stage accountLookups = metrics.stage("account_lookup");
+            ReplayMetrics.Stage playback = metrics.stage("playback");
+
+            // Each query's key is unwrapped once and shared by its replay chunks.
+            SessionKeyCache keys = new SessionKeyCache(decryptor, 1024, Duration.ofMinutes(10));
+            keys.setMetrics(metrics);
+            ReplayPipeline pipeline =
+                    new ReplayPipeline(
+                            keys,
+                            q -> client.replays().list("id:?", q.getId()),
+                            workers,
+                            64);
+            pipeline.setMetrics(metrics);
+
+            // Decrypted sessions are played back on a scheduler rather than
+            // by sleeping between events. Set SDM_REPLAY_SPEED to "10" or
+            // "max" to play them faster, and SDM_REPLAY_IDLE_LIMIT_MS to skip
+            // idle time. Playback starts with the first chunk, and a full
+            // session buffer holds up the pipeline rather than growing.
+            ReplayScheduler.Options playbackOpts = ReplayScheduler.Options.fromEnvironment();
+            ReplayScheduler scheduler = new ReplayScheduler(1);
+            ReplayScheduler.Session[] session = new ReplayScheduler.Session[1];
+            ReplayScheduler.Playback[] playing = new ReplayScheduler.Playback[1];
+
             Iterable<Query> queryIterator =
                     client.queries().list("resource_id:?", resource.getId());
-            for (Query q : queryIterator) {
-                AccountGetResponse accountResponse =
-                        client.snapshotAt(q.getTimestamp()).accounts().get(q.getAccountId());
-                User user = (User) accountResponse.getAccount();
-
-                if (q.getEncrypted()) {
-                    System.out.println("Decrypting encrypted query");
-                    q.setQueryBody(
-                            decryptQueryData(
-                                    privateKey,
-                                    q.getQueryKey(),
-                                    Base64.getDecoder().decode(q.getQueryBody())));
-                    q.setReplayable(
-                            new JSONObject(q.getQueryBody()).optString("type").equals("shell"));
-                }
-
-                if (q.getReplayable()) {
-                    System.out.printf(
-                            "Replaying query made by %s at %s\n",
-                            user.getEmail(), q.getTimestamp());
-                    Iterable<ReplayChunk> replayChunks = client.replays().list("id:?", q.getId());
-                    for (ReplayChunk chunk : replayChunks) {
-                        if (q.getEncrypted()) {
-                            JSONArray events =
-                                    new JSONArray(
-                                            decryptQueryData(
-                                                    privateKey, q.getQueryKey(), chunk.getData()));
-                            for (int i = 0; i < events.length(); i++) {
-                                JSONObject e = events.getJSONObject(i);
-                                ReplayChunkEvent event = new ReplayChunkEvent();
-                                event.setData(Base64.getDecoder().decode(e.getString("data")));
-                                event.setDuration(Duration.ofMillis(e.getLong("duration")));
-                                chunk.getEvents().add(event);
+            pipeline.run(
+                    ReplayMetrics.timed(metrics.stage("list_queries"), queryIterator),
+                    new ReplayPipeline.Listener() {
+                        public void onQuery(Query q) throws Exception {
+                            metrics.counter("queries").increment();
+                            long start = System.nanoTime();
+                            User user = (User) accounts.get(q.getAccountId(), q.getTimestamp());
+                            accountLookups.record(start);
+
+                            if (q.getReplayable()) {
+                                System.out.printf(
+                                        "Replaying query made by %s at %s\n",
+                                        user.getEmail(), q.getTimestamp());
+                                session[0] = ReplayScheduler.Session.streaming(PLAYBACK_BUFFER);
+                                // Some characters may not be printed cleanly by this method
+                                playing[0] =
+                                        scheduler.play(
+                                                session[0],
+                                                playbackOpts,
+                                                ev ->
+                                                        System.out.print(
+                                                                new String(
+                                                                        ev.getData(),
+                                                                        StandardCharsets.UTF_8)));
+                            } else {
+                                String command =
+                                        new JSONObject(q.getQueryBody()).optString("command");
+                                System.out.printf(
+                                        "Command run by %s at %s: %s\n",
+                                        user.getEmail(), q.getTimestamp(), command);
                             }
                         }
 
-                        for (ReplayChunkEvent ev : chunk.getEvents()) {
-                            // Some characters may not be printed cleanly by this method
-                            String data = new String(ev.getData(), StandardCharsets.UTF_8);
-                            System.out.print(data);
-                            Thread.sleep(ev.getDuration().toMillis());
+                        public void onEvent(Query q, ByteBuffer data, long durationMillis)
+                                throws Exception {
+                            // The buffer is reused, and the event is played
+                            // later, so it gets a copy.
+                            ReplayChunkEvent event = new ReplayChunkEvent();
+                            byte[] bytes = new byte[data.remaining()];
+                            data.get(bytes);
+                            event.setData(bytes);
+                            event.setDuration(Duration.ofMillis(durationMillis));
+                            session[0].add(event);
+                        }
+
+                        public void onQueryDone(Query q) throws Exception {
+                            if (!q.getReplayable()) {
+                                return;
+                            }
+                            // The playback time is what's left once the last
+                            // chunk has been added.
+                            long start = System.nanoTime();
+                            session[0].end();
+                            playing[0].await();
+                            playback.record(start);
+                            System.out.println();
                         }
-                        System.out.println();
-                    }
-                } else {
-                    String command = new JSONObject(q.getQueryBody()).optString("command");
-                    System.out.printf(
-                            "Command run by %s at %s: %s\n",
-                            user.getEmail(), q.getTimestamp(), command);
-                }
+                    });
+            scheduler.close();
+            System.out.println(keys);
+            System.out.println(accounts);
+            System.out.print(metrics.report());
+            String metricsFile = System.getenv("SDM_REPLAY_METRICS_FILE");
+            if (metricsFile != null) {
+                metrics.writePrometheus(Path.of(metricsFile));
             }
+            keys.clear();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static PrivateKey loadPrivateKeyFromFile(String privateKeyFile) throws Exception {
+    static PrivateKey loadPrivateKeyFromFile(String privateKeyFile) throws Exception {
         // This code assumes the private file is in PEM-encoded PKCS#8 format
         // (beginning with "BEGIN PRIVATE KEY").
         // To convert a key file from the more common PKCS#1 format (beginning
         // with "BEGIN RSA PRIVATE KEY") the following command can be used:
         //   openssl pkcs8 -topk8 -inform PEM -outform PEM -in key-pkcs1.pem -out key-pkcs8.pem
         // -nocrypt
-        byte[] privateKeyBytes =
-                Base64.getDecoder()
-                        .decode(
-                                Files.readString(Path.of(privateKeyFile))
-                                        .replaceAll("-----(BEGIN|END) PRIVATE KEY-----", "")
-                                        .replaceAll(System.lineSeparator(), ""));
-        return KeyFactory.getInstance("RSA")
-                .generatePrivate(new PKCS8EncodedKeySpec(privateKeyBytes));
+        return QueryDecryptor.parsePrivateKey(Files.readString(Path.of(privateKeyFile)));
+    }
+
+    // This method demonstrates how to decrypt the events of an encrypted replay
+    // chunk, given the query's unwrapped symmetric key. The decrypted events
+    // are added to the chunk.
+    static void decryptReplayChunk(SecretKey symmetricKey, ReplayChunk chunk) throws Exception {
+        addEvents(chunk, decryptQueryData(symmetricKey, chunk.getData()));
+    }
+
+    private static void addEvents(ReplayChunk chunk, String decrypted) {
+        JSONArray events = new JSONArray(decrypted);
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject e = events.getJSONObject(i);
+            ReplayChunkEvent event = new ReplayChunkEvent();
+            event.setData(Base64.getDecoder().decode(e.getString("data")));
+            event.setDuration(Duration.ofMillis(e.getLong("duration")));
+            chunk.getEvents().add(event);
+        }
     }
 
     // This method demonstrates how to decrypt encrypted query/replay data.
-    private static String decryptQueryData(
+    static String decryptQueryData(
             PrivateKey privateKey, String encryptedQueryKey, byte[] encryptedData)
             throws Exception {
-        // Use the organization's private key to decrypt the symmetric key
+        byte[] symmetricKeyBytes = unwrapQueryKey(privateKey, encryptedQueryKey);
+        SecretKey symmetricKey =
+                new SecretKeySpec(symmetricKeyBytes, 0, symmetricKeyBytes.length, "AES");
+        return decryptQueryData(symmetricKey, encryptedData);
+    }
+
+    // Use the organization's private key to decrypt the symmetric key
+    static byte[] unwrapQueryKey(PrivateKey privateKey, String encryptedQueryKey)
+            throws Exception {
         Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
         cipher.init(
                 Cipher.DECRYPT_MODE,
                 privateKey,
                 new OAEPParameterSpec(
                         "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
-        byte[] symmetricKeyBytes = cipher.doFinal(Base64.getDecoder().decode(encryptedQueryKey));
-        SecretKey symmetricKey =
-                new SecretKeySpec(symmetricKeyBytes, 0, symmetricKeyBytes.length, "AES");
+        return cipher.doFinal(Base64.getDecoder().decode(encryptedQueryKey));
+    }
 
-        // Use the symmetric key to decrypt the data
-        cipher = Cipher.getInstance("AES/CBC/NoPadding");
+    // Use the symmetric key to decrypt the data
+    static String decryptQueryData(SecretKey symmetricKey, byte[] encryptedData)
+            throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
         byte[] iv = Arrays.copyOfRange(encryptedData, 0, cipher.getBlockSize());
         byte[] ciphertext =
                 Arrays.copyOfRange(encryptedData, cipher.getBlockSize(), encryptedData.length);
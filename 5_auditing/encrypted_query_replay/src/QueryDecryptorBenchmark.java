@@ -0,0 +1,128 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+// QueryDecryptorBenchmark measures operations per second for unwrapping
+// query keys and decrypting query bodies, using the helpers in
+// EncryptedQueryReplay and using a shared QueryDecryptor, at increasing
+// thread counts. Run it with `gradle decryptorBenchmark`.
+public class QueryDecryptorBenchmark {
+    static final int[] THREADS = {1, 2, 4, 8};
+    static final long WARMUP_NANOS = 1_000_000_000L;
+    static final long MEASURE_NANOS = 2_000_000_000L;
+    static final int BODY_SIZE = 512;
+
+    interface Op {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        PrivateKey privateKey = keyPair.getPrivate();
+        QueryDecryptor decryptor = new QueryDecryptor(privateKey);
+
+        SecureRandom random = new SecureRandom();
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        String queryKey =
+                Base64.getEncoder()
+                        .encodeToString(
+                                ReplayPipelineBenchmark.wrapKey(keyPair.getPublic(), keyBytes));
+        SecretKey key = new SecretKeySpec(keyBytes, "AES");
+        StringBuilder body = new StringBuilder("{\"type\":\"shell\",\"command\":\"");
+        while (body.length() < BODY_SIZE - 2) {
+            body.append((char) ('a' + random.nextInt(26)));
+        }
+        body.append("\"}");
+        byte[] encryptedBody = ReplayPipelineBenchmark.encrypt(keyBytes, body.toString());
+
+        System.out.printf("%-26s %8s %14s\n", "operation", "threads", "ops/s");
+        for (int threads : THREADS) {
+            measure(
+                    "unwrap, per-call Cipher",
+                    threads,
+                    () -> EncryptedQueryReplay.unwrapQueryKey(privateKey, queryKey));
+            measure("unwrap, QueryDecryptor", threads, () -> decryptor.unwrapQueryKey(queryKey));
+        }
+        for (int threads : THREADS) {
+            measure(
+                    "body, per-call Cipher",
+                    threads,
+                    () -> EncryptedQueryReplay.decryptQueryData(key, encryptedBody));
+            measure(
+                    "body, QueryDecryptor",
+                    threads,
+                    () -> decryptor.decryptQueryData(key, encryptedBody));
+        }
+    }
+
+    // Runs op on the given number of threads, warming up first, and prints
+    // the combined rate.
+    static void measure(String name, int threads, Op op) throws Exception {
+        AtomicBoolean counting = new AtomicBoolean();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong ops = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t =
+                    new Thread(
+                            () -> {
+                                try {
+                                    long n = 0;
+                                    while (!stop.get()) {
+                                        op.run();
+                                        if (counting.get()) {
+                                            n++;
+                                        }
+                                    }
+                                    ops.addAndGet(n);
+                                } catch (Throwable e) {
+                                    synchronized (failures) {
+                                        failures.add(e);
+                                    }
+                                } finally {
+                                    done.countDown();
+                                }
+                            });
+            t.start();
+        }
+        Thread.sleep(WARMUP_NANOS / 1_000_000);
+        counting.set(true);
+        long start = System.nanoTime();
+        Thread.sleep(MEASURE_NANOS / 1_000_000);
+        counting.set(false);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        stop.set(true);
+        done.await();
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(failures.get(0));
+        }
+        System.out.printf("%-26s %8d %14.0f\n", name, threads, ops.get() / seconds);
+    }
+}
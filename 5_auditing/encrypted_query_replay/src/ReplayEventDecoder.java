@@ -0,0 +1,324 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// ReplayEventDecoder reads the events of a decrypted replay chunk, which look
+// like
+//
+//   [{"data":"<base64>","duration":12},{"data":"<base64>","duration":0},...]
+//
+// straight from the decrypted bytes. Unlike parsing the chunk with
+// org.json, no String, JSONArray or intermediate Base64 strings are built:
+// each event's data is Base64-decoded into one reusable buffer and handed to
+// a Handler before the next event is read, so the memory needed is bounded
+// by the largest single event rather than by the size of the chunk.
+//
+// A decoder reuses its buffer between calls and is not thread safe.
+public class ReplayEventDecoder {
+    public interface Handler {
+        // Called for each event in order. The data buffer is only valid for
+        // the duration of the call; copy it out if it needs to be kept.
+        void onEvent(ByteBuffer data, long durationMillis) throws Exception;
+    }
+
+    private static final byte[] BASE64 = new byte[128];
+
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private ByteBuffer data = ByteBuffer.allocate(4096);
+    private ByteBuffer in;
+
+    // Decodes every event between the buffer's position and limit. The
+    // buffer's position is advanced past the events.
+    public void decode(ByteBuffer json, Handler handler) throws Exception {
+        in = json;
+        try {
+            expect('[');
+            if (peek() == ']') {
+                in.get();
+                return;
+            }
+            while (true) {
+                readEvent(handler);
+                byte next = next();
+                if (next == ']') {
+                    return;
+                }
+                if (next != ',') {
+                    throw error("expected ',' or ']'");
+                }
+            }
+        } finally {
+            in = null;
+        }
+    }
+
+    private void readEvent(Handler handler) throws Exception {
+        expect('{');
+        data.clear();
+        long duration = 0;
+        if (peek() == '}') {
+            in.get();
+        } else {
+            while (true) {
+                String key = readKey();
+                expect(':');
+                if (key.equals("data")) {
+                    readBase64();
+                } else if (key.equals("duration")) {
+                    duration = readNumber();
+                } else {
+                    skipValue();
+                }
+                byte next = next();
+                if (next == '}') {
+                    break;
+                }
+                if (next != ',') {
+                    throw error("expected ',' or '}'");
+                }
+            }
+        }
+        data.flip();
+        handler.onEvent(data, duration);
+    }
+
+    // Only the two keys we care about are recognized; anything else is
+    // skipped without building a String for it.
+    private String readKey() {
+        expect('"');
+        int start = in.position();
+        while (true) {
+            byte b = read();
+            if (b == '\\') {
+                read();
+            } else if (b == '"') {
+                break;
+            }
+        }
+        int length = in.position() - start - 1;
+        if (matches(start, length, "data")) {
+            return "data";
+        }
+        if (matches(start, length, "duration")) {
+            return "duration";
+        }
+        return "";
+    }
+
+    private boolean matches(int start, int length, String key) {
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (in.get(start + i) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readBase64() {
+        expect('"');
+        int bits = 0;
+        int count = 0;
+        while (true) {
+            byte b = read();
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                // Encoders may escape '/' as "\/"; nothing else is valid here.
+                b = read();
+                if (b != '/') {
+                    throw error("unexpected escape in Base64 data");
+                }
+            }
+            if (b == '=') {
+                continue;
+            }
+            int value = b >= 0 ? BASE64[b] : -1;
+            if (value < 0) {
+                throw error("invalid Base64 character");
+            }
+            bits = (bits << 6) | value;
+            count++;
+            if (count == 4) {
+                ensureCapacity(3);
+                data.put((byte) (bits >> 16));
+                data.put((byte) (bits >> 8));
+                data.put((byte) bits);
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 1) {
+            throw error("truncated Base64 data");
+        }
+        ensureCapacity(2);
+        if (count == 2) {
+            data.put((byte) (bits >> 4));
+        } else if (count == 3) {
+            data.put((byte) (bits >> 10));
+            data.put((byte) (bits >> 2));
+        }
+    }
+
+    // Durations are whole milliseconds, but a fractional part or exponent
+    // is tolerated and truncated. A sign is only accepted at the start of
+    // the number or of its exponent.
+    private long readNumber() {
+        skipWhitespace();
+        int start = in.position();
+        boolean integral = true;
+        boolean digits = false;
+        while (in.hasRemaining()) {
+            int i = in.position();
+            byte b = in.get(i);
+            if (b == '-' || b == '+') {
+                byte previous = i > start ? in.get(i - 1) : 0;
+                boolean exponent = previous == 'e' || previous == 'E';
+                if (!exponent && !(b == '-' && i == start)) {
+                    throw error("unexpected '" + (char) b + "' in a number");
+                }
+            } else if (b == '.' || b == 'e' || b == 'E') {
+                integral = false;
+            } else if (b >= '0' && b <= '9') {
+                digits = true;
+            } else {
+                break;
+            }
+            in.get();
+        }
+        int end = in.position();
+        if (!digits) {
+            throw error("expected a number");
+        }
+        if (integral) {
+            long value = 0;
+            boolean negative = in.get(start) == '-';
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                value = value * 10 + (in.get(i) - '0');
+            }
+            return negative ? -value : value;
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append((char) in.get(i));
+        }
+        return (long) Double.parseDouble(sb.toString());
+    }
+
+    private void skipValue() {
+        byte b = peek();
+        if (b == '"') {
+            in.get();
+            while (true) {
+                byte c = read();
+                if (c == '\\') {
+                    read();
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            boolean inString = false;
+            do {
+                byte c = read();
+                if (inString) {
+                    if (c == '\\') {
+                        read();
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+            return;
+        }
+        // A number, true, false or null
+        while (in.hasRemaining()) {
+            byte c = in.get(in.position());
+            if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                return;
+            }
+            in.get();
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (data.remaining() < extra) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(data.capacity() * 2, 16));
+            data.flip();
+            larger.put(data);
+            data = larger;
+        }
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    private byte next() {
+        skipWhitespace();
+        return read();
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        if (!in.hasRemaining()) {
+            throw error("unexpected end of replay data");
+        }
+        return in.get(in.position());
+    }
+
+    private byte read() {
+        if (!in.hasRemaining()) {
+            throw error("unexpected end of replay data");
+        }
+        return in.get();
+    }
+
+    private void skipWhitespace() {
+        while (in.hasRemaining() && isWhitespace(in.get(in.position()))) {
+            in.get();
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(
+                message + " at offset " + in.position() + " of replay data");
+    }
+}
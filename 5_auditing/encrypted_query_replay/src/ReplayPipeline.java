@@ -0,0 +1,339 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.crypto.SecretKey;
+import org.json.JSONObject;
+
+// ReplayPipeline decrypts queries and their replay chunks in three stages:
+//
+//   fetch   - a single thread walks the queries and lists replay chunks
+//   decrypt - a pool of workers unwraps the query key and decrypts the data
+//   emit    - the calling thread hands results to a Listener in query order,
+//             decoding each chunk's events from its decrypted buffer one at
+//             a time rather than building a list of them
+//
+// The stages are linked by bounded queues, so a slow listener (for example
+// one that sleeps to replay a session in real time) throttles fetching
+// instead of letting decrypted chunks pile up in memory.
+//
+// Each stage records its latency and counts into a ReplayMetrics, so a run
+// can report how long listing chunks, decrypting bodies, parsing them and
+// decrypting chunks took.
+public class ReplayPipeline {
+    public interface Listener {
+        // Called once per query, after its body has been decrypted.
+        void onQuery(Query query) throws Exception;
+
+        // Called for each replay chunk of a replayable query, in order,
+        // before its events.
+        default void onChunk(Query query, ReplayChunk chunk) throws Exception {}
+
+        // Called for each event of a chunk, in order. The data buffer is
+        // only valid for the duration of the call; copy it out if it needs
+        // to be kept.
+        default void onEvent(Query query, ByteBuffer data, long durationMillis)
+                throws Exception {}
+
+        // Called after the last chunk of each query.
+        default void onQueryDone(Query query) throws Exception {}
+    }
+
+    private static final Object END = new Object();
+
+    // Work for the decrypt stage. Each worker owns a ChunkDecryptor, since
+    // it isn't thread safe, and passes it to the tasks it runs.
+    private interface DecryptTask {
+        void run(ChunkDecryptor decryptor);
+    }
+
+    // A chunk ready to emit, with its decrypted events in a pooled buffer
+    // if it was encrypted.
+    private static class DecryptedChunk {
+        final ReplayChunk chunk;
+        final ByteBuffer plaintext;
+
+        DecryptedChunk(ReplayChunk chunk, ByteBuffer plaintext) {
+            this.chunk = chunk;
+            this.plaintext = plaintext;
+        }
+    }
+
+    private final SessionKeyCache keys;
+    private final Function<Query, Iterable<ReplayChunk>> chunkSource;
+    private final int workers;
+    private final int queueCapacity;
+    private final int lookahead;
+
+    private ReplayMetrics.Stage listChunks;
+    private ReplayMetrics.Stage bodyDecrypt;
+    private ReplayMetrics.Stage bodyParse;
+    private ReplayMetrics.Stage chunkDecrypt;
+    private LongAdder chunkCount;
+    private LongAdder chunkBytes;
+    private LongAdder eventCount;
+
+    public ReplayPipeline(
+            SessionKeyCache keys,
+            Function<Query, Iterable<ReplayChunk>> chunkSource,
+            int workers,
+            int queueCapacity) {
+        if (workers < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("workers and queueCapacity must be positive");
+        }
+        this.keys = keys;
+        this.chunkSource = chunkSource;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        // Keep enough query bodies in flight to keep every worker busy while
+        // the fetcher waits on the oldest one to decide whether to list chunks.
+        // It can't exceed the emit queue, or the fetcher would block on a full
+        // queue while the emitter waits for chunks that were never listed.
+        this.lookahead = Math.min(Math.max(2, workers * 2), queueCapacity);
+        setMetrics(new ReplayMetrics("replay_pipeline"));
+    }
+
+    // Where the stages record their latencies and counts. Set this before
+    // calling run.
+    public void setMetrics(ReplayMetrics metrics) {
+        this.listChunks = metrics.stage("list_chunks");
+        this.bodyDecrypt = metrics.stage("body_decrypt");
+        this.bodyParse = metrics.stage("body_parse");
+        this.chunkDecrypt = metrics.stage("chunk_decrypt");
+        this.chunkCount = metrics.counter("chunks");
+        this.chunkBytes = metrics.counter("chunk_bytes");
+        this.eventCount = metrics.counter("events");
+    }
+
+    // Runs all queries through the pipeline, blocking until the listener has
+    // seen every query and chunk or until any stage fails.
+    public void run(Iterable<Query> queries, Listener listener) throws Exception {
+        BlockingQueue<DecryptTask> decryptQueue = new ArrayBlockingQueue<>(queueCapacity);
+        // Decrypted chunks wait in their buffers until they are emitted, so
+        // there can be a buffer for every queued chunk as well as the ones
+        // being decrypted.
+        ChunkDecryptor.Pool buffers = new ChunkDecryptor.Pool(workers + queueCapacity, false);
+        BlockingQueue<Object> emitQueue = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService decryptors = Executors.newFixedThreadPool(workers);
+        CompletableFuture<Void> fetchFailure = new CompletableFuture<>();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread emitter = Thread.currentThread();
+
+        for (int i = 0; i < workers; i++) {
+            decryptors.execute(
+                    () -> {
+                        try {
+                            ChunkDecryptor decryptor = new ChunkDecryptor(buffers);
+                            while (true) {
+                                decryptQueue.take().run(decryptor);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } catch (GeneralSecurityException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+
+        Thread fetcher =
+                new Thread(
+                        () -> {
+                            try {
+                                fetch(queries, decryptQueue, emitQueue);
+                                emitQueue.put(END);
+                            } catch (Throwable t) {
+                                // The emitter may be blocked waiting for work
+                                // that will never arrive, so wake it up.
+                                if (!done.get()) {
+                                    fetchFailure.completeExceptionally(t);
+                                    emitter.interrupt();
+                                }
+                            }
+                        },
+                        "replay-fetch");
+        fetcher.setDaemon(true);
+        fetcher.start();
+
+        try {
+            emit(emitQueue, listener, buffers);
+        } catch (InterruptedException e) {
+            if (fetchFailure.isCompletedExceptionally()) {
+                Thread.interrupted();
+                await(fetchFailure);
+            }
+            throw e;
+        } finally {
+            done.set(true);
+            fetcher.interrupt();
+            decryptors.shutdownNow();
+        }
+    }
+
+    private void fetch(
+            Iterable<Query> queries,
+            BlockingQueue<DecryptTask> decryptQueue,
+            BlockingQueue<Object> emitQueue)
+            throws Exception {
+        Deque<QueryWork> pending = new ArrayDeque<>();
+        for (Query q : queries) {
+            QueryWork work = new QueryWork(queueCapacity);
+            if (q.getEncrypted()) {
+                decryptQueue.put(
+                        decryptor -> {
+                            try {
+                                byte[] body = Base64.getDecoder().decode(q.getQueryBody());
+                                SecretKey key = keys.get(q.getQueryKey());
+                                long start = System.nanoTime();
+                                q.setQueryBody(
+                                        keys.getDecryptor().decryptQueryData(key, body));
+                                bodyDecrypt.record(start);
+                                start = System.nanoTime();
+                                q.setReplayable(
+                                        new JSONObject(q.getQueryBody())
+                                                .optString("type")
+                                                .equals("shell"));
+                                bodyParse.record(start);
+                                work.body.complete(q);
+                            } catch (Throwable t) {
+                                work.body.completeExceptionally(t);
+                            }
+                        });
+            } else {
+                work.body.complete(q);
+            }
+            emitQueue.put(work);
+            pending.add(work);
+            if (pending.size() >= lookahead) {
+                fetchChunks(pending.poll(), decryptQueue);
+            }
+        }
+        while (!pending.isEmpty()) {
+            fetchChunks(pending.poll(), decryptQueue);
+        }
+    }
+
+    private void fetchChunks(QueryWork work, BlockingQueue<DecryptTask> decryptQueue)
+            throws Exception {
+        // Whether an encrypted query is replayable is only known once its
+        // body is decrypted, so wait for it before listing its chunks.
+        Query q = await(work.body);
+        if (q.getReplayable()) {
+            for (ReplayChunk chunk : ReplayMetrics.timed(listChunks, chunkSource.apply(q))) {
+                chunkCount.increment();
+                CompletableFuture<DecryptedChunk> result = new CompletableFuture<>();
+                if (q.getEncrypted()) {
+                    chunkBytes.add(chunk.getData().length);
+                    decryptQueue.put(
+                            decryptor -> {
+                                try {
+                                    SecretKey key = keys.get(q.getQueryKey());
+                                    long start = System.nanoTime();
+                                    ByteBuffer plaintext = decryptor.decrypt(key, chunk.getData());
+                                    chunkDecrypt.record(start);
+                                    result.complete(new DecryptedChunk(chunk, plaintext));
+                                } catch (Throwable t) {
+                                    result.completeExceptionally(t);
+                                }
+                            });
+                } else {
+                    result.complete(new DecryptedChunk(chunk, null));
+                }
+                work.chunks.put(result);
+            }
+        }
+        work.chunks.put(QueryWork.NO_MORE_CHUNKS);
+    }
+
+    private void emit(
+            BlockingQueue<Object> emitQueue, Listener listener, ChunkDecryptor.Pool buffers)
+            throws Exception {
+        ReplayEventDecoder decoder = new ReplayEventDecoder();
+        while (true) {
+            Object next = emitQueue.take();
+            if (next == END) {
+                break;
+            }
+            QueryWork work = (QueryWork) next;
+            Query q = await(work.body);
+            listener.onQuery(q);
+            while (true) {
+                CompletableFuture<DecryptedChunk> pending = work.chunks.take();
+                if (pending == QueryWork.NO_MORE_CHUNKS) {
+                    break;
+                }
+                DecryptedChunk chunk = await(pending);
+                listener.onChunk(q, chunk.chunk);
+                if (chunk.plaintext == null) {
+                    for (ReplayChunkEvent event : chunk.chunk.getEvents()) {
+                        eventCount.increment();
+                        listener.onEvent(
+                                q,
+                                ByteBuffer.wrap(event.getData()),
+                                event.getDuration().toMillis());
+                    }
+                    continue;
+                }
+                try {
+                    decoder.decode(
+                            chunk.plaintext,
+                            (data, durationMillis) -> {
+                                eventCount.increment();
+                                listener.onEvent(q, data, durationMillis);
+                            });
+                } finally {
+                    buffers.release(chunk.plaintext);
+                }
+            }
+            listener.onQueryDone(q);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // The unit of work handed from the fetch stage to the emit stage. The
+    // chunk queue is bounded so a long session can't get ahead of the emitter.
+    private static class QueryWork {
+        static final CompletableFuture<DecryptedChunk> NO_MORE_CHUNKS = new CompletableFuture<>();
+
+        final CompletableFuture<Query> body = new CompletableFuture<>();
+        final BlockingQueue<CompletableFuture<DecryptedChunk>> chunks;
+
+        QueryWork(int capacity) {
+            this.chunks = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
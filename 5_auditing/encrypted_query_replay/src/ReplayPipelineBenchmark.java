@@ -0,0 +1,249 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.MGF1ParameterSpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import org.json.JSONObject;
+
+// ReplayPipelineBenchmark compares the sequential decryption loop used by
+// earlier versions of EncryptedQueryReplay with ReplayPipeline and its
+// SessionKeyCache. It runs
+// entirely offline against synthetic encrypted queries, so no API keys are
+// needed. Run it with `gradle benchmark`. It ends with the ReplayMetrics
+// report of one more pipelined run.
+public class ReplayPipelineBenchmark {
+    static final int QUERIES = 200;
+    static final int CHUNKS_PER_QUERY = 20;
+    static final int EVENTS_PER_CHUNK = 50;
+    static final int EVENT_SIZE = 256;
+
+    static final SecureRandom random = new SecureRandom();
+
+    public static void main(String[] args) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        System.out.printf(
+                "Generating %d encrypted queries with %d chunks each...\n",
+                QUERIES, CHUNKS_PER_QUERY);
+        Map<String, List<byte[]>> chunkData = new HashMap<>();
+        List<Query> template = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            byte[] symmetricKey = new byte[32];
+            random.nextBytes(symmetricKey);
+            Query q = new Query();
+            q.setId("q" + i);
+            q.setEncrypted(true);
+            q.setQueryKey(
+                    Base64.getEncoder().encodeToString(wrapKey(keyPair.getPublic(), symmetricKey)));
+            q.setQueryBody(
+                    Base64.getEncoder()
+                            .encodeToString(encrypt(symmetricKey, "{\"type\":\"shell\"}")));
+            template.add(q);
+
+            List<byte[]> chunks = new ArrayList<>();
+            for (int c = 0; c < CHUNKS_PER_QUERY; c++) {
+                chunks.add(encrypt(symmetricKey, syntheticEvents()));
+            }
+            chunkData.put(q.getId(), chunks);
+        }
+        long totalBytes =
+                chunkData.values().stream().flatMap(List::stream).mapToLong(b -> b.length).sum();
+
+        // Warm up the JIT and the crypto providers before measuring.
+        sequential(keyPair.getPrivate(), copy(template), chunkData);
+
+        report(
+                "sequential",
+                totalBytes,
+                () -> sequential(keyPair.getPrivate(), copy(template), chunkData));
+        int maxWorkers = 1;
+        for (int workers = 1; workers <= Runtime.getRuntime().availableProcessors(); workers *= 2) {
+            int w = workers;
+            maxWorkers = w;
+            report(
+                    String.format("pipeline (%d workers)", w),
+                    totalBytes,
+                    () ->
+                            pipelined(
+                                    keyPair.getPrivate(),
+                                    copy(template),
+                                    chunkData,
+                                    w,
+                                    new ReplayMetrics("benchmark")));
+        }
+
+        // Where the time goes in the widest pipeline.
+        ReplayMetrics metrics = new ReplayMetrics("benchmark");
+        pipelined(keyPair.getPrivate(), copy(template), chunkData, maxWorkers, metrics);
+        System.out.print(metrics.report());
+    }
+
+    interface Run {
+        long events() throws Exception;
+    }
+
+    static void report(String name, long totalBytes, Run run) throws Exception {
+        long start = System.nanoTime();
+        long events = run.events();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(
+                "%-24s %8.2fs %10.0f events/s %8.1f MB/s\n",
+                name, seconds, events / seconds, totalBytes / seconds / (1024 * 1024));
+    }
+
+    // The original single-threaded loop from EncryptedQueryReplay, which
+    // unwraps the query key again for every replay chunk.
+    static long sequential(
+            PrivateKey privateKey, List<Query> queries, Map<String, List<byte[]>> chunkData)
+            throws Exception {
+        long events = 0;
+        for (Query q : queries) {
+            q.setQueryBody(
+                    EncryptedQueryReplay.decryptQueryData(
+                            privateKey,
+                            q.getQueryKey(),
+                            Base64.getDecoder().decode(q.getQueryBody())));
+            q.setReplayable(new JSONObject(q.getQueryBody()).optString("type").equals("shell"));
+            if (q.getReplayable()) {
+                for (ReplayChunk chunk : chunks(q, chunkData)) {
+                    byte[] key = EncryptedQueryReplay.unwrapQueryKey(privateKey, q.getQueryKey());
+                    EncryptedQueryReplay.decryptReplayChunk(new SecretKeySpec(key, "AES"), chunk);
+                    events += chunk.getEvents().size();
+                }
+            }
+        }
+        return events;
+    }
+
+    static long pipelined(
+            PrivateKey privateKey,
+            List<Query> queries,
+            Map<String, List<byte[]>> chunkData,
+            int workers,
+            ReplayMetrics metrics)
+            throws Exception {
+        AtomicLong events = new AtomicLong();
+        SessionKeyCache keys =
+                new SessionKeyCache(new QueryDecryptor(privateKey), 1024, Duration.ofMinutes(10));
+        keys.setMetrics(metrics);
+        ReplayPipeline pipeline =
+                new ReplayPipeline(keys, q -> chunks(q, chunkData), workers, 64);
+        pipeline.setMetrics(metrics);
+        pipeline.run(
+                queries,
+                new ReplayPipeline.Listener() {
+                    public void onQuery(Query q) {}
+
+                    public void onEvent(Query q, ByteBuffer data, long durationMillis) {
+                        events.incrementAndGet();
+                    }
+                });
+        keys.clear();
+        return events.get();
+    }
+
+    static List<ReplayChunk> chunks(Query q, Map<String, List<byte[]>> chunkData) {
+        List<ReplayChunk> chunks = new ArrayList<>();
+        for (byte[] data : chunkData.get(q.getId())) {
+            ReplayChunk chunk = new ReplayChunk();
+            chunk.setData(data);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    static List<Query> copy(List<Query> template) {
+        List<Query> queries = new ArrayList<>();
+        for (Query t : template) {
+            Query q = new Query();
+            q.setId(t.getId());
+            q.setEncrypted(true);
+            q.setQueryKey(t.getQueryKey());
+            q.setQueryBody(t.getQueryBody());
+            queries.add(q);
+        }
+        return queries;
+    }
+
+    static String syntheticEvents() {
+        StringBuilder sb = new StringBuilder("[");
+        byte[] data = new byte[EVENT_SIZE];
+        for (int i = 0; i < EVENTS_PER_CHUNK; i++) {
+            random.nextBytes(data);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"data\":\"")
+                    .append(Base64.getEncoder().encodeToString(data))
+                    .append("\",\"duration\":")
+                    .append(random.nextInt(100))
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    static byte[] wrapKey(PublicKey publicKey, byte[] symmetricKey) throws Exception {
+        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        cipher.init(
+                Cipher.ENCRYPT_MODE,
+                publicKey,
+                new OAEPParameterSpec(
+                        "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+        return cipher.doFinal(symmetricKey);
+    }
+
+    // Encrypts the text the same way StrongDM does: AES-CBC with the IV
+    // prepended and the plaintext padded with NUL bytes to the block size.
+    static byte[] encrypt(byte[] symmetricKey, String text) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+        int blockSize = cipher.getBlockSize();
+        byte[] plaintext = text.getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[(plaintext.length + blockSize - 1) / blockSize * blockSize];
+        System.arraycopy(plaintext, 0, padded, 0, plaintext.length);
+
+        byte[] iv = new byte[blockSize];
+        random.nextBytes(iv);
+        cipher.init(
+                Cipher.ENCRYPT_MODE,
+                new SecretKeySpec(symmetricKey, "AES"),
+                new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(padded);
+
+        byte[] out = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, out, 0, iv.length);
+        System.arraycopy(ciphertext, 0, out, iv.length, ciphertext.length);
+        return out;
+    }
+}
@@ -0,0 +1,207 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+
+// SessionKeyCache remembers the AES keys unwrapped from encrypted query keys,
+// so the RSA private key operation runs once per query instead of once for
+// the query body and once more for every replay chunk.
+//
+// The cache is bounded both by size (least recently used keys are evicted
+// first) and by age. Evicted keys are zeroed; using a key after it has been
+// evicted fails with an IllegalStateException rather than silently
+// decrypting with an empty key, so size the cache well above the number of
+// queries being decrypted concurrently.
+//
+// Each unwrap's latency is recorded in the "rsa_unwrap" stage of a
+// ReplayMetrics.
+public class SessionKeyCache {
+    private final QueryDecryptor decryptor;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ReplayMetrics.Stage unwraps = new ReplayMetrics("session_keys").stage("rsa_unwrap");
+
+    public SessionKeyCache(QueryDecryptor decryptor, int maxEntries, Duration ttl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.decryptor = decryptor;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // Returns the AES key wrapped by encryptedQueryKey, unwrapping it with
+    // the private key on a miss. Concurrent misses for the same key wait for
+    // a single unwrap rather than each doing their own.
+    public SecretKey get(String encryptedQueryKey) throws Exception {
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(encryptedQueryKey);
+            if (entry != null && System.nanoTime() - entry.createdAt > ttlNanos) {
+                entries.remove(encryptedQueryKey);
+                evict(entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(encryptedQueryKey, entry);
+                owner = true;
+                trim();
+            }
+        }
+
+        if (!owner) {
+            hits.incrementAndGet();
+            return await(entry.key);
+        }
+        misses.incrementAndGet();
+        try {
+            long start = System.nanoTime();
+            CachedKey key =
+                    new CachedKey(decryptor.unwrapQueryKey(encryptedQueryKey), "AES");
+            unwraps.record(start);
+            entry.key.complete(key);
+            return key;
+        } catch (Exception e) {
+            synchronized (entries) {
+                entries.remove(encryptedQueryKey, entry);
+            }
+            entry.key.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public void setMetrics(ReplayMetrics metrics) {
+        this.unwraps = metrics.stage("rsa_unwrap");
+    }
+
+    // The decryptor keys are unwrapped with, which can also decrypt data
+    // with the keys returned by get.
+    public QueryDecryptor getDecryptor() {
+        return decryptor;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    // Evicts and zeroes every cached key.
+    public void clear() {
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                evict(entry);
+            }
+            entries.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "session keys: %d hits, %d misses, %d evictions",
+                hits(), misses(), evictions());
+    }
+
+    private void trim() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            evict(eldest);
+        }
+    }
+
+    private void evict(Entry entry) {
+        evictions.incrementAndGet();
+        entry.key.thenAccept(CachedKey::destroy);
+    }
+
+    private static SecretKey await(CompletableFuture<CachedKey> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Entry {
+        final long createdAt = System.nanoTime();
+        final CompletableFuture<CachedKey> key = new CompletableFuture<>();
+    }
+
+    // A SecretKey whose key material can be wiped. SecretKeySpec keeps its
+    // own private copy of the key bytes that can't be cleared, so the cache
+    // holds the bytes itself and hands ciphers a fresh copy on each use.
+    private static class CachedKey implements SecretKey {
+        private final byte[] key;
+        private final String algorithm;
+        private boolean destroyed;
+
+        CachedKey(byte[] key, String algorithm) {
+            this.key = key;
+            this.algorithm = algorithm;
+        }
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public String getFormat() {
+            return "RAW";
+        }
+
+        public synchronized byte[] getEncoded() {
+            if (destroyed) {
+                throw new IllegalStateException("session key was evicted from the cache");
+            }
+            return key.clone();
+        }
+
+        public synchronized void destroy() {
+            Arrays.fill(key, (byte) 0);
+            destroyed = true;
+        }
+
+        public synchronized boolean isDestroyed() {
+            return destroyed;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// EntityCodec turns SDK entities (resources, accounts, roles, and the
+// objects nested in them) into JSON and back. The SDK's model classes are
+// plain beans, so an entity is written as its class name plus every
+// property with both a getter and a setter:
+//
+//   {"@type":"Redis","Id":"rs-1234","Name":"cache","Port":6379,"Tags":{...}}
+//
+// and read back by constructing the class and calling the setters. Dates
+// are stored as epoch milliseconds and durations in ISO-8601. Properties
+// that are null aren't written.
+final class EntityCodec {
+    private static final String API_PACKAGE = "com.strongdm.api.";
+
+    private static final Map<Class<?>, Map<String, Property>> PROPERTIES =
+            new ConcurrentHashMap<>();
+    private static final Map<String, Class<?>> TYPES = new ConcurrentHashMap<>();
+
+    private EntityCodec() {}
+
+    static JSONObject encode(Object entity) {
+        JSONObject json = new JSONObject();
+        json.put("@type", entity.getClass().getSimpleName());
+        for (Map.Entry<String, Property> e : properties(entity.getClass()).entrySet()) {
+            Object value;
+            try {
+                value = e.getValue().getter.invoke(entity);
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("can't read " + e.getValue().getter, ex);
+            }
+            if (value != null) {
+                json.put(e.getKey(), encodeValue(value));
+            }
+        }
+        return json;
+    }
+
+    static Object decode(JSONObject json) {
+        String typeName = json.getString("@type");
+        Class<?> type =
+                TYPES.computeIfAbsent(
+                        typeName,
+                        name -> {
+                            try {
+                                return Class.forName(API_PACKAGE + name);
+                            } catch (ClassNotFoundException e) {
+                                throw new IllegalArgumentException("unknown type " + name, e);
+                            }
+                        });
+        Object entity;
+        try {
+            entity = type.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("can't construct " + type, e);
+        }
+        Map<String, Property> properties = properties(type);
+        for (String key : json.keySet()) {
+            Property property = properties.get(key);
+            if (property == null) {
+                // Written by another SDK version; skip it.
+                continue;
+            }
+            try {
+                property.setter.invoke(entity, decodeValue(json.get(key), property.type));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("can't set " + property.setter, e);
+            }
+        }
+        return entity;
+    }
+
+    private static Object encodeValue(Object value) {
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof Duration || value instanceof Instant) {
+            return value.toString();
+        } else if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        } else if (value instanceof Map) {
+            JSONObject json = new JSONObject();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                if (e.getValue() != null) {
+                    json.put(String.valueOf(e.getKey()), encodeValue(e.getValue()));
+                }
+            }
+            return json;
+        } else if (value instanceof Collection) {
+            JSONArray json = new JSONArray();
+            for (Object element : (Collection<?>) value) {
+                json.put(element == null ? JSONObject.NULL : encodeValue(element));
+            }
+            return json;
+        } else if (value.getClass().getName().startsWith(API_PACKAGE)) {
+            return encode(value);
+        }
+        throw new IllegalArgumentException("can't store a " + value.getClass().getName());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object decodeValue(Object json, Type type) {
+        if (json == null || json == JSONObject.NULL) {
+            return null;
+        }
+        Class<?> raw = rawType(type);
+        if (raw == String.class) {
+            return json.toString();
+        } else if (raw == int.class || raw == Integer.class) {
+            return ((Number) json).intValue();
+        } else if (raw == long.class || raw == Long.class) {
+            return ((Number) json).longValue();
+        } else if (raw == double.class || raw == Double.class) {
+            return ((Number) json).doubleValue();
+        } else if (raw == float.class || raw == Float.class) {
+            return ((Number) json).floatValue();
+        } else if (raw == short.class || raw == Short.class) {
+            return ((Number) json).shortValue();
+        } else if (raw == boolean.class || raw == Boolean.class) {
+            return json;
+        } else if (raw.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) raw, json.toString());
+        } else if (raw == Date.class) {
+            return new Date(((Number) json).longValue());
+        } else if (raw == Duration.class) {
+            return Duration.parse(json.toString());
+        } else if (raw == Instant.class) {
+            return Instant.parse(json.toString());
+        } else if (raw == byte[].class) {
+            return Base64.getDecoder().decode(json.toString());
+        } else if (Map.class.isAssignableFrom(raw)) {
+            Type valueType = typeArgument(type, 1);
+            JSONObject object = (JSONObject) json;
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : object.keySet()) {
+                map.put(key, decodeValue(object.get(key), valueType));
+            }
+            return map;
+        } else if (Collection.class.isAssignableFrom(raw)) {
+            Type elementType = typeArgument(type, 0);
+            List<Object> list = new ArrayList<>();
+            for (Object element : (JSONArray) json) {
+                list.add(decodeValue(element, elementType));
+            }
+            return list;
+        } else if (json instanceof JSONObject) {
+            return decode((JSONObject) json);
+        }
+        throw new IllegalArgumentException("can't read a " + raw.getName());
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return type instanceof Class ? (Class<?>) type : Object.class;
+    }
+
+    private static Type typeArgument(Type type, int i) {
+        if (type instanceof ParameterizedType) {
+            return ((ParameterizedType) type).getActualTypeArguments()[i];
+        }
+        return Object.class;
+    }
+
+    // The properties of a class with both a public getter and a matching
+    // setter, keyed by name without the get, is or set prefix.
+    private static Map<String, Property> properties(Class<?> type) {
+        return PROPERTIES.computeIfAbsent(
+                type,
+                t -> {
+                    Map<String, Property> properties = new LinkedHashMap<>();
+                    for (Method getter : t.getMethods()) {
+                        String name = getter.getName();
+                        String property;
+                        if (name.startsWith("get") && !name.equals("getClass")) {
+                            property = name.substring(3);
+                        } else if (name.startsWith("is")) {
+                            property = name.substring(2);
+                        } else {
+                            continue;
+                        }
+                        if (getter.getParameterCount() != 0
+                                || Modifier.isStatic(getter.getModifiers())) {
+                            continue;
+                        }
+                        try {
+                            Method setter = t.getMethod("set" + property, getter.getReturnType());
+                            properties.put(
+                                    property,
+                                    new Property(
+                                            getter, setter, setter.getGenericParameterTypes()[0]));
+                        } catch (NoSuchMethodException e) {
+                            // Read-only, like a resource's health; not stored.
+                        }
+                    }
+                    return properties;
+                });
+    }
+
+    private static class Property {
+        final Method getter;
+        final Method setter;
+        final Type type;
+
+        Property(Method getter, Method setter, Type type) {
+            this.getter = getter;
+            this.setter = setter;
+            this.type = type;
+        }
+    }
+}
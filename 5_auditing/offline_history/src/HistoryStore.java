@@ -0,0 +1,746 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import org.json.JSONObject;
+
+// HistoryStore keeps a local copy of the resource, account and role
+// histories, so "what did this look like at the time" is answered from disk
+// instead of with a snapshotAt(...) round trip:
+//
+//   HistoryStore store = new HistoryStore(Path.of("history-store"));
+//   store.sync(client);                        // once, or now and then
+//   Resource r = store.getResource(id, date);  // offline from here on
+//   for (Account a : store.accounts(date)) { ... }
+//
+// Each sync lists the versions from SYNC_OVERLAP before the newest one
+// stored, and writes those it hasn't seen to new segment files, one or more
+// per kind of entity. A segment is never changed once written, but once a
+// kind has more than COMPACT_SEGMENTS of them, the newest are merged into
+// one, so lookups don't slow down sync by sync. A segment holds the entities as JSON records
+// followed by an index sorted by (entity ID, timestamp):
+//
+//   header     magic, format version
+//   records    [int length][JSON: activity ID and entity] ...
+//   ids        the distinct entity IDs, UTF-8, in byte order
+//   directory  per ID: [long id offset][int id length][int first][int count]
+//   versions   per version: [long timestamp][long deleted at][long record]
+//   footer     offsets and counts, the segment's time range, magic
+//
+// Segments are memory-mapped, so a lookup is a binary search over the
+// directory followed by one over the ID's versions; the record is only
+// read for the version found. Segments are written to a temporary file and
+// renamed into place once synced, so a crash never leaves half a segment;
+// segments that were merged are deleted only after the merged one is in
+// place, and a crash in between leaves versions stored twice, which lookups
+// don't mind.
+//
+// Lookups can run from any number of threads, including during a sync.
+public class HistoryStore {
+    public static final String RESOURCES = "resources";
+    public static final String ACCOUNTS = "accounts";
+    public static final String ROLES = "roles";
+
+    // Records written to one segment before starting another. Together
+    // with its index, a segment stays within what one mapping can cover.
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    // Segments of one kind beyond which the newest are merged.
+    static final int COMPACT_SEGMENTS = 8;
+
+    // How far before the newest version stored a sync starts listing, for
+    // audit records that became visible after newer ones.
+    static final Duration SYNC_OVERLAP = Duration.ofHours(1);
+
+    private static final int MAGIC = 0x53444d48;
+    private static final int FORMAT = 1;
+    private static final int FOOTER_BYTES = 52;
+    private static final int DIRECTORY_ENTRY_BYTES = 20;
+    private static final int VERSION_ENTRY_BYTES = 24;
+
+    // One version of an entity, as listed by a history API.
+    public static class Version {
+        private final String id;
+        private final long timestamp;
+        private final long deletedAt;
+        private final String activityId;
+        private final Object entity;
+
+        public Version(
+                String id, Date timestamp, Date deletedAt, String activityId, Object entity) {
+            this.id = id;
+            this.timestamp = timestamp.getTime();
+            this.deletedAt = deletedAt == null ? Long.MAX_VALUE : deletedAt.getTime();
+            this.activityId = activityId;
+            this.entity = entity;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Date getTimestamp() {
+            return new Date(timestamp);
+        }
+
+        // When the entity was deleted, or null if this version wasn't.
+        public Date getDeletedAt() {
+            return deletedAt == Long.MAX_VALUE ? null : new Date(deletedAt);
+        }
+
+        public String getActivityId() {
+            return activityId;
+        }
+
+        public Object getEntity() {
+            return entity;
+        }
+    }
+
+    private final Path dir;
+    private final Map<String, List<Segment>> segments = new HashMap<>();
+    private int nextSegment = 1;
+
+    public HistoryStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        Map<Integer, Path> existing = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".seg.tmp")) {
+                    // Left by a sync that didn't finish.
+                    Files.delete(file);
+                } else if (name.endsWith(".seg")) {
+                    String[] parts = name.split("\\.");
+                    existing.put(Integer.parseInt(parts[1]), file);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> e : existing.entrySet()) {
+            String kind = e.getValue().getFileName().toString().split("\\.")[0];
+            segments(kind).add(new Segment(e.getValue()));
+            nextSegment = e.getKey() + 1;
+        }
+    }
+
+    // Appends the resource, account and role versions listed since the last
+    // sync, less SYNC_OVERLAP; versions already stored are skipped. The first
+    // sync lists the histories in full. Returns the number of versions
+    // appended.
+    public synchronized long sync(Client client) throws IOException {
+        String from = syncFrom(RESOURCES);
+        Iterable<ResourceHistory> resources =
+                from == null
+                        ? client.resourcesHistory().list("")
+                        : client.resourcesHistory().list("timestamp:>=?", from);
+        from = syncFrom(ACCOUNTS);
+        Iterable<AccountHistory> accounts =
+                from == null
+                        ? client.accountsHistory().list("")
+                        : client.accountsHistory().list("timestamp:>=?", from);
+        from = syncFrom(ROLES);
+        Iterable<RoleHistory> roles =
+                from == null
+                        ? client.rolesHistory().list("")
+                        : client.rolesHistory().list("timestamp:>=?", from);
+
+        long appended = 0;
+        appended +=
+                append(
+                        RESOURCES,
+                        map(
+                                resources,
+                                h ->
+                                        new Version(
+                                                h.getResource().getId(),
+                                                h.getTimestamp(),
+                                                h.getDeletedAt(),
+                                                h.getActivityId(),
+                                                h.getResource())));
+        appended +=
+                append(
+                        ACCOUNTS,
+                        map(
+                                accounts,
+                                h ->
+                                        new Version(
+                                                h.getAccount().getId(),
+                                                h.getTimestamp(),
+                                                h.getDeletedAt(),
+                                                h.getActivityId(),
+                                                h.getAccount())));
+        appended +=
+                append(
+                        ROLES,
+                        map(
+                                roles,
+                                h ->
+                                        new Version(
+                                                h.getRole().getId(),
+                                                h.getTimestamp(),
+                                                h.getDeletedAt(),
+                                                h.getActivityId(),
+                                                h.getRole())));
+        return appended;
+    }
+
+    // The time a sync of kind lists from, as the history filters take it, or
+    // null if nothing of the kind is stored.
+    String syncFrom(String kind) {
+        long mark = mark(kind);
+        if (mark == Long.MIN_VALUE) {
+            return null;
+        }
+        return Instant.ofEpochMilli(mark - SYNC_OVERLAP.toMillis()).toString();
+    }
+
+    // Appends versions of one kind of entity, skipping those already
+    // stored. Audit records can become visible after newer ones, so older
+    // versions are looked up rather than assumed to be stored; only those
+    // newer than everything stored are appended without a lookup. Returns
+    // the number appended.
+    public synchronized long append(String kind, Iterable<Version> versions) throws IOException {
+        long mark = mark(kind);
+        long appended = 0;
+        SegmentWriter writer = null;
+        try {
+            for (Version v : versions) {
+                if (v.timestamp <= mark && contains(kind, v)) {
+                    continue;
+                }
+                if (writer == null) {
+                    writer = new SegmentWriter(kind, nextSegment++);
+                }
+                writer.add(v);
+                appended++;
+                if (writer.recordBytes() >= MAX_SEGMENT_BYTES) {
+                    segments(kind).add(writer.seal());
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                segments(kind).add(writer.seal());
+                writer = null;
+            }
+        } finally {
+            if (writer != null) {
+                writer.abandon();
+            }
+        }
+        compact(kind);
+        return appended;
+    }
+
+    // Merges the newest segments of kind, as many as fit in
+    // MAX_SEGMENT_BYTES of records, once there are more than
+    // COMPACT_SEGMENTS. The merged segment replaces them at the end of the
+    // list, so later segments still win ties.
+    private void compact(String kind) throws IOException {
+        List<Segment> kindSegments = segments(kind);
+        if (kindSegments.size() <= COMPACT_SEGMENTS) {
+            return;
+        }
+        int first = kindSegments.size();
+        long bytes = 0;
+        while (first > 0 && bytes + kindSegments.get(first - 1).recordBytes <= MAX_SEGMENT_BYTES) {
+            first--;
+            bytes += kindSegments.get(first).recordBytes;
+        }
+        if (kindSegments.size() - first < 2) {
+            return;
+        }
+        List<Segment> merged = new ArrayList<>(kindSegments.subList(first, kindSegments.size()));
+        SegmentWriter writer = new SegmentWriter(kind, nextSegment++);
+        try {
+            for (Segment s : merged) {
+                s.copyTo(writer);
+            }
+            kindSegments.add(writer.seal());
+            writer = null;
+        } finally {
+            if (writer != null) {
+                writer.abandon();
+            }
+        }
+        kindSegments.removeAll(merged);
+        for (Segment s : merged) {
+            Files.delete(s.file);
+        }
+    }
+
+    // The newest timestamp stored of kind, or Long.MIN_VALUE.
+    private long mark(String kind) {
+        long mark = Long.MIN_VALUE;
+        for (Segment s : segments(kind)) {
+            mark = Math.max(mark, s.maxTimestamp);
+        }
+        return mark;
+    }
+
+    public Resource getResource(String id, Date at) {
+        return (Resource) get(RESOURCES, id, at);
+    }
+
+    public Account getAccount(String id, Date at) {
+        return (Account) get(ACCOUNTS, id, at);
+    }
+
+    public Role getRole(String id, Date at) {
+        return (Role) get(ROLES, id, at);
+    }
+
+    // Returns the entity as it was at the given time, or null if it didn't
+    // exist then (or the store has no history of it).
+    public Object get(String kind, String id, Date at) {
+        Version v = getVersion(kind, id, at);
+        return v == null ? null : v.entity;
+    }
+
+    // Returns the version of the entity current at the given time, or null.
+    public Version getVersion(String kind, String id, Date at) {
+        Found found = find(kind, id, at.getTime());
+        if (found == null || at.getTime() >= found.segment.deletedAt(found.version)) {
+            return null;
+        }
+        return found.segment.version(id, found.version);
+    }
+
+    public Iterable<Resource> resources(Date at) {
+        return map(snapshot(RESOURCES, at), v -> (Resource) v.entity);
+    }
+
+    public Iterable<Account> accounts(Date at) {
+        return map(snapshot(ACCOUNTS, at), v -> (Account) v.entity);
+    }
+
+    public Iterable<Role> roles(Date at) {
+        return map(snapshot(ROLES, at), v -> (Role) v.entity);
+    }
+
+    // Lists the versions current at the given time, one per entity that
+    // existed then, in ID order. Segments are merged as the listing is
+    // iterated, so it doesn't hold the snapshot in memory.
+    public Iterable<Version> snapshot(String kind, Date at) {
+        List<Segment> kindSegments = new ArrayList<>(segments(kind));
+        long time = at.getTime();
+        return () -> new SnapshotIterator(kindSegments, time);
+    }
+
+    private List<Segment> segments(String kind) {
+        synchronized (segments) {
+            return segments.computeIfAbsent(kind, k -> new CopyOnWriteArrayList<>());
+        }
+    }
+
+    private boolean contains(String kind, Version v) {
+        Found found = find(kind, v.id, v.timestamp);
+        return found != null && found.segment.timestamp(found.version) == v.timestamp;
+    }
+
+    // Finds the newest version of an entity at or before a time, deleted or
+    // not.
+    private Found find(String kind, String id, long time) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        Found best = null;
+        for (Segment s : segments(kind)) {
+            if (s.minTimestamp > time) {
+                continue;
+            }
+            int entry = s.find(key);
+            if (entry < 0) {
+                continue;
+            }
+            int v = s.latest(entry, time);
+            // Later segments win ties, as later listings would.
+            if (v >= 0
+                    && (best == null
+                            || s.timestamp(v) >= best.segment.timestamp(best.version))) {
+                best = new Found(s, v);
+            }
+        }
+        return best;
+    }
+
+    private static <T, R> Iterable<R> map(Iterable<T> source, Function<T, R> f) {
+        return () ->
+                new Iterator<R>() {
+                    final Iterator<T> it = source.iterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public R next() {
+                        return f.apply(it.next());
+                    }
+                };
+    }
+
+    private static int compareUnsigned(byte[] a, ByteBuffer b, int offset, int length) {
+        int n = Math.min(a.length, length);
+        for (int i = 0; i < n; i++) {
+            int c = Integer.compare(a[i] & 0xFF, b.get(offset + i) & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length, length);
+    }
+
+    private static class Found {
+        final Segment segment;
+        final int version;
+
+        Found(Segment segment, int version) {
+            this.segment = segment;
+            this.version = version;
+        }
+    }
+
+    // Merges the directories of a kind's segments in ID order, picking for
+    // each ID the newest version at or before the snapshot time.
+    private static class SnapshotIterator implements Iterator<Version> {
+        private final long time;
+        private final PriorityQueue<Cursor> cursors =
+                new PriorityQueue<>(
+                        (a, b) -> {
+                            int c = Arrays.compareUnsigned(a.id, b.id);
+                            return c != 0 ? c : Integer.compare(a.order, b.order);
+                        });
+        private Version next;
+
+        SnapshotIterator(List<Segment> segments, long time) {
+            this.time = time;
+            for (int i = 0; i < segments.size(); i++) {
+                Segment s = segments.get(i);
+                if (s.minTimestamp <= time && s.idCount > 0) {
+                    cursors.add(new Cursor(s, i));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !cursors.isEmpty()) {
+                byte[] id = cursors.peek().id;
+                Segment best = null;
+                int bestVersion = -1;
+                while (!cursors.isEmpty() && Arrays.equals(cursors.peek().id, id)) {
+                    Cursor c = cursors.poll();
+                    int v = c.segment.latest(c.entry, time);
+                    if (v >= 0
+                            && (best == null
+                                    || c.segment.timestamp(v) >= best.timestamp(bestVersion))) {
+                        best = c.segment;
+                        bestVersion = v;
+                    }
+                    if (c.advance()) {
+                        cursors.add(c);
+                    }
+                }
+                if (best != null && time < best.deletedAt(bestVersion)) {
+                    next = best.version(new String(id, StandardCharsets.UTF_8), bestVersion);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Version next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Version v = next;
+            next = null;
+            return v;
+        }
+    }
+
+    private static class Cursor {
+        final Segment segment;
+        final int order;
+        int entry;
+        byte[] id;
+
+        Cursor(Segment segment, int order) {
+            this.segment = segment;
+            this.order = order;
+            this.id = segment.id(0);
+        }
+
+        boolean advance() {
+            if (++entry == segment.idCount) {
+                return false;
+            }
+            id = segment.id(entry);
+            return true;
+        }
+    }
+
+    // A sealed segment, mapped into memory.
+    private static class Segment {
+        final Path file;
+        final MappedByteBuffer map;
+        final long directoryOffset;
+        final long versionsOffset;
+        final long recordBytes;
+        final int idCount;
+        final long minTimestamp;
+        final long maxTimestamp;
+
+        Segment(Path file) throws IOException {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file)) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int footer = map.capacity() - FOOTER_BYTES;
+            if (map.capacity() < 8 + FOOTER_BYTES
+                    || map.getInt(0) != MAGIC
+                    || map.getInt(footer + 48) != MAGIC) {
+                throw new IOException(file + " is not a history segment");
+            }
+            if (map.getInt(4) != FORMAT) {
+                throw new IOException(file + " has an unknown format " + map.getInt(4));
+            }
+            recordBytes = map.getLong(footer);
+            directoryOffset = map.getLong(footer + 8);
+            versionsOffset = map.getLong(footer + 16);
+            idCount = map.getInt(footer + 24);
+            minTimestamp = map.getLong(footer + 32);
+            maxTimestamp = map.getLong(footer + 40);
+        }
+
+        // Returns the directory entry of an ID, or -1.
+        int find(byte[] id) {
+            int lo = 0;
+            int hi = idCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int entry = (int) (directoryOffset + (long) mid * DIRECTORY_ENTRY_BYTES);
+                int c = compareUnsigned(id, map, (int) map.getLong(entry), map.getInt(entry + 8));
+                if (c == 0) {
+                    return mid;
+                } else if (c < 0) {
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return -1;
+        }
+
+        byte[] id(int entry) {
+            int offset = (int) (directoryOffset + (long) entry * DIRECTORY_ENTRY_BYTES);
+            byte[] id = new byte[map.getInt(offset + 8)];
+            ByteBuffer view = map.duplicate();
+            view.position((int) map.getLong(offset));
+            view.get(id);
+            return id;
+        }
+
+        // Returns the newest version of an ID at or before a time, or -1.
+        // Versions with equal timestamps are stored in the order they were
+        // listed, so the last of them wins.
+        int latest(int entry, long time) {
+            int offset = (int) (directoryOffset + (long) entry * DIRECTORY_ENTRY_BYTES);
+            int first = map.getInt(offset + 12);
+            int count = map.getInt(offset + 16);
+            int lo = first;
+            int hi = first + count - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (timestamp(mid) <= time) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        long timestamp(int version) {
+            return map.getLong((int) (versionsOffset + (long) version * VERSION_ENTRY_BYTES));
+        }
+
+        long deletedAt(int version) {
+            return map.getLong((int) (versionsOffset + (long) version * VERSION_ENTRY_BYTES + 8));
+        }
+
+        // The JSON record of a version.
+        byte[] record(int version) {
+            long base = versionsOffset + (long) version * VERSION_ENTRY_BYTES;
+            int record = (int) map.getLong((int) base + 16);
+            byte[] bytes = new byte[map.getInt(record)];
+            ByteBuffer view = map.duplicate();
+            view.position(record + 4);
+            view.get(bytes);
+            return bytes;
+        }
+
+        Version version(String id, int version) {
+            JSONObject json = new JSONObject(new String(record(version), StandardCharsets.UTF_8));
+            long deletedAt = deletedAt(version);
+            return new Version(
+                    id,
+                    new Date(timestamp(version)),
+                    deletedAt == Long.MAX_VALUE ? null : new Date(deletedAt),
+                    json.optString("activityId", null),
+                    EntityCodec.decode(json.getJSONObject("entity")));
+        }
+
+        // Adds every version to writer as it is, ID by ID.
+        void copyTo(SegmentWriter writer) throws IOException {
+            for (int entry = 0; entry < idCount; entry++) {
+                String id = new String(id(entry), StandardCharsets.UTF_8);
+                int offset = (int) (directoryOffset + (long) entry * DIRECTORY_ENTRY_BYTES);
+                int first = map.getInt(offset + 12);
+                int count = map.getInt(offset + 16);
+                for (int v = first; v < first + count; v++) {
+                    writer.add(id, timestamp(v), deletedAt(v), record(v));
+                }
+            }
+        }
+    }
+
+    // Writes a segment: records as they arrive, the index once sealed.
+    private class SegmentWriter {
+        private final Path file;
+        private final Path tmp;
+        private final FileOutputStream stream;
+        private final DataOutputStream out;
+        private final Map<String, List<long[]>> versions = new HashMap<>();
+        private long position;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        SegmentWriter(String kind, int number) throws IOException {
+            file = dir.resolve(String.format("%s.%06d.seg", kind, number));
+            tmp = dir.resolve(file.getFileName() + ".tmp");
+            stream = new FileOutputStream(tmp.toFile());
+            out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            position = 8;
+        }
+
+        long recordBytes() {
+            return position;
+        }
+
+        void add(Version v) throws IOException {
+            JSONObject json = new JSONObject();
+            json.put("activityId", v.activityId);
+            json.put("entity", EntityCodec.encode(v.entity));
+            add(v.id, v.timestamp, v.deletedAt, json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void add(String id, long timestamp, long deletedAt, byte[] record) throws IOException {
+            versions.computeIfAbsent(id, k -> new ArrayList<>())
+                    .add(new long[] {timestamp, deletedAt, position});
+            out.writeInt(record.length);
+            out.write(record);
+            position += 4 + record.length;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+
+        Segment seal() throws IOException {
+            List<byte[]> ids = new ArrayList<>();
+            for (String id : versions.keySet()) {
+                ids.add(id.getBytes(StandardCharsets.UTF_8));
+            }
+            ids.sort(Arrays::compareUnsigned);
+
+            long idsOffset = position;
+            long[] idOffsets = new long[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                idOffsets[i] = position;
+                out.write(ids.get(i));
+                position += ids.get(i).length;
+            }
+
+            long directoryOffset = position;
+            List<long[]> ordered = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                List<long[]> idVersions =
+                        versions.get(new String(ids.get(i), StandardCharsets.UTF_8));
+                // Stable, so equal timestamps keep their listing order.
+                idVersions.sort((a, b) -> Long.compare(a[0], b[0]));
+                out.writeLong(idOffsets[i]);
+                out.writeInt(ids.get(i).length);
+                out.writeInt(ordered.size());
+                out.writeInt(idVersions.size());
+                ordered.addAll(idVersions);
+            }
+            position += (long) ids.size() * DIRECTORY_ENTRY_BYTES;
+
+            long versionsOffset = position;
+            for (long[] v : ordered) {
+                out.writeLong(v[0]);
+                out.writeLong(v[1]);
+                out.writeLong(v[2]);
+            }
+
+            out.writeLong(idsOffset);
+            out.writeLong(directoryOffset);
+            out.writeLong(versionsOffset);
+            out.writeInt(ids.size());
+            out.writeInt(ordered.size());
+            out.writeLong(minTimestamp);
+            out.writeLong(maxTimestamp);
+            out.writeInt(MAGIC);
+            out.flush();
+            stream.getChannel().force(true);
+            out.close();
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            return new Segment(file);
+        }
+
+        void abandon() throws IOException {
+            out.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// HistoryStoreBenchmark fills a HistoryStore with a synthetic resource
+// history and times point-in-time lookups and whole snapshots, without
+// needing API keys:
+//
+//   gradle storeBenchmark --args="100000"
+//
+// The argument is the number of resources (100,000 by default), each with
+// VERSIONS versions a day apart; every tenth resource is deleted in its
+// last version. The first three versions are appended at once, and the rest
+// in SYNCS small appends, each repeating part of the one before, as
+// incremental syncs with an overlap would. The small appends must be
+// merged so that no more than COMPACT_SEGMENTS segments are left.
+public class HistoryStoreBenchmark {
+    static final int VERSIONS = 5;
+    static final long DAY = 86_400_000L;
+    static final long START = 1_735_689_600_000L;
+    static final int LOOKUPS = 1_000_000;
+    static final int SYNCS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int resources = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path dir = Files.createTempDirectory("history-store-benchmark");
+        try {
+            long start = System.nanoTime();
+            HistoryStore store = new HistoryStore(dir);
+            long first = store.append(HistoryStore.RESOURCES, history(0, resources, 0, 3));
+            long rest = 0;
+            int chunks = SYNCS / (VERSIONS - 3);
+            for (int v = 3; v < VERSIONS; v++) {
+                for (int c = 0; c < chunks; c++) {
+                    int from = (int) ((long) resources * Math.max(0, c - 1) / chunks);
+                    int until = (int) ((long) resources * (c + 1) / chunks);
+                    rest += store.append(HistoryStore.RESOURCES, history(from, until, v, v + 1));
+                }
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            long bytes;
+            long segments;
+            try (Stream<Path> files = Files.list(dir)) {
+                List<Path> all = files.collect(Collectors.toList());
+                bytes = all.stream().mapToLong(p -> p.toFile().length()).sum();
+                segments = all.stream().filter(p -> p.toString().endsWith(".seg")).count();
+            }
+            System.out.printf(
+                    "appended %d + %d versions in %d syncs in %.1f s (%.0f/s),"
+                            + " %d segments, %.1f MB on disk\n",
+                    first,
+                    rest,
+                    1 + chunks * (VERSIONS - 3),
+                    secs,
+                    (first + rest) / secs,
+                    segments,
+                    bytes / 1e6);
+            if (first + rest != (long) resources * VERSIONS) {
+                throw new IllegalStateException("a sync appended stored versions");
+            }
+            if (segments > HistoryStore.COMPACT_SEGMENTS) {
+                throw new IllegalStateException("the segments weren't merged");
+            }
+
+            // Reopen, as a forensic job would.
+            store = new HistoryStore(dir);
+            Random random = new Random(1);
+            for (int round = 0; round < 2; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    int r = random.nextInt(resources);
+                    long at = START + random.nextInt(VERSIONS + 1) * DAY + r;
+                    check(store.getResource(id(r), new Date(at)), r, at);
+                }
+                secs = (System.nanoTime() - start) / 1e9;
+                System.out.printf(
+                        "%d point-in-time gets in %.2f s (%.0f/s)%s\n",
+                        LOOKUPS, secs, LOOKUPS / secs, round == 0 ? ", cold" : "");
+            }
+
+            Date middle = new Date(START + 2 * DAY + resources);
+            Date end = new Date(START + VERSIONS * DAY);
+            for (Date at : List.of(middle, end)) {
+                start = System.nanoTime();
+                int count = 0;
+                for (Resource resource : store.resources(at)) {
+                    count++;
+                }
+                secs = (System.nanoTime() - start) / 1e9;
+                System.out.printf(
+                        "snapshot at %s: %d resources in %.2f s\n", at.toInstant(), count, secs);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    static String id(int r) {
+        return "rs-" + Long.toHexString(r * 2654435761L & 0xFFFFFFFFFFFFL);
+    }
+
+    // Versions [fromVersion, untilVersion) of resources [from, until), in
+    // timestamp order. Version v of resource r takes effect at START + v
+    // days + r ms.
+    private static Iterable<HistoryStore.Version> history(
+            int from, int until, int fromVersion, int untilVersion) {
+        List<HistoryStore.Version> versions = new ArrayList<>();
+        for (int v = fromVersion; v < untilVersion; v++) {
+            for (int r = from; r < until; r++) {
+                Redis redis = new Redis();
+                redis.setId(id(r));
+                redis.setName("redis-" + r + "-v" + v);
+                redis.setHostname("redis-" + r + ".internal");
+                redis.setPort(6379);
+                redis.setTags(Map.of("team", "team-" + r % 40));
+                Date timestamp = new Date(START + v * DAY + r);
+                boolean deleted = v == VERSIONS - 1 && r % 10 == 0;
+                versions.add(
+                        new HistoryStore.Version(
+                                redis.getId(),
+                                timestamp,
+                                deleted ? timestamp : null,
+                                "a-" + v,
+                                redis));
+            }
+        }
+        return versions;
+    }
+
+    private static void check(Resource resource, int r, long at) {
+        long v = (at - START - r) / DAY;
+        boolean exists = at >= START + r && !(v >= VERSIONS - 1 && r % 10 == 0);
+        if (!exists) {
+            if (resource != null) {
+                throw new IllegalStateException(id(r) + " shouldn't exist at " + at);
+            }
+            return;
+        }
+        String expected = "redis-" + r + "-v" + Math.min(v, VERSIONS - 1);
+        if (resource == null || !resource.getName().equals(expected)) {
+            throw new IllegalStateException(
+                    id(r) + " at " + at + ": " + (resource == null ? null : resource.getName()));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Date;
+
+// OfflineHistory answers point-in-time questions from a local HistoryStore:
+//
+//   gradle run --args="2025-06-02T00:00:00Z"           resources at the time
+//   gradle run --args="2025-06-02T00:00:00Z rs-1234"   one resource at the time
+//
+// With API keys in the environment it first syncs the store, kept in
+// SDM_HISTORY_STORE_DIR (./history-store by default), with the resource,
+// account and role histories. Without them it runs offline against
+// whatever the store already holds.
+public class OfflineHistory {
+    public static void main(String[] args) {
+        try {
+            String storeDir = System.getenv("SDM_HISTORY_STORE_DIR");
+            HistoryStore store =
+                    new HistoryStore(Path.of(storeDir == null ? "history-store" : storeDir));
+
+            // Load the SDM API keys from the environment.
+            // If these values are not set in your environment,
+            // please follow the documentation here:
+            // https://www.strongdm.com/docs/api/api-keys/
+            var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+            var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+            if (apiAccessKey != null && apiSecretKey != null) {
+                // Create the SDM Client
+                ClientOptions opts = new ClientOptions();
+                Client client = new Client(apiAccessKey, apiSecretKey, opts);
+                System.out.printf("Synced %d new history entries\n", store.sync(client));
+            } else {
+                System.out.println("No API keys set; using the local store only");
+            }
+
+            Date at = Date.from(args.length > 0 ? Instant.parse(args[0]) : Instant.now());
+            if (args.length > 1) {
+                Resource resource = store.getResource(args[1], at);
+                if (resource == null) {
+                    System.out.printf("%s didn't exist at %s\n", args[1], at.toInstant());
+                } else {
+                    System.out.printf(
+                            "%s at %s: %s\n",
+                            args[1], at.toInstant(), EntityCodec.encode(resource));
+                }
+                return;
+            }
+
+            int count = 0;
+            for (Resource resource : store.resources(at)) {
+                System.out.printf("\t%s %s\n", resource.getId(), resource.getName());
+                count++;
+            }
+            int accounts = 0;
+            for (Account account : store.accounts(at)) {
+                accounts++;
+            }
+            int roles = 0;
+            for (Role role : store.roles(at)) {
+                roles++;
+            }
+            System.out.printf(
+                    "At %s there were %d resources, %d accounts and %d roles\n",
+                    at.toInstant(), count, accounts, roles);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
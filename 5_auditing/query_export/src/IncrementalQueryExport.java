@@ -0,0 +1,287 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import org.json.JSONObject;
+
+// IncrementalQueryExport appends the queries made against a resource to a
+// local store, one JSON object per line, fetching only the queries it hasn't
+// exported before. For each resource it keeps two files in the export
+// directory:
+//
+//   <resource id>.jsonl       - the exported queries
+//   <resource id>.checkpoint  - the high-water mark: the timestamp and ID of
+//                               the newest query exported by a finished run,
+//                               and how many bytes of the store are complete
+//
+// Every CHECKPOINT_INTERVAL queries the store is synced to disk and a new
+// checkpoint replaces the old one with an atomic rename, so the checkpoint
+// never claims data that isn't on disk. A run that is interrupted leaves the
+// store longer than its checkpoint; the next run truncates the store back to
+// the checkpoint, skips the queries the interrupted run already saved, and
+// carries on from there, so nothing is exported twice. This doesn't rely on
+// the order in which queries are listed.
+public class IncrementalQueryExport {
+    // How many queries are appended between checkpoints.
+    static final int CHECKPOINT_INTERVAL = 1000;
+
+    private final Path dir;
+
+    public IncrementalQueryExport(Path dir) {
+        this.dir = dir;
+    }
+
+    // Exports the queries made against a resource since the last export.
+    // Returns the number of queries appended.
+    public long export(Client client, String resourceId) throws IOException {
+        return export(
+                resourceId,
+                since ->
+                        since == null
+                                ? client.queries().list("resource_id:?", resourceId)
+                                : client.queries()
+                                        .list(
+                                                "resource_id:? timestamp:>=?",
+                                                resourceId,
+                                                since.toInstant().toString()));
+    }
+
+    // Exports the queries returned by source, which is given the timestamp of
+    // the last exported query (or null on the first export) and should return
+    // the queries at or after it. Queries already exported are skipped, so the
+    // source may return them again.
+    public long export(String resourceId, Function<Date, Iterable<Query>> source)
+            throws IOException {
+        Files.createDirectories(dir);
+        Path storeFile = dir.resolve(resourceId + ".jsonl");
+        Path checkpointFile = dir.resolve(resourceId + ".checkpoint");
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+
+        try (FileChannel store =
+                FileChannel.open(
+                        storeFile,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+            // Drop anything written after the last checkpoint by an
+            // interrupted run, and remember what that run did save.
+            store.truncate(checkpoint.storeLength);
+            Set<String> saved = new HashSet<>();
+            if (checkpoint.runStart >= 0) {
+                saved = readIds(store, checkpoint.runStart);
+            } else {
+                checkpoint.runStart = checkpoint.storeLength;
+            }
+            store.position(checkpoint.storeLength);
+            Writer out =
+                    new BufferedWriter(
+                            Channels.newWriter(store, StandardCharsets.UTF_8.newEncoder(), -1));
+
+            long appended = 0;
+            Date since = checkpoint.timestamp == 0 ? null : new Date(checkpoint.timestamp);
+            for (Query q : source.apply(since)) {
+                if (!checkpoint.isAfterMark(q) || saved.contains(q.getId())) {
+                    continue;
+                }
+                out.write(toJson(q).toString());
+                out.write('\n');
+                checkpoint.advanceRun(q);
+                appended++;
+                if (appended % CHECKPOINT_INTERVAL == 0) {
+                    save(out, store, checkpoint, checkpointFile);
+                }
+            }
+            checkpoint.finishRun();
+            save(out, store, checkpoint, checkpointFile);
+            return appended;
+        }
+    }
+
+    public Path getStoreFile(String resourceId) {
+        return dir.resolve(resourceId + ".jsonl");
+    }
+
+    private static void save(Writer out, FileChannel store, Checkpoint checkpoint, Path file)
+            throws IOException {
+        out.flush();
+        store.force(false);
+        checkpoint.storeLength = store.position();
+        checkpoint.write(file);
+    }
+
+    // Reads the IDs of the queries stored from an offset to the end. The
+    // reader isn't closed, since that would close the store.
+    private static Set<String> readIds(FileChannel store, long from) throws IOException {
+        Set<String> ids = new HashSet<>();
+        store.position(from);
+        BufferedReader in =
+                new BufferedReader(
+                        Channels.newReader(store, StandardCharsets.UTF_8.newDecoder(), -1));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.isEmpty()) {
+                ids.add(new JSONObject(line).getString("id"));
+            }
+        }
+        return ids;
+    }
+
+    static JSONObject toJson(Query q) {
+        JSONObject json = new JSONObject();
+        json.put("id", q.getId());
+        json.put("timestamp", q.getTimestamp().toInstant().toString());
+        json.put("accountId", q.getAccountId());
+        json.put("accountEmail", q.getAccountEmail());
+        json.put("resourceId", q.getResourceId());
+        json.put("resourceName", q.getResourceName());
+        json.put("resourceType", q.getResourceType());
+        json.put("duration", q.getDuration() == null ? 0 : q.getDuration().toMillis());
+        json.put("encrypted", q.getEncrypted());
+        json.put("replayable", q.getReplayable());
+        json.put("queryCategory", q.getQueryCategory());
+        json.put("queryHash", q.getQueryHash());
+        json.put("queryKey", q.getQueryKey());
+        json.put("queryBody", q.getQueryBody());
+        return json;
+    }
+
+    // The reverse of toJson, for reading a store back.
+    static Query fromJson(JSONObject json) {
+        Query q = new Query();
+        q.setId(json.getString("id"));
+        q.setTimestamp(Date.from(Instant.parse(json.getString("timestamp"))));
+        q.setAccountId(json.optString("accountId", null));
+        q.setAccountEmail(json.optString("accountEmail", null));
+        q.setResourceId(json.optString("resourceId", null));
+        q.setResourceName(json.optString("resourceName", null));
+        q.setResourceType(json.optString("resourceType", null));
+        q.setDuration(Duration.ofMillis(json.optLong("duration")));
+        q.setEncrypted(json.optBoolean("encrypted"));
+        q.setReplayable(json.optBoolean("replayable"));
+        q.setQueryCategory(json.optString("queryCategory", null));
+        q.setQueryHash(json.optString("queryHash", null));
+        q.setQueryKey(json.optString("queryKey", null));
+        q.setQueryBody(json.optString("queryBody", null));
+        return q;
+    }
+
+    // The high-water mark of finished runs, plus the progress of the run in
+    // flight: where in the store it started (or -1 if none is in flight) and
+    // the newest query it saved.
+    private static class Checkpoint {
+        long timestamp;
+        String queryId = "";
+        long storeLength;
+        long runStart = -1;
+        long runTimestamp;
+        String runQueryId = "";
+
+        static Checkpoint read(Path file) throws IOException {
+            Checkpoint checkpoint = new Checkpoint();
+            if (!Files.exists(file)) {
+                return checkpoint;
+            }
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+            }
+            checkpoint.timestamp = Long.parseLong(props.getProperty("timestamp"));
+            checkpoint.queryId = props.getProperty("queryId");
+            checkpoint.storeLength = Long.parseLong(props.getProperty("storeLength"));
+            checkpoint.runStart = Long.parseLong(props.getProperty("runStart"));
+            checkpoint.runTimestamp = Long.parseLong(props.getProperty("runTimestamp"));
+            checkpoint.runQueryId = props.getProperty("runQueryId");
+            return checkpoint;
+        }
+
+        // Writes the checkpoint to a temporary file and renames it over the
+        // old one, so a crash leaves either the old or the new checkpoint.
+        void write(Path file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("timestamp", Long.toString(timestamp));
+            props.setProperty("queryId", queryId);
+            props.setProperty("storeLength", Long.toString(storeLength));
+            props.setProperty("runStart", Long.toString(runStart));
+            props.setProperty("runTimestamp", Long.toString(runTimestamp));
+            props.setProperty("runQueryId", runQueryId);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel =
+                    FileChannel.open(
+                            tmp,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                props.store(out, null);
+                channel.force(true);
+            }
+            Files.move(
+                    tmp,
+                    file,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // Whether the query is newer than the high-water mark. Queries with
+        // the same timestamp are ordered by ID.
+        boolean isAfterMark(Query q) {
+            return compare(q, timestamp, queryId) > 0;
+        }
+
+        void advanceRun(Query q) {
+            if (compare(q, runTimestamp, runQueryId) > 0) {
+                runTimestamp = q.getTimestamp().getTime();
+                runQueryId = q.getId();
+            }
+        }
+
+        // Moves the high-water mark up to the newest query of the run, once
+        // every query after the old mark has been seen.
+        void finishRun() {
+            if (runTimestamp > timestamp
+                    || (runTimestamp == timestamp && runQueryId.compareTo(queryId) > 0)) {
+                timestamp = runTimestamp;
+                queryId = runQueryId;
+            }
+            runStart = -1;
+            runTimestamp = 0;
+            runQueryId = "";
+        }
+
+        private static int compare(Query q, long ts, String id) {
+            int c = Long.compare(q.getTimestamp().getTime(), ts);
+            return c != 0 ? c : q.getId().compareTo(id);
+        }
+    }
+}
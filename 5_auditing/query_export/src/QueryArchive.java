@@ -0,0 +1,686 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// QueryArchive is a compact, column-oriented file of queries for long-term
+// keeping, written once with QueryArchive.Writer and then scanned for
+// questions like "all queries by account X in March".
+//
+// Queries are stored in blocks of BLOCK_SIZE, sorted by timestamp within
+// each block. A block stores each field as its own column:
+//
+//   timestamps      - varint deltas from the previous query, starting from
+//                     the block's earliest timestamp
+//   account, resource and their names, resource type, category
+//                   - varint numbers in a dictionary shared by the archive
+//   duration, flags - varint milliseconds, and a byte of booleans
+//   ID, hash, key, body
+//                   - length-prefixed strings, deflated column by column
+//
+// The footer holds the dictionary and, for each block, where its columns
+// are, its earliest and latest timestamps, and which accounts and resources
+// appear in it. A scan reads the footer, skips every block that can't
+// match, and maps just the blocks it needs; within a block it decodes the
+// timestamp, account and resource columns first and only inflates the
+// other columns when something matched.
+//
+// Archives are written to a temporary file and renamed into place when
+// closed. Blocks cover the least time, and so are skipped most often, when
+// queries are written in roughly timestamp order.
+public class QueryArchive implements AutoCloseable {
+    static final int BLOCK_SIZE = 4096;
+
+    private static final byte[] MAGIC = "SDMQARC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int TRAILER_BYTES = 8 + MAGIC.length;
+
+    private static final int TIMESTAMP = 0;
+    private static final int ID = 1;
+    private static final int ACCOUNT_ID = 2;
+    private static final int ACCOUNT_EMAIL = 3;
+    private static final int RESOURCE_ID = 4;
+    private static final int RESOURCE_NAME = 5;
+    private static final int RESOURCE_TYPE = 6;
+    private static final int CATEGORY = 7;
+    private static final int DURATION = 8;
+    private static final int FLAGS = 9;
+    private static final int HASH = 10;
+    private static final int KEY = 11;
+    private static final int BODY = 12;
+    private static final int COLUMNS = 13;
+
+    private static final int ENCRYPTED = 1;
+    private static final int REPLAYABLE = 2;
+
+    public static class Scan {
+        private String accountId;
+        private String resourceId;
+        private long from = Long.MIN_VALUE;
+        private long until = Long.MAX_VALUE;
+        private boolean bodies = true;
+
+        public void setAccountId(String accountId) {
+            this.accountId = accountId;
+        }
+
+        public void setResourceId(String resourceId) {
+            this.resourceId = resourceId;
+        }
+
+        // Matches queries made in [from, until); either may be null.
+        public void setTimeRange(Instant from, Instant until) {
+            this.from = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+            this.until = until == null ? Long.MAX_VALUE : until.toEpochMilli();
+        }
+
+        // Whether to read query bodies, keys and hashes. Leaving them out
+        // saves inflating the largest columns when only metadata is needed.
+        public void setBodies(boolean bodies) {
+            this.bodies = bodies;
+        }
+    }
+
+    private final FileChannel channel;
+    private final String[] dictionary;
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private final BlockInfo[] blocks;
+    private final Inflater inflater = new Inflater();
+    private long blocksRead;
+    private long blocksSkipped;
+
+    public QueryArchive(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size < MAGIC.length + TRAILER_BYTES) {
+            throw new IOException(file + " is not a query archive");
+        }
+        ByteBuffer trailer =
+                channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES, TRAILER_BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        long footerOffset = trailer.getLong();
+        byte[] magic = new byte[MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(file + " is not a query archive, or wasn't closed");
+        }
+
+        ByteBuffer footer =
+                channel.map(
+                                FileChannel.MapMode.READ_ONLY,
+                                footerOffset,
+                                size - TRAILER_BYTES - footerOffset)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        dictionary = new String[(int) readVarint(footer)];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[(int) readVarint(footer)];
+            footer.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+            dictionaryIds.put(dictionary[i], i);
+        }
+        blocks = new BlockInfo[(int) readVarint(footer)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = BlockInfo.read(footer);
+        }
+    }
+
+    // The number of queries in the archive.
+    public long size() {
+        long size = 0;
+        for (BlockInfo b : blocks) {
+            size += b.count;
+        }
+        return size;
+    }
+
+    // Returns the queries matching scan, in timestamp order within each
+    // block. Blocks are read as the result is iterated.
+    public Iterable<Query> scan(Scan scan) {
+        int account = lookup(scan.accountId);
+        int resource = lookup(scan.resourceId);
+        if (account == -2 || resource == -2) {
+            // Never seen in this archive.
+            blocksSkipped += blocks.length;
+            return List.of();
+        }
+        return () ->
+                new Iterator<Query>() {
+                    int next;
+                    Iterator<Query> current = List.<Query>of().iterator();
+
+                    public boolean hasNext() {
+                        while (!current.hasNext() && next < blocks.length) {
+                            BlockInfo b = blocks[next++];
+                            if (!b.mayMatch(scan, account, resource)) {
+                                blocksSkipped++;
+                                continue;
+                            }
+                            blocksRead++;
+                            try {
+                                current = readBlock(b, scan, account, resource).iterator();
+                            } catch (IOException | DataFormatException e) {
+                                throw new IllegalStateException("reading query archive", e);
+                            }
+                        }
+                        return current.hasNext();
+                    }
+
+                    public Query next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return current.next();
+                    }
+                };
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "query archive: %d queries in %d blocks, %d blocks read, %d skipped",
+                size(), blocks.length, blocksRead, blocksSkipped);
+    }
+
+    // The dictionary number of value, -1 for any value, or -2 if the value
+    // isn't in the archive.
+    private int lookup(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = dictionaryIds.get(value);
+        return id == null ? -2 : id;
+    }
+
+    private List<Query> readBlock(BlockInfo b, Scan scan, int account, int resource)
+            throws IOException, DataFormatException {
+        ByteBuffer block =
+                channel.map(FileChannel.MapMode.READ_ONLY, b.offset, b.length())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+        int n = b.count;
+
+        // Pick out the matching rows from the columns needed to filter.
+        long[] timestamps = new long[n];
+        ByteBuffer column = b.column(block, TIMESTAMP);
+        long t = b.minTimestamp;
+        for (int i = 0; i < n; i++) {
+            t += readVarint(column);
+            timestamps[i] = t;
+        }
+        int[] accounts = readDictionaryColumn(b.column(block, ACCOUNT_ID), n);
+        int[] resources = readDictionaryColumn(b.column(block, RESOURCE_ID), n);
+        boolean[] match = new boolean[n];
+        int matches = 0;
+        for (int i = 0; i < n; i++) {
+            match[i] =
+                    timestamps[i] >= scan.from
+                            && timestamps[i] < scan.until
+                            && (account == -1 || accounts[i] == account)
+                            && (resource == -1 || resources[i] == resource);
+            if (match[i]) {
+                matches++;
+            }
+        }
+        if (matches == 0) {
+            return List.of();
+        }
+
+        // Only now decode the rest of the block.
+        int[] accountEmails = readDictionaryColumn(b.column(block, ACCOUNT_EMAIL), n);
+        int[] resourceNames = readDictionaryColumn(b.column(block, RESOURCE_NAME), n);
+        int[] resourceTypes = readDictionaryColumn(b.column(block, RESOURCE_TYPE), n);
+        int[] categories = readDictionaryColumn(b.column(block, CATEGORY), n);
+        ByteBuffer durations = b.column(block, DURATION);
+        ByteBuffer flags = b.column(block, FLAGS);
+        String[] ids = readTextColumn(b.column(block, ID), n, match);
+        String[] hashes = null;
+        String[] keys = null;
+        String[] bodies = null;
+        if (scan.bodies) {
+            hashes = readTextColumn(b.column(block, HASH), n, match);
+            keys = readTextColumn(b.column(block, KEY), n, match);
+            bodies = readTextColumn(b.column(block, BODY), n, match);
+        }
+
+        List<Query> result = new ArrayList<>(matches);
+        for (int i = 0; i < n; i++) {
+            long duration = readVarint(durations);
+            int flag = flags.get();
+            if (!match[i]) {
+                continue;
+            }
+            Query q = new Query();
+            q.setId(ids[i]);
+            q.setTimestamp(new Date(timestamps[i]));
+            q.setAccountId(word(accounts[i]));
+            q.setAccountEmail(word(accountEmails[i]));
+            q.setResourceId(word(resources[i]));
+            q.setResourceName(word(resourceNames[i]));
+            q.setResourceType(word(resourceTypes[i]));
+            q.setQueryCategory(word(categories[i]));
+            q.setDuration(Duration.ofMillis(duration));
+            q.setEncrypted((flag & ENCRYPTED) != 0);
+            q.setReplayable((flag & REPLAYABLE) != 0);
+            if (scan.bodies) {
+                q.setQueryHash(hashes[i]);
+                q.setQueryKey(keys[i]);
+                q.setQueryBody(bodies[i]);
+            }
+            result.add(q);
+        }
+        return result;
+    }
+
+    private String word(int id) {
+        return id < 0 ? null : dictionary[id];
+    }
+
+    // Dictionary columns store each number plus one, with zero for null.
+    private static int[] readDictionaryColumn(ByteBuffer column, int n) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = (int) readVarint(column) - 1;
+        }
+        return ids;
+    }
+
+    // Inflates a text column and decodes the strings of the wanted rows.
+    private String[] readTextColumn(ByteBuffer column, int n, boolean[] wanted)
+            throws DataFormatException {
+        byte[] text = new byte[(int) readVarint(column)];
+        inflater.reset();
+        inflater.setInput(column);
+        int inflated = 0;
+        while (inflated < text.length) {
+            int k = inflater.inflate(text, inflated, text.length - inflated);
+            if (k == 0 && (inflater.finished() || inflater.needsInput())) {
+                throw new DataFormatException("text column is truncated");
+            }
+            inflated += k;
+        }
+        ByteBuffer strings = ByteBuffer.wrap(text);
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            int length = (int) readVarint(strings) - 1;
+            if (length < 0) {
+                continue;
+            }
+            if (wanted[i]) {
+                values[i] =
+                        new String(text, strings.position(), length, StandardCharsets.UTF_8);
+            }
+            strings.position(strings.position() + length);
+        }
+        return values;
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // Where a block is and what it holds.
+    private static class BlockInfo {
+        long offset;
+        int count;
+        long minTimestamp;
+        long maxTimestamp;
+        final int[] columnLengths = new int[COLUMNS];
+        int[] accounts;
+        int[] resources;
+
+        long length() {
+            long length = 0;
+            for (int l : columnLengths) {
+                length += l;
+            }
+            return length;
+        }
+
+        ByteBuffer column(ByteBuffer block, int column) {
+            int start = 0;
+            for (int i = 0; i < column; i++) {
+                start += columnLengths[i];
+            }
+            return block.duplicate()
+                    .position(start)
+                    .limit(start + columnLengths[column])
+                    .slice()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        boolean mayMatch(Scan scan, int account, int resource) {
+            return maxTimestamp >= scan.from
+                    && minTimestamp < scan.until
+                    && (account == -1 || Arrays.binarySearch(accounts, account) >= 0)
+                    && (resource == -1 || Arrays.binarySearch(resources, resource) >= 0);
+        }
+
+        void write(Bytes out) {
+            out.varint(count);
+            out.varint(offset);
+            out.varint(zigzag(minTimestamp));
+            out.varint(maxTimestamp - minTimestamp);
+            for (int l : columnLengths) {
+                out.varint(l);
+            }
+            writeSet(out, accounts);
+            writeSet(out, resources);
+        }
+
+        static BlockInfo read(ByteBuffer in) {
+            BlockInfo b = new BlockInfo();
+            b.count = (int) readVarint(in);
+            b.offset = readVarint(in);
+            b.minTimestamp = unzigzag(readVarint(in));
+            b.maxTimestamp = b.minTimestamp + readVarint(in);
+            for (int i = 0; i < COLUMNS; i++) {
+                b.columnLengths[i] = (int) readVarint(in);
+            }
+            b.accounts = readSet(in);
+            b.resources = readSet(in);
+            return b;
+        }
+
+        // Sorted dictionary numbers, as deltas.
+        private static void writeSet(Bytes out, int[] ids) {
+            out.varint(ids.length);
+            int previous = 0;
+            for (int id : ids) {
+                out.varint(id - previous);
+                previous = id;
+            }
+        }
+
+        private static int[] readSet(ByteBuffer in) {
+            int[] ids = new int[(int) readVarint(in)];
+            int previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                previous += (int) readVarint(in);
+                ids[i] = previous;
+            }
+            return ids;
+        }
+
+        private static long zigzag(long v) {
+            return (v << 1) ^ (v >> 63);
+        }
+
+        private static long unzigzag(long v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+
+    // Writes queries to a new archive. Queries are buffered a block at a
+    // time; nothing is visible at the archive's path until commit. Closing
+    // a writer that wasn't committed deletes what it wrote, so a failed
+    // write leaves the old archive, if any, in place.
+    public static class Writer implements AutoCloseable {
+        private static final Comparator<Query> TIMESTAMP_ORDER =
+                Comparator.comparing(Query::getTimestamp).thenComparing(Query::getId);
+
+        private final Path file;
+        private final Path tmp;
+        private final FileChannel out;
+        private final List<Query> pending = new ArrayList<>(BLOCK_SIZE);
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> dictionaryIds = new HashMap<>();
+        private final List<BlockInfo> blocks = new ArrayList<>();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final Bytes[] columns = new Bytes[COLUMNS];
+        private final Bytes text = new Bytes();
+        private final byte[] deflated = new byte[64 * 1024];
+        private long position;
+        private long count;
+        private boolean committed;
+        private boolean closed;
+
+        public Writer(Path file) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.out =
+                    FileChannel.open(
+                            tmp,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            for (int i = 0; i < COLUMNS; i++) {
+                columns[i] = new Bytes();
+            }
+            writeFully(ByteBuffer.wrap(MAGIC));
+        }
+
+        public void write(Query q) throws IOException {
+            pending.add(q);
+            count++;
+            if (pending.size() == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // Writes the last block and the footer, and renames the archive
+        // into place.
+        public void commit() throws IOException {
+            if (closed) {
+                throw new IOException("the archive writer is closed");
+            }
+            closed = true;
+            try {
+                flushBlock();
+                long footerOffset = position;
+                Bytes footer = new Bytes();
+                footer.varint(dictionary.size());
+                for (String word : dictionary) {
+                    byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+                    footer.varint(bytes.length);
+                    footer.bytes(bytes, 0, bytes.length);
+                }
+                footer.varint(blocks.size());
+                for (BlockInfo b : blocks) {
+                    b.write(footer);
+                }
+                writeFully(ByteBuffer.wrap(footer.buf, 0, footer.length));
+                ByteBuffer trailer =
+                        ByteBuffer.allocate(TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                trailer.putLong(footerOffset).put(MAGIC).flip();
+                writeFully(trailer);
+                out.force(true);
+            } finally {
+                out.close();
+                deflater.end();
+            }
+            Files.move(
+                    tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        // Discards the archive unless it was committed.
+        @Override
+        public void close() throws IOException {
+            if (committed) {
+                return;
+            }
+            if (!closed) {
+                closed = true;
+                out.close();
+                deflater.end();
+            }
+            Files.deleteIfExists(tmp);
+        }
+
+        private void flushBlock() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            pending.sort(TIMESTAMP_ORDER);
+            for (Bytes c : columns) {
+                c.length = 0;
+            }
+            BlockInfo b = new BlockInfo();
+            b.offset = position;
+            b.count = pending.size();
+            b.minTimestamp = pending.get(0).getTimestamp().getTime();
+            b.maxTimestamp = pending.get(pending.size() - 1).getTimestamp().getTime();
+
+            long previous = b.minTimestamp;
+            int[] accounts = new int[pending.size()];
+            int[] resources = new int[pending.size()];
+            for (int i = 0; i < pending.size(); i++) {
+                Query q = pending.get(i);
+                long timestamp = q.getTimestamp().getTime();
+                columns[TIMESTAMP].varint(timestamp - previous);
+                previous = timestamp;
+                accounts[i] = writeWord(ACCOUNT_ID, q.getAccountId());
+                writeWord(ACCOUNT_EMAIL, q.getAccountEmail());
+                resources[i] = writeWord(RESOURCE_ID, q.getResourceId());
+                writeWord(RESOURCE_NAME, q.getResourceName());
+                writeWord(RESOURCE_TYPE, q.getResourceType());
+                writeWord(CATEGORY, q.getQueryCategory());
+                columns[DURATION].varint(q.getDuration() == null ? 0 : q.getDuration().toMillis());
+                columns[FLAGS].put(
+                        (q.getEncrypted() ? ENCRYPTED : 0) | (q.getReplayable() ? REPLAYABLE : 0));
+            }
+            b.accounts = distinct(accounts);
+            b.resources = distinct(resources);
+            writeText(ID, Query::getId);
+            writeText(HASH, Query::getQueryHash);
+            writeText(KEY, Query::getQueryKey);
+            writeText(BODY, Query::getQueryBody);
+
+            for (int i = 0; i < COLUMNS; i++) {
+                b.columnLengths[i] = columns[i].length;
+                writeFully(ByteBuffer.wrap(columns[i].buf, 0, columns[i].length));
+            }
+            blocks.add(b);
+            pending.clear();
+        }
+
+        // Writes the dictionary number of value to a column, adding it to
+        // the dictionary if it's new, and returns the number (-1 for null).
+        private int writeWord(int column, String value) {
+            int id = -1;
+            if (value != null) {
+                id = dictionaryIds.computeIfAbsent(value, v -> dictionary.size());
+                if (id == dictionary.size()) {
+                    dictionary.add(value);
+                }
+            }
+            columns[column].varint(id + 1);
+            return id;
+        }
+
+        private void writeText(int column, Function<Query, String> field) {
+            text.length = 0;
+            for (Query q : pending) {
+                String value = field.apply(q);
+                if (value == null) {
+                    text.varint(0);
+                } else {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    text.varint(bytes.length + 1);
+                    text.bytes(bytes, 0, bytes.length);
+                }
+            }
+            Bytes c = columns[column];
+            c.varint(text.length);
+            deflater.reset();
+            deflater.setInput(text.buf, 0, text.length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int k = deflater.deflate(deflated);
+                c.bytes(deflated, 0, k);
+            }
+        }
+
+        private static int[] distinct(int[] ids) {
+            return Arrays.stream(ids).filter(id -> id >= 0).sorted().distinct().toArray();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer);
+            }
+        }
+    }
+
+    // A growable byte array with varint encoding.
+    private static class Bytes {
+        byte[] buf = new byte[4096];
+        int length;
+
+        void put(int b) {
+            ensure(1);
+            buf[length++] = (byte) b;
+        }
+
+        void bytes(byte[] bytes, int offset, int n) {
+            ensure(n);
+            System.arraycopy(bytes, offset, buf, length, n);
+            length += n;
+        }
+
+        void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[length++] = (byte) v;
+        }
+
+        private void ensure(int n) {
+            if (length + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + n));
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.json.JSONObject;
+
+// QueryArchiveBenchmark writes a year of synthetic queries both as JSON lines,
+// as IncrementalQueryExport stores them, and as a QueryArchive, then compares
+// their size and how long it takes to find one account's queries in March:
+//
+//   gradle archiveBenchmark --args="1000000"
+//
+// The argument is the number of queries (1,000,000 by default). Accounts
+// are skewed, as they are in practice, so a few are busy and most aren't.
+public class QueryArchiveBenchmark {
+    static final long YEAR_START = Instant.parse("2025-01-01T00:00:00Z").toEpochMilli();
+    static final long YEAR_MILLIS = 365L * 86_400_000L;
+    static final int ACCOUNTS = 500;
+    static final int RESOURCES = 100;
+    static final String[] TYPES = {"ssh", "postgres", "mysql", "redis", "k8s", "rdp"};
+    static final String[] COMMANDS = {
+        "SELECT * FROM orders WHERE customer_id = %d",
+        "UPDATE users SET last_login = now() WHERE id = %d",
+        "kubectl get pods -n team-%d",
+        "ls -la /var/log/app-%d",
+        "GET session:%d",
+        "tail -n 200 /var/log/nginx/access.log.%d",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("query-archive-benchmark");
+        Path jsonl = dir.resolve("queries.jsonl");
+        Path archiveFile = dir.resolve("queries.qar");
+        try {
+            long start = System.nanoTime();
+            try (BufferedWriter out = Files.newBufferedWriter(jsonl, StandardCharsets.UTF_8)) {
+                Random random = new Random(1);
+                for (int i = 0; i < count; i++) {
+                    out.write(IncrementalQueryExport.toJson(query(random, i, count)).toString());
+                    out.write('\n');
+                }
+            }
+            double jsonSecs = (System.nanoTime() - start) / 1e9;
+            start = System.nanoTime();
+            try (QueryArchive.Writer writer = new QueryArchive.Writer(archiveFile)) {
+                Random random = new Random(1);
+                for (int i = 0; i < count; i++) {
+                    writer.write(query(random, i, count));
+                }
+                writer.commit();
+            }
+            double archiveSecs = (System.nanoTime() - start) / 1e9;
+            System.out.printf(
+                    "%d queries: JSON lines %.1f MB written in %.1f s, archive %.1f MB in %.1f s\n",
+                    count,
+                    Files.size(jsonl) / 1e6,
+                    jsonSecs,
+                    Files.size(archiveFile) / 1e6,
+                    archiveSecs);
+
+            Instant from = Instant.parse("2025-03-01T00:00:00Z");
+            Instant until = Instant.parse("2025-04-01T00:00:00Z");
+            for (String account : new String[] {account(0), account(ACCOUNTS / 2)}) {
+                for (int round = 0; round < 3; round++) {
+                    start = System.nanoTime();
+                    Map<String, String> expected = new HashMap<>();
+                    try (BufferedReader in =
+                            Files.newBufferedReader(jsonl, StandardCharsets.UTF_8)) {
+                        String line;
+                        while ((line = in.readLine()) != null) {
+                            JSONObject json = new JSONObject(line);
+                            Instant t = Instant.parse(json.getString("timestamp"));
+                            if (json.getString("accountId").equals(account)
+                                    && !t.isBefore(from)
+                                    && t.isBefore(until)) {
+                                expected.put(json.getString("id"), json.getString("queryBody"));
+                            }
+                        }
+                    }
+                    double jsonScan = (System.nanoTime() - start) / 1e9;
+
+                    start = System.nanoTime();
+                    QueryArchive.Scan scan = new QueryArchive.Scan();
+                    scan.setAccountId(account);
+                    scan.setTimeRange(from, until);
+                    int found = 0;
+                    String stats;
+                    try (QueryArchive archive = new QueryArchive(archiveFile)) {
+                        for (Query q : archive.scan(scan)) {
+                            if (!q.getQueryBody().equals(expected.get(q.getId()))) {
+                                throw new IllegalStateException("archive returned " + q.getId());
+                            }
+                            found++;
+                        }
+                        stats = archive.toString();
+                    }
+                    double archiveScan = (System.nanoTime() - start) / 1e9;
+                    if (found != expected.size()) {
+                        throw new IllegalStateException(
+                                found + " queries found, expected " + expected.size());
+                    }
+                    if (round == 2) {
+                        System.out.printf(
+                                "%s in March: %d queries; JSON lines scan %.0f ms,"
+                                        + " archive scan %.1f ms (%s)\n",
+                                account, found, jsonScan * 1e3, archiveScan * 1e3, stats);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(jsonl);
+            Files.deleteIfExists(archiveFile);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    static String account(int a) {
+        return "a-" + Integer.toHexString(0x1000 + a);
+    }
+
+    // Query i of count, spread evenly over the year in timestamp order.
+    static Query query(Random random, int i, int count) {
+        double skew = random.nextDouble();
+        int a = (int) (ACCOUNTS * skew * skew * skew);
+        int r = random.nextInt(RESOURCES);
+        Query q = new Query();
+        q.setId(String.format("q-%016x", random.nextLong()));
+        q.setTimestamp(new Date(YEAR_START + (long) ((double) i / count * YEAR_MILLIS)));
+        q.setAccountId(account(a));
+        q.setAccountEmail("user" + a + "@example.com");
+        q.setResourceId("rs-" + Integer.toHexString(0x2000 + r));
+        q.setResourceName("resource-" + r);
+        q.setResourceType(TYPES[r % TYPES.length]);
+        q.setDuration(Duration.ofMillis(random.nextInt(5_000)));
+        q.setQueryCategory(TYPES[r % TYPES.length].equals("ssh") ? "shell" : "query");
+        q.setReplayable(TYPES[r % TYPES.length].equals("ssh") && random.nextInt(4) == 0);
+        q.setQueryHash(Long.toHexString(random.nextLong()));
+        String command =
+                String.format(
+                        COMMANDS[random.nextInt(COMMANDS.length)], random.nextInt(100_000));
+        q.setQueryBody(new JSONObject().put("command", command).toString());
+        return q;
+    }
+}
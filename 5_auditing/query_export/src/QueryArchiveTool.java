@@ -0,0 +1,129 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.json.JSONObject;
+
+// QueryArchiveTool packs the stores that QueryExport keeps into compact
+// QueryArchive files in an "archive" directory next to them, and scans the
+// archives without calling the API:
+//
+//   gradle archive --args="pack"
+//   gradle archive --args="--account a-1234 --from 2025-03-01T00:00:00Z
+//       --until 2025-04-01T00:00:00Z"
+//
+// Packing rewrites the archive of each store that changed since it was last
+// packed. Scan options are --account, --resource, --from, --until and
+// --no-bodies.
+public class QueryArchiveTool {
+    public static void main(String[] args) {
+        String exportDir = System.getenv("SDM_QUERY_EXPORT_DIR");
+        Path dir = Path.of(exportDir == null ? "query-export" : exportDir);
+        Path archiveDir = dir.resolve("archive");
+        try {
+            if (args.length > 0 && args[0].equals("pack")) {
+                pack(dir, archiveDir);
+                return;
+            }
+
+            QueryArchive.Scan scan = new QueryArchive.Scan();
+            Instant from = null;
+            Instant until = null;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--account":
+                        scan.setAccountId(args[++i]);
+                        break;
+                    case "--resource":
+                        scan.setResourceId(args[++i]);
+                        break;
+                    case "--from":
+                        from = Instant.parse(args[++i]);
+                        break;
+                    case "--until":
+                        until = Instant.parse(args[++i]);
+                        break;
+                    case "--no-bodies":
+                        scan.setBodies(false);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            scan.setTimeRange(from, until);
+
+            for (Path file : list(archiveDir, ".qar")) {
+                try (QueryArchive archive = new QueryArchive(file)) {
+                    for (Query q : archive.scan(scan)) {
+                        System.out.printf(
+                                "%s %s %s %s: %s\n",
+                                q.getTimestamp().toInstant(),
+                                q.getId(),
+                                q.getAccountId(),
+                                q.getResourceId(),
+                                q.getQueryBody());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void pack(Path dir, Path archiveDir) throws Exception {
+        Files.createDirectories(archiveDir);
+        for (Path store : list(dir, ".jsonl")) {
+            String name = store.getFileName().toString();
+            Path file = archiveDir.resolve(name.substring(0, name.length() - 6) + ".qar");
+            if (Files.exists(file)
+                    && Files.getLastModifiedTime(file)
+                                    .compareTo(Files.getLastModifiedTime(store))
+                            >= 0) {
+                continue;
+            }
+            try (QueryArchive.Writer writer = new QueryArchive.Writer(file);
+                    BufferedReader in = Files.newBufferedReader(store, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        writer.write(IncrementalQueryExport.fromJson(new JSONObject(line)));
+                    }
+                }
+                writer.commit();
+                System.out.printf(
+                        "Packed %d queries from %s (%d bytes) into %s\n",
+                        writer.getCount(), store, Files.size(store), file);
+            }
+        }
+    }
+
+    private static List<Path> list(Path dir, String suffix) throws Exception {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
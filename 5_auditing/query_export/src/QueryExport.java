@@ -0,0 +1,111 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.file.Path;
+import java.util.Date;
+
+public class QueryExport {
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        try {
+            // Create the SDM Client
+            ClientOptions opts = new ClientOptions();
+            Client client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            // Queries are exported to SDM_QUERY_EXPORT_DIR, or ./query-export.
+            // Running this again, for example as a nightly job, only fetches
+            // the queries made since the previous run, and a run that was
+            // interrupted picks up where it left off.
+            String exportDir = System.getenv("SDM_QUERY_EXPORT_DIR");
+            Path dir = Path.of(exportDir == null ? "query-export" : exportDir);
+            IncrementalQueryExport export = new IncrementalQueryExport(dir);
+
+            // Set SDM_QUERY_EXPORT_SHARDS to list the new queries of each
+            // resource as up to that many concurrent time windows. The first
+            // export of a resource lists from when it was created.
+            String shards = System.getenv("SDM_QUERY_EXPORT_SHARDS");
+
+            // The new queries are also added to a search index in the
+            // export directory; see QuerySearch.
+            try (QueryIndex index = new QueryIndex(dir.resolve("index"))) {
+                for (Resource resource : client.resources().list("")) {
+                    long exported;
+                    if (shards == null) {
+                        exported = export.export(client, resource.getId());
+                    } else {
+                        String id = resource.getId();
+                        try (ShardedQueryLister lister =
+                                new ShardedQueryLister(
+                                        (from, until) -> listWindow(client, id, from, until),
+                                        Integer.parseInt(shards))) {
+                            Date now = new Date();
+                            exported =
+                                    export.export(
+                                            id, since -> listSince(client, lister, id, since, now));
+                        }
+                    }
+                    System.out.printf(
+                            "Exported %d new queries made against %s to %s\n",
+                            exported, resource.getName(), export.getStoreFile(resource.getId()));
+                    index.update(export.getStoreFile(resource.getId()));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Lists the queries made against a resource since the last export, or
+    // since it was created if this is the first.
+    private static Iterable<Query> listSince(
+            Client client, ShardedQueryLister lister, String id, Date since, Date until) {
+        Date from = since != null ? since : created(client, id);
+        if (from == null) {
+            return client.queries().list("resource_id:?", id);
+        }
+        return lister.list(from, until);
+    }
+
+    // When a resource was created, from the earliest entry of its history,
+    // which no query against it can be older than. Null if it has none.
+    private static Date created(Client client, String id) {
+        Date earliest = null;
+        for (ResourceHistory h : client.resourcesHistory().list("id:?", id)) {
+            if (earliest == null || h.getTimestamp().before(earliest)) {
+                earliest = h.getTimestamp();
+            }
+        }
+        return earliest;
+    }
+
+    // Lists the queries made against a resource in [from, until).
+    private static Iterable<Query> listWindow(Client client, String id, Date from, Date until) {
+        return client.queries()
+                .list(
+                        "resource_id:? timestamp:>=? timestamp:<?",
+                        id,
+                        from.toInstant().toString(),
+                        until.toInstant().toString());
+    }
+}
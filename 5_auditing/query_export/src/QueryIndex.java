@@ -0,0 +1,898 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import org.json.JSONObject;
+
+// QueryIndex is an on-disk inverted index over query commands, for questions
+// like "who ran DROP TABLE in the last 90 days" without listing and parsing
+// every query again. It indexes the stores written by IncrementalQueryExport,
+// picking up where it left off in each store, and decrypted query bodies can
+// be added directly with add.
+//
+// Each query is a document, numbered in the order it was added, which is
+// timestamp order within a store. Two kinds of terms point at documents:
+//
+//   words     - lowercased runs of letters, digits and underscores, for
+//               prefix searches
+//   trigrams  - every three-character slice of the lowercased command, for
+//               substring searches; a search intersects the posting lists of
+//               the needle's trigrams and then checks each candidate's text
+//
+// Posting lists are ascending document numbers stored as varint deltas,
+// usually one byte per entry. Documents are added in batches; each flush
+// writes the batch's terms to a new immutable segment file, and segments are
+// merged into one once there are more than MAX_SEGMENTS. Fixed-size document
+// records (timestamp, account, resource, and where the text is) are read
+// through memory maps, so filtering candidates doesn't touch the text.
+//
+// The state file names the segments and how many documents and bytes of
+// each file are complete. It is replaced atomically after everything it
+// refers to is synced, and opening the index truncates anything written
+// after it, so a crash loses at most the batch being flushed.
+public class QueryIndex implements AutoCloseable {
+    // Words longer than this aren't indexed as words; substring search still
+    // finds them.
+    static final int MAX_WORD_LENGTH = 64;
+    static final int MAX_SEGMENTS = 8;
+
+    // Documents added between automatic flushes.
+    static final int FLUSH_INTERVAL = 100_000;
+
+    private static final char TRIGRAM_MARK = '\u0001';
+    private static final int DOC_BYTES = 28;
+    private static final int DOCS_PER_MAP = 1 << 24;
+
+    public static class Search {
+        private String substring;
+        private String prefix;
+        private String accountId;
+        private String resourceId;
+        private Instant from;
+        private Instant until;
+        private int limit = 100;
+
+        // Matches commands containing this text, ignoring case.
+        public void setSubstring(String substring) {
+            this.substring = substring;
+        }
+
+        // Matches commands with a word starting with this text, ignoring case.
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public void setAccountId(String accountId) {
+            this.accountId = accountId;
+        }
+
+        public void setResourceId(String resourceId) {
+            this.resourceId = resourceId;
+        }
+
+        // Matches queries made in [from, until); either may be null.
+        public void setTimeRange(Instant from, Instant until) {
+            this.from = from;
+            this.until = until;
+        }
+
+        // The maximum number of hits, newest first.
+        public void setLimit(int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            this.limit = limit;
+        }
+    }
+
+    public static class Hit {
+        private final String queryId;
+        private final Instant timestamp;
+        private final String accountId;
+        private final String resourceId;
+        private final String command;
+
+        Hit(
+                String queryId,
+                Instant timestamp,
+                String accountId,
+                String resourceId,
+                String command) {
+            this.queryId = queryId;
+            this.timestamp = timestamp;
+            this.accountId = accountId;
+            this.resourceId = resourceId;
+            this.command = command;
+        }
+
+        public String getQueryId() {
+            return queryId;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        public String getAccountId() {
+            return accountId;
+        }
+
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    private final Path dir;
+    private final Properties state = new Properties();
+    private final List<Segment> segments = new ArrayList<>();
+    private final FileChannel docs;
+    private final FileChannel text;
+    private final FileChannel names;
+    private final List<String> nameList = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<MappedByteBuffer> docMaps = new ArrayList<>();
+
+    // The batch of documents added since the last flush.
+    private final Map<String, Postings> pending = new HashMap<>();
+    private final ByteBuffer docBuffer = ByteBuffer.allocate(DOC_BYTES * 1024);
+    private final ByteBuffer textBuffer = ByteBuffer.allocate(256 * 1024);
+    private int flushedDocs;
+    private int docCount;
+    private long textLength;
+    private int nextSegment;
+
+    public QueryIndex(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        Path stateFile = dir.resolve("index.properties");
+        if (Files.exists(stateFile)) {
+            try (InputStream in = Files.newInputStream(stateFile)) {
+                state.load(in);
+            }
+        }
+        flushedDocs = Integer.parseInt(state.getProperty("docs", "0"));
+        docCount = flushedDocs;
+        textLength = Long.parseLong(state.getProperty("textLength", "0"));
+        long namesLength = Long.parseLong(state.getProperty("namesLength", "0"));
+        nextSegment = Integer.parseInt(state.getProperty("nextSegment", "0"));
+
+        docs = open("docs.bin", (long) flushedDocs * DOC_BYTES);
+        text = open("text.bin", textLength);
+        names = open("names.txt", namesLength);
+        names.position(0);
+        BufferedReader in =
+                new BufferedReader(
+                        Channels.newReader(names, StandardCharsets.UTF_8.newDecoder(), -1));
+        String name;
+        while ((name = in.readLine()) != null) {
+            nameIds.put(name, nameList.size());
+            nameList.add(name);
+        }
+        names.position(namesLength);
+
+        for (String file : state.getProperty("segments", "").split(",")) {
+            if (!file.isEmpty()) {
+                segments.add(Segment.read(dir.resolve(file)));
+            }
+        }
+    }
+
+    // Indexes the lines of an IncrementalQueryExport store added since the
+    // last update, then flushes. Encrypted queries are skipped, since their
+    // bodies can't be searched; add their decrypted text with add instead.
+    // Returns the number of queries added.
+    public long update(Path storeFile) throws IOException {
+        String key = "store." + storeFile.getFileName();
+        long offset = Long.parseLong(state.getProperty(key, "0"));
+        long added = 0;
+        try (FileChannel store = FileChannel.open(storeFile, StandardOpenOption.READ)) {
+            store.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(store));
+            byte[] line = new byte[4096];
+            while (true) {
+                int n = 0;
+                int b;
+                while ((b = in.read()) != -1 && b != '\n') {
+                    if (n == line.length) {
+                        line = Arrays.copyOf(line, n * 2);
+                    }
+                    line[n++] = (byte) b;
+                }
+                if (b == -1) {
+                    // Stop at a line that isn't complete yet.
+                    break;
+                }
+                offset += n + 1;
+                JSONObject json = new JSONObject(new String(line, 0, n, StandardCharsets.UTF_8));
+                if (!json.optBoolean("encrypted")) {
+                    add(
+                            json.getString("id"),
+                            Instant.parse(json.getString("timestamp")),
+                            json.optString("accountId"),
+                            json.optString("resourceId"),
+                            commandOf(json.optString("queryBody")));
+                    added++;
+                }
+                if (docCount - flushedDocs >= FLUSH_INTERVAL) {
+                    state.setProperty(key, Long.toString(offset));
+                    flush();
+                }
+            }
+        }
+        state.setProperty(key, Long.toString(offset));
+        flush();
+        return added;
+    }
+
+    // The text of a query body to index: the command of an SSH query, the
+    // query of a database query, or else the whole body.
+    static String commandOf(String queryBody) {
+        if (queryBody.isEmpty()) {
+            return "";
+        }
+        try {
+            JSONObject body = new JSONObject(queryBody);
+            String command = body.optString("command");
+            if (command.isEmpty()) {
+                command = body.optString("query");
+            }
+            return command.isEmpty() ? queryBody : command;
+        } catch (RuntimeException e) {
+            return queryBody;
+        }
+    }
+
+    // Adds one query. It becomes searchable after the next flush.
+    public void add(
+            String queryId, Instant timestamp, String accountId, String resourceId, String command)
+            throws IOException {
+        int doc = docCount++;
+        byte[] bytes = (queryId + "\n" + command).getBytes(StandardCharsets.UTF_8);
+        if (docBuffer.remaining() < DOC_BYTES) {
+            drain(docBuffer, docs);
+        }
+        docBuffer.putLong(timestamp.toEpochMilli());
+        docBuffer.putInt(nameId(accountId));
+        docBuffer.putInt(nameId(resourceId));
+        docBuffer.putLong(textLength);
+        docBuffer.putInt(bytes.length);
+        write(bytes, textBuffer, text);
+        textLength += bytes.length;
+
+        String lower = command.toLowerCase(Locale.ROOT);
+        Set<String> terms = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && isWordChar(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start <= MAX_WORD_LENGTH) {
+                    terms.add(lower.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        char[] trigram = {TRIGRAM_MARK, 0, 0, 0};
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            lower.getChars(i, i + 3, trigram, 1);
+            terms.add(new String(trigram));
+        }
+        for (String term : terms) {
+            pending.computeIfAbsent(term, t -> new Postings()).add(doc);
+        }
+    }
+
+    // Writes the documents added since the last flush as a new segment and
+    // makes them searchable.
+    public void flush() throws IOException {
+        drain(docBuffer, docs);
+        drain(textBuffer, text);
+        docs.force(false);
+        text.force(false);
+        names.force(false);
+        if (docCount > flushedDocs) {
+            Path file = dir.resolve(String.format("segment.%06d", nextSegment++));
+            List<String> terms = new ArrayList<>(pending.keySet());
+            terms.sort(null);
+            try (Segment.Writer writer = new Segment.Writer(file, flushedDocs)) {
+                for (String term : terms) {
+                    writer.add(term, pending.get(term));
+                }
+                writer.setDocCount(docCount - flushedDocs);
+            }
+            segments.add(Segment.read(file));
+            pending.clear();
+        }
+        flushedDocs = docCount;
+        if (segments.size() > MAX_SEGMENTS) {
+            mergeSegments();
+        }
+        saveState();
+    }
+
+    public int size() {
+        return flushedDocs;
+    }
+
+    // Returns the newest matching queries, up to the search's limit.
+    public List<Hit> search(Search search) throws IOException {
+        int accountFilter = filterId(search.accountId);
+        int resourceFilter = filterId(search.resourceId);
+        if (accountFilter == -2 || resourceFilter == -2) {
+            return new ArrayList<>();
+        }
+        long from = search.from == null ? Long.MIN_VALUE : search.from.toEpochMilli();
+        long until = search.until == null ? Long.MAX_VALUE : search.until.toEpochMilli();
+        String needle =
+                search.substring == null ? null : search.substring.toLowerCase(Locale.ROOT);
+        String prefix = search.prefix == null ? null : search.prefix.toLowerCase(Locale.ROOT);
+        mapDocs();
+
+        // Newest first, keeping only the limit: a min-heap of timestamps.
+        // Documents are visited newest segment first and in reverse, which
+        // is close to newest first, so once the heap is full most candidates
+        // are rejected by timestamp before their text is read.
+        PriorityQueue<long[]> top = new PriorityQueue<>((x, y) -> Long.compare(x[0], y[0]));
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment segment = segments.get(s);
+            int[] candidates = segment.candidates(needle, prefix);
+            int n = candidates == null ? segment.docCount : candidates.length;
+            for (int i = n - 1; i >= 0; i--) {
+                int doc = candidates == null ? segment.firstDoc + i : candidates[i];
+                ByteBuffer map = docMaps.get(doc / DOCS_PER_MAP);
+                int record = (doc % DOCS_PER_MAP) * DOC_BYTES;
+                long timestamp = map.getLong(record);
+                if (timestamp < from
+                        || timestamp >= until
+                        || (accountFilter >= 0 && map.getInt(record + 8) != accountFilter)
+                        || (resourceFilter >= 0 && map.getInt(record + 12) != resourceFilter)
+                        || (top.size() == search.limit && timestamp <= top.peek()[0])) {
+                    continue;
+                }
+                if (needle != null
+                        && !commandText(map.getLong(record + 16), map.getInt(record + 24))
+                                .toLowerCase(Locale.ROOT)
+                                .contains(needle)) {
+                    continue;
+                }
+                top.add(new long[] {timestamp, doc});
+                if (top.size() > search.limit) {
+                    top.poll();
+                }
+            }
+        }
+
+        Hit[] hits = new Hit[top.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = hit((int) top.poll()[1]);
+        }
+        return new ArrayList<>(Arrays.asList(hits));
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Only flush documents added since the last flush. A search that
+        // just reads mustn't rewrite the state an exporter may be updating.
+        if (docCount > flushedDocs) {
+            flush();
+        }
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        docs.close();
+        text.close();
+        names.close();
+    }
+
+    private FileChannel open(String file, long length) throws IOException {
+        FileChannel channel =
+                FileChannel.open(
+                        dir.resolve(file),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        // Drop anything written after the state was last saved.
+        channel.truncate(length);
+        channel.position(length);
+        return channel;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private int nameId(String name) throws IOException {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = nameList.size();
+            nameIds.put(name, id);
+            nameList.add(name);
+            ByteBuffer line = StandardCharsets.UTF_8.encode(name + "\n");
+            while (line.hasRemaining()) {
+                names.write(line);
+            }
+        }
+        return id;
+    }
+
+    // -1 for no filter, -2 for a name that no indexed query has.
+    private int filterId(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer id = nameIds.get(name);
+        return id == null ? -2 : id;
+    }
+
+    private static void write(byte[] bytes, ByteBuffer buffer, FileChannel channel)
+            throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            drain(buffer, channel);
+        }
+        if (buffer.remaining() < bytes.length) {
+            ByteBuffer direct = ByteBuffer.wrap(bytes);
+            while (direct.hasRemaining()) {
+                channel.write(direct);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Maps the document records, adding maps as the file grows.
+    private void mapDocs() throws IOException {
+        int mapped = 0;
+        if (!docMaps.isEmpty()) {
+            MappedByteBuffer last = docMaps.remove(docMaps.size() - 1);
+            mapped = (docMaps.size() * DOCS_PER_MAP) + last.capacity() / DOC_BYTES;
+            if (last.capacity() / DOC_BYTES == DOCS_PER_MAP || mapped == flushedDocs) {
+                docMaps.add(last);
+            } else {
+                mapped = docMaps.size() * DOCS_PER_MAP;
+            }
+        }
+        while (mapped < flushedDocs) {
+            int count = Math.min(DOCS_PER_MAP, flushedDocs - mapped);
+            docMaps.add(
+                    docs.map(
+                            FileChannel.MapMode.READ_ONLY,
+                            (long) mapped * DOC_BYTES,
+                            (long) count * DOC_BYTES));
+            mapped += count;
+        }
+    }
+
+    private String commandText(long offset, int length) throws IOException {
+        String stored = readText(offset, length);
+        return stored.substring(stored.indexOf('\n') + 1);
+    }
+
+    private String readText(long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (text.read(buf, offset + buf.position()) < 0) {
+                throw new IOException("query index text is truncated");
+            }
+        }
+        return new String(buf.array(), StandardCharsets.UTF_8);
+    }
+
+    private Hit hit(int doc) throws IOException {
+        ByteBuffer map = docMaps.get(doc / DOCS_PER_MAP);
+        int record = (doc % DOCS_PER_MAP) * DOC_BYTES;
+        String stored = readText(map.getLong(record + 16), map.getInt(record + 24));
+        int newline = stored.indexOf('\n');
+        return new Hit(
+                stored.substring(0, newline),
+                Instant.ofEpochMilli(map.getLong(record)),
+                nameList.get(map.getInt(record + 8)),
+                nameList.get(map.getInt(record + 12)),
+                stored.substring(newline + 1));
+    }
+
+    // Merges every segment into one, a term at a time. Segments hold
+    // consecutive ranges of documents, so each merged posting list is the
+    // segments' lists one after another.
+    private void mergeSegments() throws IOException {
+        Path file = dir.resolve(String.format("segment.%06d", nextSegment++));
+        Segment first = segments.get(0);
+        Segment last = segments.get(segments.size() - 1);
+        PriorityQueue<int[]> cursors =
+                new PriorityQueue<>(
+                        (x, y) -> {
+                            int c = segments.get(x[0]).terms[x[1]].compareTo(
+                                    segments.get(y[0]).terms[y[1]]);
+                            return c != 0 ? c : Integer.compare(x[0], y[0]);
+                        });
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i).terms.length > 0) {
+                cursors.add(new int[] {i, 0});
+            }
+        }
+        try (Segment.Writer writer = new Segment.Writer(file, first.firstDoc)) {
+            while (!cursors.isEmpty()) {
+                String term = segments.get(cursors.peek()[0]).terms[cursors.peek()[1]];
+                Postings postings = new Postings();
+                while (!cursors.isEmpty()
+                        && segments.get(cursors.peek()[0]).terms[cursors.peek()[1]].equals(term)) {
+                    int[] cursor = cursors.poll();
+                    Segment segment = segments.get(cursor[0]);
+                    for (int doc : segment.postings(cursor[1])) {
+                        postings.add(doc);
+                    }
+                    if (++cursor[1] < segment.terms.length) {
+                        cursors.add(cursor);
+                    }
+                }
+                writer.add(term, postings);
+            }
+            writer.setDocCount(last.firstDoc + last.docCount - first.firstDoc);
+        }
+
+        List<Segment> old = new ArrayList<>(segments);
+        segments.clear();
+        segments.add(Segment.read(file));
+        // The old segment files are deleted once the state no longer names
+        // them.
+        saveState();
+        for (Segment segment : old) {
+            segment.close();
+            Files.deleteIfExists(segment.file);
+        }
+    }
+
+    private void saveState() throws IOException {
+        state.setProperty("docs", Integer.toString(flushedDocs));
+        state.setProperty("textLength", Long.toString(textLength));
+        state.setProperty("namesLength", Long.toString(names.position()));
+        state.setProperty("nextSegment", Integer.toString(nextSegment));
+        List<String> files = new ArrayList<>();
+        for (Segment segment : segments) {
+            files.add(segment.file.getFileName().toString());
+        }
+        state.setProperty("segments", String.join(",", files));
+
+        Path file = dir.resolve("index.properties");
+        Path tmp = dir.resolve("index.properties.tmp");
+        try (FileChannel channel =
+                FileChannel.open(
+                        tmp,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            state.store(Channels.newOutputStream(channel), null);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Postings is a posting list being built: ascending document numbers as
+    // varint deltas.
+    private static class Postings {
+        byte[] bytes = new byte[4];
+        int length;
+        int count;
+        int last = -1;
+
+        void add(int doc) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            int delta = doc - last;
+            while ((delta & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+            last = doc;
+            count++;
+        }
+    }
+
+    // Segment is an immutable file of sorted terms and their posting lists,
+    // covering a consecutive range of documents:
+    //
+    //   the posting lists, in term order
+    //   per term: UTF term, int posting count, int posting bytes
+    //   footer: int term count, int first document, int document count,
+    //           long term table offset
+    //
+    // The term table is loaded into memory; posting lists are read from the
+    // file when a search needs them.
+    private static class Segment implements AutoCloseable {
+        private static final int FOOTER_BYTES = 20;
+
+        final Path file;
+        final FileChannel channel;
+        final int firstDoc;
+        final int docCount;
+        final String[] terms;
+        final int[] counts;
+        final long[] offsets;
+
+        private Segment(
+                Path file,
+                FileChannel channel,
+                int firstDoc,
+                int docCount,
+                String[] terms,
+                int[] counts,
+                long[] offsets) {
+            this.file = file;
+            this.channel = channel;
+            this.firstDoc = firstDoc;
+            this.docCount = docCount;
+            this.terms = terms;
+            this.counts = counts;
+            this.offsets = offsets;
+        }
+
+        // Writer writes a segment from terms added in sorted order.
+        static class Writer implements AutoCloseable {
+            private final FileChannel channel;
+            private final DataOutputStream out;
+            private final int firstDoc;
+            private final List<String> terms = new ArrayList<>();
+            private final List<int[]> sizes = new ArrayList<>();
+            private long postingBytes;
+            private int docCount;
+
+            Writer(Path file, int firstDoc) throws IOException {
+                this.channel =
+                        FileChannel.open(
+                                file,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING);
+                this.out =
+                        new DataOutputStream(
+                                new BufferedOutputStream(Channels.newOutputStream(channel)));
+                this.firstDoc = firstDoc;
+            }
+
+            void add(String term, Postings postings) throws IOException {
+                out.write(postings.bytes, 0, postings.length);
+                postingBytes += postings.length;
+                terms.add(term);
+                sizes.add(new int[] {postings.count, postings.length});
+            }
+
+            void setDocCount(int docCount) {
+                this.docCount = docCount;
+            }
+
+            @Override
+            public void close() throws IOException {
+                long tableOffset = postingBytes;
+                for (int i = 0; i < terms.size(); i++) {
+                    out.writeUTF(terms.get(i));
+                    out.writeInt(sizes.get(i)[0]);
+                    out.writeInt(sizes.get(i)[1]);
+                }
+                out.writeInt(terms.size());
+                out.writeInt(firstDoc);
+                out.writeInt(docCount);
+                out.writeLong(tableOffset);
+                out.flush();
+                channel.force(true);
+                channel.close();
+            }
+        }
+
+        static Segment read(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+            while (footer.hasRemaining()) {
+                if (channel.read(footer, channel.size() - FOOTER_BYTES + footer.position()) < 0) {
+                    throw new IOException(file + " is truncated");
+                }
+            }
+            footer.flip();
+            int n = footer.getInt();
+            int firstDoc = footer.getInt();
+            int docCount = footer.getInt();
+            long tableOffset = footer.getLong();
+
+            DataInputStream in =
+                    new DataInputStream(
+                            new BufferedInputStream(
+                                    Channels.newInputStream(channel.position(tableOffset))));
+            String[] terms = new String[n];
+            int[] counts = new int[n];
+            long[] offsets = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                terms[i] = in.readUTF();
+                counts[i] = in.readInt();
+                offsets[i + 1] = offsets[i] + in.readInt();
+            }
+            return new Segment(file, channel, firstDoc, docCount, terms, counts, offsets);
+        }
+
+        int[] postings(int term) throws IOException {
+            byte[] bytes = read(term);
+            int[] docs = new int[counts[term]];
+            int pos = 0;
+            int doc = -1;
+            for (int i = 0; i < docs.length; i++) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) {
+                        break;
+                    }
+                }
+                doc += delta;
+                docs[i] = doc;
+            }
+            return docs;
+        }
+
+        // Returns the documents in both docs and the term's posting list,
+        // decoding the list as it goes rather than into an array.
+        int[] intersect(int[] docs, int term) throws IOException {
+            byte[] bytes = read(term);
+            int[] out = new int[docs.length];
+            int n = 0;
+            int pos = 0;
+            int doc = -1;
+            int j = 0;
+            for (int i = 0; i < counts[term] && j < docs.length; i++) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) {
+                        break;
+                    }
+                }
+                doc += delta;
+                while (j < docs.length && docs[j] < doc) {
+                    j++;
+                }
+                if (j < docs.length && docs[j] == doc) {
+                    out[n++] = doc;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private byte[] read(int term) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (offsets[term + 1] - offsets[term]));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, offsets[term] + bytes.position()) < 0) {
+                    throw new IOException(file + " is truncated");
+                }
+            }
+            return bytes.array();
+        }
+
+        // Returns the documents that may match, or null if the search can't
+        // narrow them down with this segment's terms.
+        int[] candidates(String needle, String prefix) throws IOException {
+            int[] result = null;
+            if (needle != null && needle.length() >= 3) {
+                // Intersect the needle's trigrams, shortest list first.
+                List<Integer> lists = new ArrayList<>();
+                for (int i = 0; i + 3 <= needle.length(); i++) {
+                    String trigram = TRIGRAM_MARK + needle.substring(i, i + 3);
+                    int term = Arrays.binarySearch(terms, trigram);
+                    if (term < 0) {
+                        return new int[0];
+                    }
+                    lists.add(term);
+                }
+                lists.sort((x, y) -> Integer.compare(counts[x], counts[y]));
+                for (int term : lists) {
+                    result = result == null ? postings(term) : intersect(result, term);
+                    if (result.length == 0) {
+                        return result;
+                    }
+                }
+            }
+            if (prefix != null) {
+                int from = Arrays.binarySearch(terms, prefix);
+                if (from < 0) {
+                    from = -from - 1;
+                }
+                int[] union = new int[0];
+                for (int i = from; i < terms.length && terms[i].startsWith(prefix); i++) {
+                    union = union(union, postings(i));
+                }
+                result = result == null ? union : intersect(result, union);
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] out = new int[Math.min(a.length, b.length)];
+            int n = 0;
+            for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    out[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static int[] union(int[] a, int[] b) {
+            int[] out = new int[a.length + b.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.length || j < b.length) {
+                if (j == b.length || (i < a.length && a[i] < b[j])) {
+                    out[n++] = a[i++];
+                } else if (i == a.length || b[j] < a[i]) {
+                    out[n++] = b[j++];
+                } else {
+                    out[n++] = a[i++];
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// QueryIndexBenchmark builds a QueryIndex over synthetic shell and SQL
+// commands and times a few searches, without needing API keys:
+//
+//   gradle indexBenchmark --args="5000000"
+//
+// The argument is the number of queries to index (2,000,000 by default).
+public class QueryIndexBenchmark {
+    private static final String[] COMMANDS = {
+        "ls -la /var/log",
+        "sudo systemctl restart nginx",
+        "cat /etc/hosts",
+        "tail -f /var/log/syslog",
+        "SELECT * FROM orders WHERE id = %d",
+        "UPDATE users SET last_login = now() WHERE id = %d",
+        "kubectl get pods -n team-%d",
+        "grep -r error /srv/app/logs",
+        "psql -c 'select count(*) from events'",
+        "cd /home/deploy/release-%d",
+    };
+    private static final String[] RARE_COMMANDS = {
+        "DROP TABLE audit_%d", "sudo rm -rf /tmp/cache-%d",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path dir = Files.createTempDirectory("query-index-benchmark");
+        Random random = new Random(1);
+        Instant start = Instant.parse("2025-01-01T00:00:00Z");
+
+        long buildStart = System.nanoTime();
+        try (QueryIndex index = new QueryIndex(dir)) {
+            for (int i = 0; i < queries; i++) {
+                String[] pool = random.nextInt(1000) == 0 ? RARE_COMMANDS : COMMANDS;
+                String format = pool[random.nextInt(pool.length)];
+                String command = String.format(format, random.nextInt(10_000));
+                index.add(
+                        "s" + i,
+                        start.plusSeconds(i * 5L),
+                        "a-" + random.nextInt(500),
+                        "rs-" + random.nextInt(50),
+                        command);
+            }
+        }
+        double buildSecs = (System.nanoTime() - buildStart) / 1e9;
+        long bytes;
+        try (Stream<Path> files = Files.list(dir)) {
+            bytes = files.mapToLong(p -> p.toFile().length()).sum();
+        }
+        System.out.printf(
+                "indexed %d queries in %.1f s (%.0f/s), %.1f MB on disk\n",
+                queries, buildSecs, queries / buildSecs, bytes / 1e6);
+
+        try (QueryIndex index = new QueryIndex(dir)) {
+            Instant end = start.plusSeconds(queries * 5L);
+
+            QueryIndex.Search dropTable = new QueryIndex.Search();
+            dropTable.setSubstring("drop table");
+            time(index, "substring \"drop table\"", dropTable);
+
+            QueryIndex.Search sudoRm = new QueryIndex.Search();
+            sudoRm.setSubstring("sudo rm");
+            sudoRm.setTimeRange(end.minus(90, ChronoUnit.DAYS), end);
+            time(index, "substring \"sudo rm\", last 90 days", sudoRm);
+
+            QueryIndex.Search prefix = new QueryIndex.Search();
+            prefix.setPrefix("kubect");
+            prefix.setAccountId("a-7");
+            time(index, "prefix \"kubect\", one account", prefix);
+
+            QueryIndex.Search common = new QueryIndex.Search();
+            common.setSubstring("/var/log");
+            common.setResourceId("rs-3");
+            time(index, "substring \"/var/log\", one resource", common);
+        }
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static void time(QueryIndex index, String name, QueryIndex.Search search)
+            throws Exception {
+        // Warm up, then take the best of ten.
+        int hits = 0;
+        for (int i = 0; i < 20; i++) {
+            hits = index.search(search).size();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            index.search(search);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-40s %4d hits in %7.2f ms\n", name, hits, best / 1e6);
+    }
+}
@@ -0,0 +1,70 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+// QuerySearch searches the index that QueryExport keeps next to its export,
+// without calling the API:
+//
+//   gradle search --args="'drop table' --days 90"
+//   gradle search --args="--prefix kubect --account a-1234"
+//
+// Options are --prefix, --account, --resource, --days and --limit.
+public class QuerySearch {
+    public static void main(String[] args) {
+        String exportDir = System.getenv("SDM_QUERY_EXPORT_DIR");
+        Path dir = Path.of(exportDir == null ? "query-export" : exportDir);
+
+        QueryIndex.Search search = new QueryIndex.Search();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--prefix":
+                    search.setPrefix(args[++i]);
+                    break;
+                case "--account":
+                    search.setAccountId(args[++i]);
+                    break;
+                case "--resource":
+                    search.setResourceId(args[++i]);
+                    break;
+                case "--days":
+                    Instant now = Instant.now();
+                    search.setTimeRange(
+                            now.minus(Long.parseLong(args[++i]), ChronoUnit.DAYS), now);
+                    break;
+                case "--limit":
+                    search.setLimit(Integer.parseInt(args[++i]));
+                    break;
+                default:
+                    search.setSubstring(args[i]);
+            }
+        }
+
+        try (QueryIndex index = new QueryIndex(dir.resolve("index"))) {
+            for (QueryIndex.Hit hit : index.search(search)) {
+                System.out.printf(
+                        "%s %s %s %s: %s\n",
+                        hit.getTimestamp(),
+                        hit.getQueryId(),
+                        hit.getAccountId(),
+                        hit.getResourceId(),
+                        hit.getCommand());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
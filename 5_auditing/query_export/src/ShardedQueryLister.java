@@ -0,0 +1,334 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ShardedQueryLister lists the queries in a time range as several
+// concurrent listings, one per time window, instead of one long pagination
+// stream. For example, with the SDK's filter syntax:
+//
+//   ShardedQueryLister lister =
+//           new ShardedQueryLister(
+//                   (from, until) ->
+//                           client.queries()
+//                                   .list(
+//                                           "resource_id:? timestamp:>=? timestamp:<?",
+//                                           resourceId,
+//                                           from.toInstant().toString(),
+//                                           until.toInstant().toString()),
+//                   8);
+//   for (Query q : lister.list(from, until)) { ... }
+//
+// The range is cut into windows as the listing goes. Each window is sized
+// to hold about WINDOW_QUERIES queries, judging by how many the last window
+// fetched held for its length; the first ones, fetched before there is
+// anything to go by, are at most FIRST_WINDOW_MILLIS long, and each window
+// is at most MAX_GROWTH times as long as the one before. Each window is
+// fetched in full and sorted, and since windows don't overlap, merging them
+// into timestamp order is a matter of emitting them in window order. At most
+// twice maxShards windows are held in memory at a time, however long the
+// range is.
+//
+// The number of windows fetched at once adapts to the server: page requests
+// are timed, and after each window the shard count grows by one while page
+// latency stays near the fastest seen, and is halved when latency has more
+// than doubled (additive increase, multiplicative decrease).
+//
+// A lister owns a pool of threads; close it when the listing is done.
+public class ShardedQueryLister implements AutoCloseable {
+    public interface WindowSource {
+        // Lists the queries with timestamps in [from, until).
+        Iterable<Query> list(Date from, Date until);
+    }
+
+    static final int WINDOW_QUERIES = 1_000;
+    static final long FIRST_WINDOW_MILLIS = 60_000;
+    static final int MAX_GROWTH = 8;
+
+    // A range shorter than FIRST_WINDOW_MILLIS per window still starts with
+    // this many windows per shard.
+    static final int WINDOWS_PER_SHARD = 4;
+
+    // Iterator calls slower than this are counted as page requests; calls
+    // served from a page already fetched take microseconds.
+    private static final long PAGE_THRESHOLD_NANOS = 5_000_000;
+
+    private static final Comparator<Query> TIMESTAMP_ORDER =
+            Comparator.comparing(Query::getTimestamp).thenComparing(Query::getId);
+
+    // Follows the last window of a listing.
+    private static final CompletableFuture<List<Query>> NO_MORE =
+            CompletableFuture.completedFuture(null);
+
+    private final WindowSource source;
+    private final int maxShards;
+    private final ShardLimit limit;
+    private final ExecutorService executor;
+
+    private final AtomicLong windowCount = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong pageNanos = new AtomicLong();
+
+    public ShardedQueryLister(WindowSource source, int maxShards) {
+        if (maxShards < 1) {
+            throw new IllegalArgumentException("maxShards must be positive");
+        }
+        this.source = source;
+        this.maxShards = maxShards;
+        this.limit = new ShardLimit(Math.min(2, maxShards), maxShards);
+        this.executor =
+                Executors.newCachedThreadPool(
+                        r -> {
+                            Thread t = new Thread(r, "query-shard");
+                            t.setDaemon(true);
+                            return t;
+                        });
+    }
+
+    // Lists the queries with timestamps in [from, until), in timestamp order.
+    // Fetching starts when iteration does.
+    public Iterable<Query> list(Date from, Date until) {
+        return () -> new MergedIterator(from.getTime(), until.getTime());
+    }
+
+    // The number of windows currently fetched at once.
+    public int getShards() {
+        return limit.get();
+    }
+
+    public long pages() {
+        return pages.get();
+    }
+
+    // The number of windows started.
+    public long windows() {
+        return windowCount.get();
+    }
+
+    // Stops the fetches and listings in progress and the lister's threads.
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        long n = pages();
+        return String.format(
+                "sharded listing: %d windows, %d pages, %.1f ms mean page latency, %d shards",
+                windows(), n, n == 0 ? 0.0 : pageNanos.get() / 1e6 / n, getShards());
+    }
+
+    private class MergedIterator implements Iterator<Query> {
+        // The windows started so far, in order, then NO_MORE.
+        private final BlockingQueue<CompletableFuture<List<Query>>> windows =
+                new LinkedBlockingQueue<>();
+        private final Semaphore lookahead = new Semaphore(maxShards * 2);
+        private final long firstSpan;
+        private long lastSpan;
+        // The length and query count of the last window fetched, 0 and -1
+        // before the first.
+        private long measuredMillis;
+        private long measuredQueries = -1;
+        private boolean done;
+        private Iterator<Query> current = Collections.emptyIterator();
+
+        MergedIterator(long from, long until) {
+            long perWindow = (until - from) / ((long) maxShards * WINDOWS_PER_SHARD);
+            firstSpan = Math.max(1, Math.min(FIRST_WINDOW_MILLIS, perWindow));
+
+            // Start windows in order, as lookahead and the shard limit allow.
+            // The dispatcher runs on the lister's pool, so close stops it.
+            executor.execute(
+                    () -> {
+                        try {
+                            long start = from;
+                            while (start < until) {
+                                lookahead.acquire();
+                                int round = limit.acquire();
+                                long windowStart = start;
+                                long end = start + nextSpan(until - start);
+                                CompletableFuture<List<Query>> result = new CompletableFuture<>();
+                                windows.add(result);
+                                windowCount.incrementAndGet();
+                                executor.execute(() -> fetch(windowStart, end, round, result));
+                                start = end;
+                            }
+                            windows.add(NO_MORE);
+                        } catch (InterruptedException | RejectedExecutionException e) {
+                            windows.add(
+                                    CompletableFuture.failedFuture(
+                                            new IllegalStateException("the lister was closed")));
+                        }
+                    });
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (done) {
+                    return false;
+                }
+                List<Query> queries;
+                try {
+                    CompletableFuture<List<Query>> next = windows.take();
+                    if (next == NO_MORE) {
+                        done = true;
+                        return false;
+                    }
+                    queries = next.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new RuntimeException(e.getCause());
+                }
+                // The window can be collected once emitted; let the next
+                // one start.
+                current = queries.iterator();
+                lookahead.release();
+            }
+            return true;
+        }
+
+        @Override
+        public Query next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        // The length of the next window, given how much of the range is
+        // left.
+        private synchronized long nextSpan(long remaining) {
+            long span;
+            if (measuredQueries < 0) {
+                span = firstSpan;
+            } else if (measuredQueries == 0) {
+                span = lastSpan * MAX_GROWTH;
+            } else {
+                span = measuredMillis * WINDOW_QUERIES / measuredQueries;
+                span = Math.max(1, Math.min(lastSpan * MAX_GROWTH, span));
+            }
+            lastSpan = Math.min(remaining, span);
+            return lastSpan;
+        }
+
+        private synchronized void measured(long millis, long queries) {
+            measuredMillis = millis;
+            measuredQueries = queries;
+        }
+
+        private void fetch(
+                long from, long until, int round, CompletableFuture<List<Query>> result) {
+            long windowPages = 0;
+            long windowNanos = 0;
+            try {
+                List<Query> queries = new ArrayList<>();
+                Iterator<Query> it = source.list(new Date(from), new Date(until)).iterator();
+                while (true) {
+                    long start = System.nanoTime();
+                    boolean more = it.hasNext();
+                    Query q = more ? it.next() : null;
+                    long elapsed = System.nanoTime() - start;
+                    if (elapsed > PAGE_THRESHOLD_NANOS) {
+                        windowPages++;
+                        windowNanos += elapsed;
+                    }
+                    if (!more) {
+                        break;
+                    }
+                    queries.add(q);
+                }
+                queries.sort(TIMESTAMP_ORDER);
+                measured(until - from, queries.size());
+                result.complete(queries);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                pages.addAndGet(windowPages);
+                pageNanos.addAndGet(windowNanos);
+                limit.release(round, windowPages == 0 ? 0 : windowNanos / windowPages);
+            }
+        }
+    }
+
+    // ShardLimit is a semaphore whose permit count is adjusted by the page
+    // latency of each window as it finishes. Windows that were started before
+    // the last decrease don't count towards another one, so a burst of slow
+    // windows halves the limit once rather than once per window.
+    private static class ShardLimit {
+        private final int max;
+        private int limit;
+        private int inUse;
+        private int round;
+        private long baselineNanos;
+
+        ShardLimit(int initial, int max) {
+            this.limit = initial;
+            this.max = max;
+        }
+
+        synchronized int get() {
+            return limit;
+        }
+
+        // Takes a permit, returning the current round for release.
+        synchronized int acquire() throws InterruptedException {
+            while (inUse >= limit) {
+                wait();
+            }
+            inUse++;
+            return round;
+        }
+
+        synchronized void release(int startRound, long meanPageNanos) {
+            inUse--;
+            if (meanPageNanos > 0) {
+                if (baselineNanos == 0 || meanPageNanos < baselineNanos) {
+                    baselineNanos = meanPageNanos;
+                }
+                if (meanPageNanos > baselineNanos * 2) {
+                    if (startRound == round) {
+                        limit = Math.max(1, limit / 2);
+                        round++;
+                    }
+                } else if (meanPageNanos < baselineNanos * 3 / 2) {
+                    limit = Math.min(max, limit + 1);
+                }
+            }
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ShardedQueryListerBenchmark compares one pagination stream with
+// ShardedQueryLister against a fake query API, without needing API keys:
+//
+//   gradle shardBenchmark
+//
+// The fake serves pages of PAGE_SIZE queries from memory, taking
+// PAGE_LATENCY_MS per page while it has at most SERVER_CAPACITY requests in
+// flight, and proportionally longer beyond that, like a saturated server.
+public class ShardedQueryListerBenchmark {
+    static final int QUERIES = 20_000;
+    static final int PAGE_SIZE = 100;
+    static final int PAGE_LATENCY_MS = 20;
+    static final int SERVER_CAPACITY = 8;
+    static final int MAX_SHARDS = 32;
+
+    public static void main(String[] args) throws Exception {
+        long until = System.currentTimeMillis();
+        long from = until - TimeUnit.DAYS.toMillis(90);
+        FakeQueryApi api = new FakeQueryApi(QUERIES, from, until);
+
+        long start = System.nanoTime();
+        long checksum = 0;
+        int count = 0;
+        for (Query q : api.list(new Date(from), new Date(until))) {
+            checksum = checksum * 31 + q.getId().hashCode();
+            count++;
+        }
+        double sequentialSecs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("single stream: %d queries in %.2f s\n", count, sequentialSecs);
+
+        try (ShardedQueryLister lister = new ShardedQueryLister(api::list, MAX_SHARDS)) {
+            start = System.nanoTime();
+            long shardedChecksum = 0;
+            int shardedCount = 0;
+            long last = Long.MIN_VALUE;
+            for (Query q : lister.list(new Date(from), new Date(until))) {
+                if (q.getTimestamp().getTime() < last) {
+                    throw new IllegalStateException("queries out of order");
+                }
+                last = q.getTimestamp().getTime();
+                shardedChecksum = shardedChecksum * 31 + q.getId().hashCode();
+                shardedCount++;
+            }
+            double shardedSecs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("sharded:       %d queries in %.2f s\n", shardedCount, shardedSecs);
+            System.out.println(lister);
+            if (shardedCount != count || shardedChecksum != checksum) {
+                throw new IllegalStateException("sharded listing differs from a single stream");
+            }
+            System.out.printf("speedup: %.1fx\n", sequentialSecs / shardedSecs);
+        }
+    }
+
+    // FakeQueryApi serves queries spread evenly over a time range, in
+    // timestamp order, a page at a time.
+    static class FakeQueryApi {
+        private final long[] timestamps;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        FakeQueryApi(int queries, long from, long until) {
+            timestamps = new long[queries];
+            for (int i = 0; i < queries; i++) {
+                timestamps[i] = from + (until - from) * i / queries;
+            }
+        }
+
+        Iterable<Query> list(Date from, Date until) {
+            int first = lowerBound(from.getTime());
+            int end = lowerBound(until.getTime());
+            return () ->
+                    new Iterator<Query>() {
+                        int next = first;
+                        int pageEnd = first;
+                        boolean fetched;
+
+                        @Override
+                        public boolean hasNext() {
+                            if (next == pageEnd && (next < end || !fetched)) {
+                                fetchPage();
+                            }
+                            return next < pageEnd;
+                        }
+
+                        @Override
+                        public Query next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Query q = new Query();
+                            q.setId(String.format("q%08d", next));
+                            q.setTimestamp(new Date(timestamps[next]));
+                            next++;
+                            return q;
+                        }
+
+                        private void fetchPage() {
+                            int active = inFlight.incrementAndGet();
+                            try {
+                                long latency = PAGE_LATENCY_MS * active / SERVER_CAPACITY;
+                                Thread.sleep(Math.max(PAGE_LATENCY_MS, latency));
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            } finally {
+                                inFlight.decrementAndGet();
+                            }
+                            fetched = true;
+                            pageEnd = Math.min(end, next + PAGE_SIZE);
+                        }
+                    };
+        }
+
+        private int lowerBound(long timestamp) {
+            int i = Arrays.binarySearch(timestamps, timestamp);
+            if (i < 0) {
+                return -i - 1;
+            }
+            while (i > 0 && timestamps[i - 1] == timestamp) {
+                i--;
+            }
+            return i;
+        }
+    }
+}
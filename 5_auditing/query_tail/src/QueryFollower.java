@@ -0,0 +1,315 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// QueryFollower tails the query log: it polls for queries newer than the
+// last one seen and hands each new query to its listeners, like tail -f.
+//
+//   QueryFollower follower = new QueryFollower(client);
+//   follower.addListener(q -> System.out.println(q.getQueryBody()));
+//   follower.start();
+//   ...
+//   follower.close();
+//
+// Polling adapts to activity: after a poll that finds new queries the next
+// one follows after minInterval, and each empty poll doubles the wait up to
+// maxInterval. Failed polls back off the same way and are retried.
+//
+// Audit records can become visible a little after newer ones, so each poll
+// reaches back lateArrival before the newest timestamp delivered. Queries seen
+// in that window are remembered by ID, so none is delivered twice; older
+// IDs are forgotten as the window moves on.
+//
+// A poll hands on what it lists a batch of bufferSize queries at a time,
+// each batch in timestamp order, so following from a start far in the past
+// doesn't read all of that history into memory. The log lists oldest
+// first, so a poll that fails part way resumes after the last batch it
+// delivered.
+//
+// Each listener has its own bounded queue and thread. When a listener's
+// queue is full the poller waits for it rather than dropping queries, so a
+// slow listener slows down polling for everyone (back-pressure) instead of
+// letting memory grow. A listener that throws is removed, and close()
+// rethrows the first such failure.
+public class QueryFollower implements AutoCloseable {
+    public interface Listener {
+        void onQuery(Query q) throws Exception;
+    }
+
+    private static final Comparator<Query> TIMESTAMP_ORDER =
+            Comparator.comparing(Query::getTimestamp).thenComparing(Query::getId);
+
+    // Stands in for a query to tell a listener thread to finish.
+    private static final Query END = new Query();
+
+    private final Function<Date, Iterable<Query>> source;
+    private Duration minInterval = Duration.ofMillis(500);
+    private Duration maxInterval = Duration.ofSeconds(30);
+    private Duration lateArrival = Duration.ofMinutes(1);
+    private int bufferSize = 1000;
+    private Date start = new Date();
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> seen = new HashMap<>();
+    private long cursor;
+    private Thread poller;
+    private volatile boolean closed;
+    private volatile Exception listenerFailure;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong emptyPolls = new AtomicLong();
+    private final AtomicLong failedPolls = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    public QueryFollower(Client client) {
+        this(
+                since ->
+                        client.queries()
+                                .list("timestamp:>=?", since.toInstant().toString()));
+    }
+
+    // Follows the queries returned by source, which is given a time and
+    // should list the queries at or after it.
+    public QueryFollower(Function<Date, Iterable<Query>> source) {
+        this.source = source;
+    }
+
+    public void setMinInterval(Duration minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public void setMaxInterval(Duration maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    // How far back before the newest query seen each poll looks for
+    // queries that became visible late.
+    public void setLateArrival(Duration lateArrival) {
+        this.lateArrival = lateArrival;
+    }
+
+    // How many queries each listener can have waiting.
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    // Queries before this time aren't delivered. Defaults to the time the
+    // follower was created.
+    public void setStart(Date start) {
+        this.start = start;
+    }
+
+    // Adds a listener. Listeners added after start() only see queries found
+    // from then on.
+    public void addListener(Listener listener) {
+        Subscription s = new Subscription(listener, bufferSize);
+        subscriptions.add(s);
+        s.thread.start();
+    }
+
+    public synchronized void start() {
+        if (poller != null) {
+            throw new IllegalStateException("already started");
+        }
+        cursor = start.getTime();
+        poller = new Thread(this::poll, "query-follower");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    // Stops polling, waits for the listeners to finish the queries already
+    // queued for them, and throws the first listener failure, if any.
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        if (poller != null) {
+            poller.interrupt();
+            poller.join();
+        }
+        for (Subscription s : subscriptions) {
+            s.queue.put(END);
+        }
+        for (Subscription s : subscriptions) {
+            s.thread.join();
+        }
+        if (listenerFailure != null) {
+            throw listenerFailure;
+        }
+    }
+
+    public long polls() {
+        return polls.get();
+    }
+
+    public long delivered() {
+        return delivered.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "query follower: %d polls (%d empty, %d failed), %d queries delivered,"
+                        + " %d duplicates skipped, %.1f s waiting on listeners",
+                polls.get(),
+                emptyPolls.get(),
+                failedPolls.get(),
+                delivered.get(),
+                duplicates.get(),
+                blockedNanos.get() / 1e9);
+    }
+
+    private void poll() {
+        long interval = minInterval.toNanos();
+        try {
+            while (!closed) {
+                boolean found;
+                try {
+                    found = pollOnce();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    // Retry after backing off, as if the poll found nothing.
+                    failedPolls.incrementAndGet();
+                    found = false;
+                }
+                interval =
+                        found
+                                ? minInterval.toNanos()
+                                : Math.min(maxInterval.toNanos(), interval * 2);
+                TimeUnit.NANOSECONDS.sleep(interval);
+            }
+        } catch (InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    // Lists the queries since the cursor, less the late arrival window, and
+    // delivers the ones not seen before, a batch of bufferSize at a time.
+    // Returns whether there were any.
+    private boolean pollOnce() throws InterruptedException {
+        polls.incrementAndGet();
+        long since = Math.max(start.getTime(), cursor - lateArrival.toMillis());
+        List<Query> batch = new ArrayList<>();
+        Map<String, Long> batchIds = new HashMap<>();
+        long found = 0;
+        for (Query q : source.apply(new Date(since))) {
+            long timestamp = q.getTimestamp().getTime();
+            if (timestamp < since) {
+                continue;
+            }
+            if (seen.containsKey(q.getId()) || batchIds.putIfAbsent(q.getId(), timestamp) != null) {
+                duplicates.incrementAndGet();
+                continue;
+            }
+            batch.add(q);
+            if (batch.size() >= bufferSize) {
+                found += deliver(batch, batchIds);
+            }
+        }
+        found += deliver(batch, batchIds);
+        if (found == 0) {
+            emptyPolls.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // Queues batch for the listeners in timestamp order, and only then
+    // records its queries as seen and moves the cursor past them, so a
+    // listing that fails part way leaves the rest for the next poll.
+    // Returns how many queries there were, and empties batch and ids.
+    private int deliver(List<Query> batch, Map<String, Long> ids) throws InterruptedException {
+        int n = batch.size();
+        batch.sort(TIMESTAMP_ORDER);
+        for (Query q : batch) {
+            for (Subscription s : subscriptions) {
+                if (s.failed) {
+                    continue;
+                }
+                if (!s.queue.offer(q)) {
+                    long blockedStart = System.nanoTime();
+                    s.queue.put(q);
+                    blockedNanos.addAndGet(System.nanoTime() - blockedStart);
+                }
+            }
+            delivered.incrementAndGet();
+        }
+        seen.putAll(ids);
+        for (long timestamp : ids.values()) {
+            cursor = Math.max(cursor, timestamp);
+        }
+
+        // Forget the IDs that the next poll can no longer return.
+        long horizon = cursor - lateArrival.toMillis();
+        seen.values().removeIf(timestamp -> timestamp < horizon);
+        batch.clear();
+        ids.clear();
+        return n;
+    }
+
+    private class Subscription {
+        final Listener listener;
+        final BlockingQueue<Query> queue;
+        final Thread thread;
+        volatile boolean failed;
+
+        Subscription(Listener listener, int capacity) {
+            this.listener = listener;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this::run, "query-follower-listener");
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    Query q = queue.take();
+                    if (q == END) {
+                        return;
+                    }
+                    if (!failed) {
+                        try {
+                            listener.onQuery(q);
+                        } catch (Exception e) {
+                            failed = true;
+                            synchronized (QueryFollower.this) {
+                                if (listenerFailure == null) {
+                                    listenerFailure = e;
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
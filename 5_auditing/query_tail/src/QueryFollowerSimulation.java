@@ -0,0 +1,233 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// QueryFollowerSimulation runs a QueryFollower against a fake query log that
+// alternates bursts of queries with idle spells, without needing API keys:
+//
+//   gradle simulate
+//
+// Some queries become visible late, the fake fails one listing in ten
+// half way through,
+// and one of the two listeners is slow enough to fill its buffer. At the
+// end both listeners must have seen every query exactly once; the output
+// shows how many polls were spent while the log was active versus idle,
+// and how long queries took to reach the fast listener.
+public class QueryFollowerSimulation {
+    static final long CYCLES = 3;
+    static final long BURST_MILLIS = 2_000;
+    static final long IDLE_MILLIS = 4_000;
+    static final int QUERIES_PER_SECOND = 2_000;
+    static final long LIST_LATENCY_MILLIS = 5;
+
+    public static void main(String[] args) throws Exception {
+        FakeQueryLog log = new FakeQueryLog(new Random(1));
+        QueryFollower follower = new QueryFollower(log::list);
+        follower.setStart(new Date(log.start));
+        follower.setMinInterval(Duration.ofMillis(50));
+        follower.setMaxInterval(Duration.ofSeconds(1));
+        follower.setLateArrival(Duration.ofSeconds(3));
+        follower.setBufferSize(256);
+
+        Set<String> fast = ConcurrentHashMap.newKeySet();
+        Set<String> slow = ConcurrentHashMap.newKeySet();
+        AtomicLong duplicates = new AtomicLong();
+        List<Long> latencies = new ArrayList<>();
+        follower.addListener(
+                q -> {
+                    if (!fast.add(q.getId())) {
+                        duplicates.incrementAndGet();
+                    }
+                    synchronized (latencies) {
+                        latencies.add(System.currentTimeMillis() - log.visibleAt(q));
+                    }
+                });
+        follower.addListener(
+                q -> {
+                    if (!slow.add(q.getId())) {
+                        duplicates.incrementAndGet();
+                    }
+                    // A little slower than queries arrive in a burst.
+                    if (slow.size() % 2 == 0) {
+                        Thread.sleep(1);
+                    }
+                });
+
+        follower.start();
+        Thread.sleep(CYCLES * (BURST_MILLIS + IDLE_MILLIS));
+        // The slow listener may still be holding the follower back.
+        int emitted = log.emitted();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (follower.delivered() < emitted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        follower.close();
+
+        System.out.printf(
+                "%d queries emitted, %d late; fast listener saw %d, slow listener saw %d,"
+                        + " %d duplicates\n",
+                emitted, log.late, fast.size(), slow.size(), duplicates.get());
+        System.out.printf(
+                "%d listings while active, %d while idle, %d failed on purpose\n",
+                log.activeLists.get(), log.idleLists.get(), log.failures.get());
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf(
+                "latency from visible to delivered: p50 %d ms, p99 %d ms, max %d ms\n",
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        System.out.println(follower);
+        if (fast.size() != emitted || slow.size() != emitted || duplicates.get() != 0) {
+            throw new IllegalStateException("queries were lost or delivered twice");
+        }
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+
+    // A query log that is written to in bursts as time passes. Each query is
+    // stamped when it is made but only listed once it becomes visible, which
+    // for one in fifty queries is up to two seconds later.
+    static class FakeQueryLog {
+        final long start = System.currentTimeMillis();
+        final Random random;
+        final List<Query> queries = new ArrayList<>();
+        final List<Long> visible = new ArrayList<>();
+        final AtomicLong activeLists = new AtomicLong();
+        final AtomicLong idleLists = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        long generatedUntil = start;
+        int late;
+
+        FakeQueryLog(Random random) {
+            this.random = random;
+        }
+
+        // Lists the visible queries stamped at or after since, in timestamp
+        // order, as `queries().list("timestamp:>=?", since)` would.
+        Iterable<Query> list(Date since) {
+            try {
+                Thread.sleep(LIST_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return listNow(since);
+        }
+
+        private synchronized Iterable<Query> listNow(Date since) {
+            long now = System.currentTimeMillis();
+            generate(now);
+            if (inBurst(now)) {
+                activeLists.incrementAndGet();
+            } else {
+                idleLists.incrementAndGet();
+            }
+            List<Query> page = new ArrayList<>();
+            for (int i = firstAtOrAfter(since.getTime()); i < queries.size(); i++) {
+                if (visible.get(i) <= now) {
+                    page.add(queries.get(i));
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                failures.incrementAndGet();
+                return failingAfter(page, page.size() / 2);
+            }
+            return page;
+        }
+
+        // Lists the first n of page, then fails as a later page fetch would.
+        private static Iterable<Query> failingAfter(List<Query> page, int n) {
+            return () ->
+                    new Iterator<Query>() {
+                        int next;
+
+                        public boolean hasNext() {
+                            return true;
+                        }
+
+                        public Query next() {
+                            if (next == n) {
+                                throw new IllegalStateException("simulated listing failure");
+                            }
+                            return page.get(next++);
+                        }
+                    };
+        }
+
+        synchronized long visibleAt(Query q) {
+            return visible.get(Integer.parseInt(q.getId().substring(2), 16));
+        }
+
+        // The number of queries made before the last cycle ended.
+        synchronized int emitted() {
+            generate(start + CYCLES * (BURST_MILLIS + IDLE_MILLIS));
+            return queries.size();
+        }
+
+        boolean inBurst(long t) {
+            return (t - start) % (BURST_MILLIS + IDLE_MILLIS) < BURST_MILLIS;
+        }
+
+        private void generate(long now) {
+            long end = Math.min(now, start + CYCLES * (BURST_MILLIS + IDLE_MILLIS));
+            for (long t = generatedUntil; t < end; t++) {
+                if (!inBurst(t)) {
+                    continue;
+                }
+                for (int i = 0; i < QUERIES_PER_SECOND / 1000; i++) {
+                    Query q = new Query();
+                    q.setId(String.format("q-%08x", queries.size()));
+                    q.setTimestamp(new Date(t));
+                    q.setAccountId("a-" + random.nextInt(20));
+                    q.setResourceId("rs-" + random.nextInt(100));
+                    q.setQueryBody("{\"command\":\"ls -la\"}");
+                    long delay = random.nextInt(20);
+                    if (random.nextInt(50) == 0) {
+                        delay = 200 + random.nextInt(1_800);
+                        late++;
+                    }
+                    queries.add(q);
+                    visible.add(t + delay);
+                }
+            }
+            generatedUntil = Math.max(generatedUntil, end);
+        }
+
+        private int firstAtOrAfter(long t) {
+            int lo = 0;
+            int hi = queries.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (queries.get(mid).getTimestamp().getTime() < t) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+
+// QueryTail prints queries as they are made, like tail -f, until it is
+// interrupted. Replayable SSH sessions are also played back once they show
+// up, on their own listener so a long replay doesn't hold up the query log.
+public class QueryTail {
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        try {
+            // Create the SDM Client
+            ClientOptions opts = new ClientOptions();
+            Client client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            // Start from the last few minutes, so there is something to see.
+            QueryFollower follower = new QueryFollower(client);
+            follower.setStart(new Date(System.currentTimeMillis() - 5 * 60 * 1000));
+            follower.setMinInterval(Duration.ofSeconds(1));
+            follower.setMaxInterval(Duration.ofSeconds(30));
+
+            follower.addListener(
+                    q ->
+                            System.out.printf(
+                                    "%s %s on %s (%s): %s\n",
+                                    q.getTimestamp().toInstant(),
+                                    q.getAccountEmail(),
+                                    q.getResourceName(),
+                                    q.getResourceType(),
+                                    q.getEncrypted() ? "<encrypted>" : q.getQueryBody()));
+            follower.addListener(
+                    q -> {
+                        if (!q.getReplayable() || q.getEncrypted()) {
+                            return;
+                        }
+                        StringBuilder replay = new StringBuilder();
+                        for (ReplayChunk chunk : client.replays().list("id:?", q.getId())) {
+                            for (ReplayChunkEvent event : chunk.getEvents()) {
+                                replay.append(
+                                        new String(event.getData(), StandardCharsets.UTF_8));
+                            }
+                        }
+                        System.out.printf(
+                                "--- replay of %s by %s on %s ---\n%s\n--- end of %s ---\n",
+                                q.getId(),
+                                q.getAccountEmail(),
+                                q.getResourceName(),
+                                replay,
+                                q.getId());
+                    });
+
+            Runtime.getRuntime()
+                    .addShutdownHook(
+                            new Thread(
+                                    () -> {
+                                        try {
+                                            follower.close();
+                                        } catch (Exception e) {
+                                            e.printStackTrace();
+                                        }
+                                        System.out.println(follower);
+                                    }));
+            follower.start();
+            System.out.println("Following queries, press Ctrl-C to stop");
+            Thread.currentThread().join();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -13,14 +13,13 @@
 // limitations under the License.
 //
 import com.strongdm.api.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
-import java.util.*;
-import java.io.*;
-import org.json.JSONObject;
-import org.json.JSONArray;
+import java.nio.file.Path;
+import java.util.List;
 
 public class RDPReplay {
+    // Failed renders are retried until they have been attempted this often.
+    private static final int RENDER_ATTEMPTS = 3;
+
     public static void main(String[] args) {
         // Load the SDM API keys from the environment.
         // If these values are not set in your environment,
@@ -49,12 +48,52 @@ public class RDPReplay {
             }
             System.out.printf("Queries made against %s:\n", resourceName);
 
+            // Load the account history once, rather than looking up the
+            // account behind every query with its own snapshot request.
+            AccountResolver accounts = AccountResolver.load(client);
+
+            // Render several queries at once: SDM_RDP_RENDERERS sets the number
+            // of concurrent `sdm replay rdp` processes (one per core by
+            // default), and SDM_CLI the executable to run in place of sdm
+            // (make sure path includes sdm otherwise).
+            String renderers = System.getenv("SDM_RDP_RENDERERS");
+            String sdmCli = System.getenv("SDM_CLI");
+            RenderFarm farm =
+                    new RenderFarm(
+                            List.of(sdmCli == null ? "sdm" : sdmCli, "replay", "rdp"),
+                            renderers == null
+                                    ? Runtime.getRuntime().availableProcessors()
+                                    : Integer.parseInt(renderers),
+                            RENDER_ATTEMPTS,
+                            new RenderFarm.Listener() {
+                                // This will print out the location of the rendered session
+                                public void onRendered(Query q, List<String> rendered) {
+                                    rendered.forEach(System.out::println);
+                                }
+
+                                public void onFailed(Query q, Exception error) {
+                                    System.out.printf(
+                                            "Rendering query %s failed: %s\n",
+                                            q.getId(), error.getMessage());
+                                }
+                            });
+
+            // Every stage records how long it takes, for a report at the end.
+            // Set SDM_REPLAY_METRICS_FILE to also write the numbers in the
+            // Prometheus text format.
+            ReplayMetrics metrics = new ReplayMetrics("rdp_replay");
+            ReplayMetrics.Stage accountLookups = metrics.stage("account_lookup");
+            ReplayMetrics.Stage listChunks = metrics.stage("list_chunks");
+            ReplayMetrics.Stage spool = metrics.stage("spool");
+            farm.setMetrics(metrics);
+
             Iterable<Query> queryIterator =
                     client.queries().list("resource_id:?", resource.getId());
-            for (Query q : queryIterator) {
-                AccountGetResponse accountResponse =
-                        client.snapshotAt(q.getTimestamp()).accounts().get(q.getAccountId());
-                User user = (User) accountResponse.getAccount();
+            for (Query q : ReplayMetrics.timed(metrics.stage("list_queries"), queryIterator)) {
+                metrics.counter("queries").increment();
+                long start = System.nanoTime();
+                User user = (User) accounts.get(q.getAccountId(), q.getTimestamp());
+                accountLookups.record(start);
 
                 if (q.getEncrypted()) {
                     System.out.printf(
@@ -66,78 +105,26 @@ public class RDPReplay {
                     System.out.printf(
                             "Found RDP query made by %s at %s\n",
                             user.getEmail(), q.getTimestamp());
-                    Iterable<ReplayChunk> replayChunks = client.replays().list("id:?", q.getId());
-
-                    Path tempDir = Files.createTempDirectory(q.getId());
-                    List<String> logFiles = new ArrayList<>();
-
-                    // Write the postStart query as a node log file (https://www.strongdm.com/docs/admin/logs/references/post-start/)
-                    JSONObject queryJson = new JSONObject();
-                    queryJson.put("type", "postStart");
-                    queryJson.put("uuid", q.getId());
-                    queryJson.put("query", JSONObject.valueToString(new JSONObject(q.getQueryBody())));
-                    
-                    Path queryFile = tempDir.resolve("relay.0000000000.log");
-                    Files.writeString(queryFile, queryJson.toString());
-                    logFiles.add(queryFile.toString());
-
-                    // Write each replay chunk as a node log file (https://www.strongdm.com/docs/admin/logs/references/replay-chunks/)
-                    int chunkId = 1;
-                    for (ReplayChunk chunk : replayChunks) {
-                        JSONArray eventsArray = new JSONArray();
-                        for (ReplayChunkEvent event : chunk.getEvents()) {
-                            JSONObject eventJson = new JSONObject();
-                            eventJson.put("data", Base64.getEncoder().encodeToString(event.getData()));
-                            eventJson.put("duration", event.getDuration().getSeconds());
-                            eventsArray.put(eventJson);
-                        }
 
-                        JSONObject chunkJson = new JSONObject();
-                        chunkJson.put("type", "chunk");
-                        chunkJson.put("uuid", q.getId());
-                        chunkJson.put("chunkId", chunkId);
-                        chunkJson.put("events", eventsArray);
-
-                        Path chunkfile = tempDir.resolve(String.format("relay.%010d.log", chunkId));
-                        Files.writeString(chunkfile, chunkJson.toString());
-                        logFiles.add(chunkfile.toString());
-                        chunkId++;
-                    }
-
-                    // Run the sdm CLI to render the captured data (make sure path includes sdm)
-                    List<String> command = new ArrayList<>();
-                    command.add("sdm");
-                    command.add("replay");
-                    command.add("rdp");
-                    command.add(q.getId());
-                    command.addAll(logFiles);
-
-                    ProcessBuilder pb = new ProcessBuilder(command);
-                    pb.redirectErrorStream(true);
-                    Process process = pb.start();
-
-                    // This will print out the location of the rendered session
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("render complete:")) {
-                                System.out.println(line);
-                            }
-                        }
-                    }
-
-                    int exitCode = process.waitFor();
-                    if (exitCode != 0) {
-                        throw new RuntimeException("sdm replay command failed with exit code " + exitCode);
-                    }
-
-                    // Clean up tempDir
-                    Files.walk(tempDir)
-                        .sorted(Comparator.reverseOrder())
-                        .map(Path::toFile)
-                        .forEach(File::delete);
+                    // Write the query and its replay chunks to node log files
+                    // and queue them for rendering. This only waits if earlier
+                    // queries are still waiting for a renderer. The spool time
+                    // includes listing the chunks and any wait for the farm.
+                    start = System.nanoTime();
+                    farm.submit(
+                            q,
+                            ReplayMetrics.timed(
+                                    listChunks, client.replays().list("id:?", q.getId())));
+                    spool.record(start);
                 }
             }
+            farm.close();
+            System.out.println(farm);
+            System.out.print(metrics.report());
+            String metricsFile = System.getenv("SDM_REPLAY_METRICS_FILE");
+            if (metricsFile != null) {
+                metrics.writePrometheus(Path.of(metricsFile));
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
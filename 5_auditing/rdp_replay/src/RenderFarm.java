@@ -0,0 +1,301 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// RenderFarm renders RDP queries with several `sdm replay rdp` processes at
+// once, in three parts:
+//
+//   producer  - the caller, which fetches each query's replay chunks and
+//               spools them to node log files with submit
+//   renderers - a fixed pool of threads, each running one render process
+//               at a time
+//   consumer  - a single thread handing finished renders to a Listener and
+//               cleaning up their spool files
+//
+// At most twice as many queries as there are renderers are spooled and not
+// yet finished, so submit blocks rather than filling the disk when renders
+// fall behind. A failed render goes to the back of the queue and is retried
+// after the renders waiting ahead of it, up to maxAttempts times.
+//
+// The render command is a list such as ["sdm", "replay", "rdp"], to which
+// the query ID and log files are appended. Any executable that prints
+// "render complete: <path>" lines can stand in for the sdm CLI, e.g.
+//
+//   #!/bin/sh
+//   echo "render complete: /tmp/$3.mp4"
+public class RenderFarm implements AutoCloseable {
+    public interface Listener {
+        // Called with the "render complete:" lines of a successful render.
+        void onRendered(Query query, List<String> rendered);
+
+        // Called once a render has failed maxAttempts times.
+        void onFailed(Query query, Exception error);
+    }
+
+    // Node log records are spooled into segment files of about this size.
+    private static final long SPOOL_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    // Output lines kept from a failed render, for its error message.
+    private static final int ERROR_TAIL_LINES = 5;
+
+    private static final Object END = new Object();
+
+    private final List<String> command;
+    private final int maxAttempts;
+    private final Listener listener;
+    private final int rendererCount;
+    private final int capacity;
+    private final Semaphore spooled;
+    private final BlockingDeque<Object> jobs = new LinkedBlockingDeque<>();
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+    private final ExecutorService renderers;
+    private final Thread consumer;
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile ReplayMetrics.Stage renders =
+            new ReplayMetrics("render_farm").stage("render");
+
+    public RenderFarm(List<String> command, int renderers, int maxAttempts, Listener listener) {
+        if (renderers < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("renderers and maxAttempts must be positive");
+        }
+        this.command = command;
+        this.maxAttempts = maxAttempts;
+        this.listener = listener;
+        this.rendererCount = renderers;
+        this.capacity = renderers * 2;
+        this.spooled = new Semaphore(capacity);
+        this.renderers =
+                Executors.newFixedThreadPool(
+                        renderers,
+                        r -> {
+                            Thread t = new Thread(r, "rdp-render");
+                            t.setDaemon(true);
+                            return t;
+                        });
+        for (int i = 0; i < renderers; i++) {
+            this.renderers.execute(this::renderLoop);
+        }
+        this.consumer = new Thread(this::consumeLoop, "rdp-render-results");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    // Spools the query's replay chunks and queues it for rendering. Blocks
+    // while the farm already holds as many spooled queries as it allows.
+    public void submit(Query query, Iterable<ReplayChunk> chunks) throws Exception {
+        spooled.acquire();
+        Job job = new Job(query, Files.createTempDirectory(query.getId()));
+        try {
+            job.spool.writePostStart(query);
+            int chunkId = 1;
+            for (ReplayChunk chunk : chunks) {
+                job.spool.writeChunk(query.getId(), chunkId, chunk);
+                chunkId++;
+            }
+            job.spool.close();
+        } catch (Exception e) {
+            job.cleanUp();
+            spooled.release();
+            throw e;
+        }
+        jobs.put(job);
+    }
+
+    // Waits for every submitted query to finish rendering or fail, then
+    // stops the renderers and the consumer.
+    @Override
+    public void close() throws InterruptedException {
+        spooled.acquire(capacity);
+        for (int i = 0; i < rendererCount; i++) {
+            jobs.put(END);
+        }
+        results.put(END);
+        renderers.shutdown();
+        renderers.awaitTermination(1, TimeUnit.MINUTES);
+        consumer.join();
+    }
+
+    public long rendered() {
+        return rendered.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    public long retries() {
+        return retries.get();
+    }
+
+    // Where the time each successful render process takes is recorded, as
+    // the "render" stage.
+    public void setMetrics(ReplayMetrics metrics) {
+        this.renders = metrics.stage("render");
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "renders: %d complete, %d failed, %d retried", rendered(), failed(), retries());
+    }
+
+    private void renderLoop() {
+        try {
+            while (true) {
+                Object next = jobs.take();
+                if (next == END) {
+                    return;
+                }
+                Job job = (Job) next;
+                job.attempts++;
+                try {
+                    long start = System.nanoTime();
+                    job.rendered = render(job);
+                    renders.record(start);
+                    results.put(job);
+                } catch (IOException | RuntimeException e) {
+                    // Every job has to reach results once, whatever went
+                    // wrong, or close would wait for its permit forever.
+                    if (job.attempts < maxAttempts) {
+                        retries.incrementAndGet();
+                        jobs.putLast(job);
+                    } else {
+                        job.error = e;
+                        results.put(job);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<String> render(Job job) throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>(command);
+        args.add(job.query.getId());
+        args.addAll(job.spool.getFiles());
+        ProcessBuilder pb = new ProcessBuilder(args);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+
+        List<String> rendered = new ArrayList<>();
+        Deque<String> tail = new ArrayDeque<>();
+        boolean drained = false;
+        try (BufferedReader reader =
+                new BufferedReader(
+                        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("render complete:")) {
+                    rendered.add(line);
+                }
+                tail.addLast(line);
+                if (tail.size() > ERROR_TAIL_LINES) {
+                    tail.removeFirst();
+                }
+            }
+            drained = true;
+        } finally {
+            // A renderer may close stdout before it has finished writing its
+            // output, so only kill it if reading failed; after EOF, wait.
+            if (!drained) {
+                process.destroy();
+            }
+        }
+
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException(
+                    String.format(
+                            "%s failed with exit code %d: %s",
+                            String.join(" ", command), exitCode, String.join("\n", tail)));
+        }
+        return rendered;
+    }
+
+    private void consumeLoop() {
+        try {
+            while (true) {
+                Object next = results.take();
+                if (next == END) {
+                    return;
+                }
+                Job job = (Job) next;
+                try {
+                    if (job.error == null) {
+                        rendered.incrementAndGet();
+                        listener.onRendered(job.query, job.rendered);
+                    } else {
+                        failed.incrementAndGet();
+                        listener.onFailed(job.query, job.error);
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    job.cleanUp();
+                    spooled.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Job {
+        final Query query;
+        final Path dir;
+        final ReplaySpoolWriter spool;
+        int attempts;
+        List<String> rendered;
+        Exception error;
+
+        Job(Query query, Path dir) {
+            this.query = query;
+            this.dir = dir;
+            this.spool = new ReplaySpoolWriter(dir, SPOOL_SEGMENT_BYTES);
+        }
+
+        void cleanUp() {
+            try {
+                spool.delete();
+                Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
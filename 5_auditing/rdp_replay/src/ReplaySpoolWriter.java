@@ -0,0 +1,196 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+
+// ReplaySpoolWriter writes node log records for `sdm replay rdp` into a few
+// large segment files instead of one file per replay chunk. Records are
+// written one per line, straight into a buffer in front of a FileChannel:
+// chunk records are never built as JSONObjects, and event data is Base64
+// encoded directly into the buffer. A new segment is started once the
+// current one reaches the segment size; records never span segments.
+public class ReplaySpoolWriter implements AutoCloseable {
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+                    .getBytes(StandardCharsets.US_ASCII);
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+    private final List<Path> files = new ArrayList<>();
+    private FileChannel channel;
+    private long segmentWritten;
+
+    public ReplaySpoolWriter(Path dir, long segmentBytes) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    // Writes the postStart record for a query
+    // (https://www.strongdm.com/docs/admin/logs/references/post-start/)
+    public void writePostStart(Query q) throws IOException {
+        JSONObject queryJson = new JSONObject();
+        queryJson.put("type", "postStart");
+        queryJson.put("uuid", q.getId());
+        queryJson.put("query", JSONObject.valueToString(new JSONObject(q.getQueryBody())));
+        startRecord();
+        put(queryJson.toString());
+        endRecord();
+    }
+
+    // Writes a replay chunk record
+    // (https://www.strongdm.com/docs/admin/logs/references/replay-chunks/)
+    public void writeChunk(String queryId, int chunkId, ReplayChunk chunk) throws IOException {
+        startRecord();
+        put("{\"type\":\"chunk\",\"uuid\":");
+        put(JSONObject.quote(queryId));
+        put(",\"chunkId\":");
+        put(Integer.toString(chunkId));
+        put(",\"events\":[");
+        boolean first = true;
+        for (ReplayChunkEvent event : chunk.getEvents()) {
+            if (!first) {
+                put(",");
+            }
+            first = false;
+            put("{\"data\":\"");
+            putBase64(event.getData());
+            put("\",\"duration\":");
+            put(Long.toString(event.getDuration().getSeconds()));
+            put("}");
+        }
+        put("]}");
+        endRecord();
+    }
+
+    // The segment files written so far, in order.
+    public List<String> getFiles() {
+        List<String> names = new ArrayList<>();
+        for (Path file : files) {
+            names.add(file.toString());
+        }
+        return names;
+    }
+
+    // Deletes the segment files.
+    public void delete() throws IOException {
+        close();
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void startRecord() throws IOException {
+        if (channel == null || segmentWritten + buffer.position() >= segmentBytes) {
+            close();
+            Path file = dir.resolve(String.format("relay.%010d.log", files.size()));
+            channel =
+                    FileChannel.open(
+                            file,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING);
+            files.add(file);
+            segmentWritten = 0;
+        }
+    }
+
+    private void endRecord() throws IOException {
+        put("\n");
+    }
+
+    private void put(String ascii) throws IOException {
+        if (buffer.remaining() < ascii.length()) {
+            flush();
+        }
+        if (buffer.remaining() < ascii.length()) {
+            put(ascii.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        for (int i = 0; i < ascii.length(); i++) {
+            char c = ascii.charAt(i);
+            if (c >= 0x80) {
+                // Not plain ASCII after all; fall back to encoding it.
+                buffer.position(buffer.position() - i);
+                put(ascii.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buffer.put((byte) c);
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(bytes);
+        while (src.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int n = Math.min(src.remaining(), buffer.remaining());
+            buffer.put(bytes, src.position(), n);
+            src.position(src.position() + n);
+        }
+    }
+
+    private void putBase64(byte[] data) throws IOException {
+        int i = 0;
+        for (; i + 3 <= data.length; i += 3) {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            int bits = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+            buffer.put(BASE64[bits >>> 18]);
+            buffer.put(BASE64[(bits >>> 12) & 0x3F]);
+            buffer.put(BASE64[(bits >>> 6) & 0x3F]);
+            buffer.put(BASE64[bits & 0x3F]);
+        }
+        int left = data.length - i;
+        if (left > 0) {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            int bits = (data[i] & 0xFF) << 16 | (left == 2 ? (data[i + 1] & 0xFF) << 8 : 0);
+            buffer.put(BASE64[bits >>> 18]);
+            buffer.put(BASE64[(bits >>> 12) & 0x3F]);
+            buffer.put(left == 2 ? BASE64[(bits >>> 6) & 0x3F] : (byte) '=');
+            buffer.put((byte) '=');
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,91 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+
+// SnapshotDiff prints what changed in resources, roles and accounts between
+// two points in time, given as ISO-8601 instants:
+//
+//   gradle run --args="2025-06-02T00:00:00Z 2025-06-06T00:00:00Z"
+//
+// With no arguments it compares a week ago with now.
+public class SnapshotDiff {
+    // How many IDs of each kind of change to print.
+    private static final int MAX_LISTED = 20;
+
+    public static void main(String[] args) {
+        // Load the SDM API keys from the environment.
+        // If these values are not set in your environment,
+        // please follow the documentation here:
+        // https://www.strongdm.com/docs/api/api-keys/
+        var apiAccessKey = System.getenv("SDM_API_ACCESS_KEY");
+        var apiSecretKey = System.getenv("SDM_API_SECRET_KEY");
+        if (apiAccessKey == null || apiSecretKey == null) {
+            System.out.println("SDM_API_ACCESS_KEY and SDM_API_SECRET_KEY must be provided");
+            return;
+        }
+        try {
+            // Create the SDM Client
+            ClientOptions opts = new ClientOptions();
+            Client client = new Client(apiAccessKey, apiSecretKey, opts);
+
+            Instant now = Instant.now();
+            Instant weekAgo = now.minus(7, ChronoUnit.DAYS);
+            Date from = Date.from(args.length > 0 ? Instant.parse(args[0]) : weekAgo);
+            Date until = Date.from(args.length > 1 ? Instant.parse(args[1]) : now);
+            var before = client.snapshotAt(from);
+            var after = client.snapshotAt(until);
+            System.out.printf("Changes between %s and %s:\n", from.toInstant(), until.toInstant());
+
+            SnapshotDiffer differ = new SnapshotDiffer();
+            print(
+                    "Resources",
+                    differ.diff(
+                            before.resources().list(""),
+                            after.resources().list(""),
+                            Resource::getId));
+            print(
+                    "Roles",
+                    differ.diff(before.roles().list(""), after.roles().list(""), Role::getId));
+            print(
+                    "Accounts",
+                    differ.diff(
+                            before.accounts().list(""),
+                            after.accounts().list(""),
+                            Account::getId));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void print(String kind, SnapshotDiffer.Changes changes) {
+        System.out.printf("%s: %s\n", kind, changes);
+        printIds("added", changes.getAdded());
+        printIds("removed", changes.getRemoved());
+        printIds("modified", changes.getModified());
+    }
+
+    private static void printIds(String change, List<String> ids) {
+        for (String id : ids.subList(0, Math.min(ids.size(), MAX_LISTED))) {
+            System.out.printf("\t%s %s\n", change, id);
+        }
+        if (ids.size() > MAX_LISTED) {
+            System.out.printf("\t... and %d more %s\n", ids.size() - MAX_LISTED, change);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+// SnapshotDiffer compares two listings of the same kind of entity, usually
+// the same list call made at two snapshots:
+//
+//   SnapshotDiffer.Changes changes =
+//           new SnapshotDiffer()
+//                   .diff(
+//                           client.snapshotAt(monday).resources().list(""),
+//                           client.snapshotAt(friday).resources().list(""),
+//                           Resource::getId);
+//
+// Both listings are streamed, concurrently. Each entity is reduced to its ID
+// and a hash of its canonical form as it arrives, so the entities themselves
+// aren't kept: memory grows with the number of IDs, not with the size of the
+// entities. The digests of each side are sorted by ID and merged in one pass;
+// an ID on one side only was added or removed, and an ID on both sides with
+// different hashes was modified.
+//
+// The canonical form of an entity is built from its public getters, sorted
+// by name, with maps sorted by key, so it doesn't depend on field order or
+// on how the entity was built. Getters for live state that changes without
+// anyone editing the entity, like a resource's health, are left out.
+public class SnapshotDiffer {
+    // Getters that describe live state rather than configuration.
+    private static final List<String> IGNORED_GETTERS = List.of("getHealthy");
+
+    private static final Map<Class<?>, Method[]> GETTERS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<MessageDigest> SHA256 =
+            ThreadLocal.withInitial(
+                    () -> {
+                        try {
+                            return MessageDigest.getInstance("SHA-256");
+                        } catch (NoSuchAlgorithmException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    });
+
+    // The IDs that differ between two listings, each list sorted.
+    public static class Changes {
+        private final List<String> added = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final List<String> modified = new ArrayList<>();
+        private int unchanged;
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public List<String> getModified() {
+            return modified;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d added, %d removed, %d modified, %d unchanged",
+                    added.size(), removed.size(), modified.size(), unchanged);
+        }
+    }
+
+    public <T> Changes diff(
+            Iterable<? extends T> before, Iterable<? extends T> after, Function<T, String> idOf) {
+        CompletableFuture<Digest[]> beforeDigests =
+                CompletableFuture.supplyAsync(() -> digest(before, idOf));
+        Digest[] afterDigests = digest(after, idOf);
+        Digest[] beforeSorted;
+        try {
+            beforeSorted = beforeDigests.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return merge(beforeSorted, afterDigests);
+    }
+
+    // Returns the canonical form of an entity as a string.
+    public static String canonicalForm(Object entity) {
+        StringBuilder out = new StringBuilder();
+        appendCanonical(out, entity);
+        return out.toString();
+    }
+
+    // Lists the entities, hashing each one, and sorts the digests by ID. If
+    // an ID is listed twice, the last listing wins.
+    private static <T> Digest[] digest(Iterable<? extends T> entities, Function<T, String> idOf) {
+        List<Digest> digests = new ArrayList<>();
+        for (T entity : entities) {
+            digests.add(new Digest(idOf.apply(entity), hash(entity), digests.size()));
+        }
+        Digest[] sorted = digests.toArray(new Digest[0]);
+        Arrays.sort(sorted, Digest.ORDER);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i + 1 < sorted.length && sorted[i].id.equals(sorted[i + 1].id)) {
+                continue;
+            }
+            sorted[n++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static Changes merge(Digest[] before, Digest[] after) {
+        Changes changes = new Changes();
+        int i = 0;
+        int j = 0;
+        while (i < before.length || j < after.length) {
+            int c =
+                    i == before.length
+                            ? 1
+                            : j == after.length ? -1 : before[i].id.compareTo(after[j].id);
+            if (c < 0) {
+                changes.removed.add(before[i++].id);
+            } else if (c > 0) {
+                changes.added.add(after[j++].id);
+            } else {
+                if (before[i].hash != after[j].hash) {
+                    changes.modified.add(before[i].id);
+                } else {
+                    changes.unchanged++;
+                }
+                i++;
+                j++;
+            }
+        }
+        return changes;
+    }
+
+    // The first 64 bits of the SHA-256 of the canonical form. A modified
+    // entity is missed only if both forms share these bits, a one in 2^64
+    // chance.
+    private static long hash(Object entity) {
+        byte[] digest =
+                SHA256.get().digest(canonicalForm(entity).getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = hash << 8 | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    // Strings are length-prefixed so that no value can be mistaken for the
+    // punctuation around it.
+    private static void appendCanonical(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            String s = (String) value;
+            out.append(s.length()).append(':').append(s);
+        } else if (value instanceof Number
+                || value instanceof Boolean
+                || value instanceof Character
+                || value instanceof Enum) {
+            out.append(value);
+        } else if (value instanceof Date) {
+            out.append(((Date) value).getTime());
+        } else if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(e.getKey()), e.getValue());
+            }
+            out.append('{');
+            for (Map.Entry<String, Object> e : sorted.entrySet()) {
+                appendCanonical(out, e.getKey());
+                out.append('=');
+                appendCanonical(out, e.getValue());
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            for (Object element : (Collection<?>) value) {
+                appendCanonical(out, element);
+                out.append(',');
+            }
+            out.append(']');
+        } else if (value.getClass().getName().startsWith("com.strongdm.api.")) {
+            out.append(value.getClass().getSimpleName()).append('(');
+            for (Method getter : getters(value.getClass())) {
+                out.append(getter.getName()).append('=');
+                try {
+                    appendCanonical(out, getter.invoke(value));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("can't read " + getter, e);
+                }
+                out.append(',');
+            }
+            out.append(')');
+        } else {
+            // Durations, instants and other value types.
+            out.append(value.getClass().getSimpleName()).append(':').append(value);
+        }
+    }
+
+    private static Method[] getters(Class<?> type) {
+        return GETTERS.computeIfAbsent(
+                type,
+                t -> {
+                    List<Method> getters = new ArrayList<>();
+                    for (Method m : t.getMethods()) {
+                        String name = m.getName();
+                        if (m.getParameterCount() == 0
+                                && !Modifier.isStatic(m.getModifiers())
+                                && m.getReturnType() != void.class
+                                && (name.startsWith("get") || name.startsWith("is"))
+                                && !name.equals("getClass")
+                                && !IGNORED_GETTERS.contains(name)) {
+                            getters.add(m);
+                        }
+                    }
+                    getters.sort(Comparator.comparing(Method::getName));
+                    return getters.toArray(new Method[0]);
+                });
+    }
+
+    private static class Digest {
+        // By ID, then by listing position so the last listing of an ID
+        // sorts last.
+        static final Comparator<Digest> ORDER =
+                Comparator.<Digest, String>comparing(d -> d.id).thenComparingInt(d -> d.position);
+
+        final String id;
+        final long hash;
+        final int position;
+
+        Digest(String id, long hash, int position) {
+            this.id = id;
+            this.hash = hash;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+// SnapshotDifferBenchmark diffs two snapshots of a fake resource list,
+// without needing API keys:
+//
+//   gradle diffBenchmark --args="100000"
+//
+// The argument is the number of resources (100,000 by default). Between the
+// two snapshots, 1% of the resources are removed, 1% added and 2% modified.
+// The fake lists resources in shuffled order, a page at a time, building
+// each one as it is listed so the benchmark holds no more of them in memory
+// than a real listing would.
+public class SnapshotDifferBenchmark {
+    static final int PAGE_SIZE = 1000;
+    static final int PAGE_LATENCY_MS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int resources = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        FakeResourceApi api = new FakeResourceApi(resources);
+
+        SnapshotDiffer differ = new SnapshotDiffer();
+        // Warm up the reflection and hashing paths.
+        differ.diff(api.list(0), api.list(1), Resource::getId);
+
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        SnapshotDiffer.Changes changes = differ.diff(api.list(0), api.list(1), Resource::getId);
+        double secs = (System.nanoTime() - start) / 1e9;
+        long heapAfter = usedHeap();
+
+        System.out.printf(
+                "diffed %d + %d resources in %.2f s (%.0f resources/s)\n",
+                resources, resources, secs, 2 * resources / secs);
+        System.out.println(changes);
+        System.out.printf(
+                "%d pages of %d ms each; listing one snapshot alone takes %.2f s\n",
+                2 * ((resources + PAGE_SIZE - 1) / PAGE_SIZE),
+                PAGE_LATENCY_MS,
+                ((resources + PAGE_SIZE - 1) / PAGE_SIZE) * PAGE_LATENCY_MS / 1e3);
+        System.out.printf("heap growth: about %.1f MB\n", (heapAfter - heapBefore) / 1e6);
+
+        if (changes.getAdded().size() != api.expectedAdded
+                || changes.getRemoved().size() != api.expectedRemoved
+                || changes.getModified().size() != api.expectedModified) {
+            throw new IllegalStateException("diff doesn't match the changes made");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // FakeResourceApi serves two snapshots of a resource list. Resource i is
+    // removed from the second snapshot if i % 100 == 0, modified if
+    // i % 50 == 1, and resources past the end of the first snapshot are
+    // added, one for every hundred.
+    static class FakeResourceApi {
+        final int[] order;
+        final int[] afterOrder;
+        final int afterLength;
+        final int expectedAdded;
+        final int expectedRemoved;
+        final int expectedModified;
+
+        FakeResourceApi(int resources) {
+            int added = resources / 100;
+            order = shuffled(resources, 1);
+            int[] afterAll = shuffled(resources + added, 2);
+            int n = 0;
+            int removed = 0;
+            int modified = 0;
+            afterOrder = new int[afterAll.length];
+            for (int i : afterAll) {
+                if (i < resources && i % 100 == 0) {
+                    removed++;
+                    continue;
+                }
+                if (i < resources && i % 50 == 1) {
+                    modified++;
+                }
+                afterOrder[n++] = i;
+            }
+            expectedAdded = added;
+            expectedRemoved = removed;
+            expectedModified = modified;
+            afterLength = n;
+        }
+
+        Iterable<Resource> list(int snapshot) {
+            int[] ids = snapshot == 0 ? order : afterOrder;
+            int length = snapshot == 0 ? order.length : afterLength;
+            return () ->
+                    new Iterator<Resource>() {
+                        int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < length;
+                        }
+
+                        @Override
+                        public Resource next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            if (next % PAGE_SIZE == 0) {
+                                try {
+                                    Thread.sleep(PAGE_LATENCY_MS);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            return resource(ids[next++], snapshot);
+                        }
+                    };
+        }
+
+        private static Resource resource(int i, int snapshot) {
+            Redis redis = new Redis();
+            redis.setId("rs-" + Long.toHexString(i * 2654435761L & 0xFFFFFFFFFFFFL));
+            redis.setName("redis-" + i);
+            redis.setHostname("redis-" + i + ".internal");
+            redis.setPort(6379);
+            redis.setUsername("app");
+            redis.setTags(Map.of("team", "team-" + i % 40, "env", i % 3 == 0 ? "prod" : "dev"));
+            if (snapshot == 1 && i % 50 == 1) {
+                redis.setPort(6380);
+            }
+            return redis;
+        }
+
+        private static int[] shuffled(int n, long seed) {
+            int[] a = new int[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = i;
+            }
+            Random random = new Random(seed);
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+            return a;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+// ReplayExportBenchmark measures how fast ReplayExporter writes a synthetic
+// SSH session in each format. It runs offline, so no API keys are needed.
+// Run it with `gradle benchmark`.
+public class ReplayExportBenchmark {
+    static final long SESSION_BYTES = 256L * 1024 * 1024;
+    static final int EVENTS_PER_CHUNK = 1000;
+
+    interface Factory {
+        ReplayExporter create(Path file, Query query) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Terminal-like output: mostly printable text, with line breaks,
+        // escape sequences and some multi-byte characters, in events of a
+        // few bytes to a few kilobytes.
+        Random random = new Random(1);
+        List<ReplayChunkEvent> events = new ArrayList<>();
+        String[] fragments = {
+            "ls -la\r\n",
+            "\u001b[32mok\u001b[0m ",
+            "drwxr-xr-x ",
+            "h\u00e9llo w\u00f6rld ",
+            "\u20ac "
+        };
+        for (int i = 0; i < EVENTS_PER_CHUNK; i++) {
+            StringBuilder sb = new StringBuilder();
+            int size = 8 << random.nextInt(9);
+            while (sb.length() < size) {
+                sb.append(fragments[random.nextInt(fragments.length)]);
+            }
+            ReplayChunkEvent event = new ReplayChunkEvent();
+            event.setData(sb.toString().getBytes(StandardCharsets.UTF_8));
+            event.setDuration(Duration.ofMillis(random.nextInt(200)));
+            events.add(event);
+        }
+        ReplayChunk chunk = new ReplayChunk();
+        chunk.getEvents().addAll(events);
+        long chunkBytes = events.stream().mapToLong(e -> e.getData().length).sum();
+        int chunks = (int) (SESSION_BYTES / chunkBytes);
+
+        Query query = new Query();
+        query.setId("benchmark");
+        query.setTimestamp(new Date());
+
+        Path dir = Files.createTempDirectory("replay-export");
+        try {
+            System.out.printf(
+                    "Exporting a %d MB session of %d events\n",
+                    chunks * chunkBytes / (1024 * 1024), chunks * EVENTS_PER_CHUNK);
+            for (int round = 0; round < 2; round++) {
+                // The first round warms up the JIT.
+                boolean report = round == 1;
+                run(
+                        dir.resolve("session.cast"),
+                        query,
+                        chunk,
+                        chunks,
+                        chunkBytes,
+                        report,
+                        "asciicast",
+                        ReplayExporter::asciicast);
+                run(
+                        dir.resolve("session.sdmr"),
+                        query,
+                        chunk,
+                        chunks,
+                        chunkBytes,
+                        report,
+                        "binary",
+                        ReplayExporter::binary);
+            }
+        } finally {
+            Files.deleteIfExists(dir.resolve("session.cast"));
+            Files.deleteIfExists(dir.resolve("session.sdmr"));
+            Files.delete(dir);
+        }
+    }
+
+    static void run(
+            Path file,
+            Query query,
+            ReplayChunk chunk,
+            int chunks,
+            long chunkBytes,
+            boolean report,
+            String name,
+            Factory factory)
+            throws Exception {
+        long start = System.nanoTime();
+        long written;
+        try (ReplayExporter exporter = factory.create(file, query)) {
+            for (int i = 0; i < chunks; i++) {
+                exporter.write(List.of(chunk));
+            }
+            written = exporter.getBytesWritten();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (report) {
+            System.out.printf(
+                    "%-10s %8.1f MB/s of session data, %6d MB written\n",
+                    name, chunks * chunkBytes / seconds / (1024 * 1024), written / (1024 * 1024));
+        }
+    }
+}
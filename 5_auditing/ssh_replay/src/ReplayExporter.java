@@ -0,0 +1,393 @@
+// Copyright 2025 StrongDM Inc
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+import com.strongdm.api.*;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+// ReplayExporter writes the events of an SSH replay to a file as they are
+// read, so a session never has to fit in memory. Two formats are supported:
+//
+//   asciicast - asciinema's asciicast v2 format, which existing terminal
+//               players such as `asciinema play` can replay directly
+//   binary    - a compact archive format: the magic bytes "SDMR", a format
+//               version byte, the query ID, and then one record per event
+//               holding the event's duration in milliseconds and its data
+//               length as varints, followed by the data itself
+//
+// Binary archives can be read back with readBinary.
+public abstract class ReplayExporter implements AutoCloseable {
+    static final byte[] BINARY_MAGIC = {'S', 'D', 'M', 'R'};
+    static final byte BINARY_VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final FileChannel channel;
+    protected final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long bytesWritten;
+
+    protected ReplayExporter(Path file) throws IOException {
+        this.channel =
+                FileChannel.open(
+                        file,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public static ReplayExporter asciicast(Path file, Query query) throws IOException {
+        return new Asciicast(file, query);
+    }
+
+    public static ReplayExporter binary(Path file, Query query) throws IOException {
+        return new Binary(file, query);
+    }
+
+    // Writes every event of every chunk, pulling chunks from the iterable
+    // one at a time.
+    public void write(Iterable<ReplayChunk> chunks) throws IOException {
+        for (ReplayChunk chunk : chunks) {
+            for (ReplayChunkEvent event : chunk.getEvents()) {
+                writeEvent(event);
+            }
+        }
+    }
+
+    public abstract void writeEvent(ReplayChunkEvent event) throws IOException;
+
+    public long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    protected void ensureRemaining(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    protected void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Writes data that may be larger than the buffer, going straight to the
+    // channel once the buffer can't hold it.
+    protected void writeBytes(byte[] data) throws IOException {
+        writeBytes(data, data.length);
+    }
+
+    protected void writeBytes(byte[] data, int length) throws IOException {
+        if (length <= buffer.remaining()) {
+            buffer.put(data, 0, length);
+            return;
+        }
+        flush();
+        if (length <= buffer.remaining()) {
+            buffer.put(data, 0, length);
+            return;
+        }
+        ByteBuffer direct = ByteBuffer.wrap(data, 0, length);
+        while (direct.hasRemaining()) {
+            bytesWritten += channel.write(direct);
+        }
+    }
+
+    private static class Asciicast extends ReplayExporter {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        // Terminal output can split a multi-byte character across events, so
+        // one decoder carries any incomplete sequence over to the next event.
+        private final CharsetDecoder decoder =
+                StandardCharsets.UTF_8
+                        .newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+        private CharBuffer text = CharBuffer.allocate(BUFFER_SIZE);
+        private byte[] line = new byte[BUFFER_SIZE];
+        private long elapsedNanos;
+
+        Asciicast(Path file, Query query) throws IOException {
+            super(file);
+            StringBuilder header =
+                    new StringBuilder("{\"version\": 2, \"width\": 80, \"height\": 24");
+            if (query.getTimestamp() != null) {
+                header.append(", \"timestamp\": ").append(query.getTimestamp().getTime() / 1000);
+            }
+            if (query.getId() != null) {
+                header.append(", \"title\": ").append(jsonString(query.getId()));
+            }
+            header.append("}\n");
+            writeBytes(header.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void writeEvent(ReplayChunkEvent event) throws IOException {
+            byte[] data = event.getData();
+            if (pending.remaining() < data.length) {
+                ByteBuffer larger =
+                        ByteBuffer.allocate(
+                                Math.max(pending.capacity() * 2, pending.position() + data.length));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            pending.put(data);
+            writeOutput(false);
+            elapsedNanos += event.getDuration().toNanos();
+        }
+
+        // A session that ends part way through a character leaves bytes
+        // pending; they are written as U+FFFD in one last event.
+        @Override
+        public void close() throws IOException {
+            try {
+                if (pending.position() > 0) {
+                    writeOutput(true);
+                }
+            } finally {
+                super.close();
+            }
+        }
+
+        // Decodes the pending bytes and writes them as an output event at
+        // elapsedNanos. Unless endOfInput, an incomplete sequence at the end
+        // is kept for the next event.
+        private void writeOutput(boolean endOfInput) throws IOException {
+            pending.flip();
+            if (text.capacity() < pending.remaining()) {
+                text = CharBuffer.allocate(pending.remaining());
+            }
+            text.clear();
+            decoder.decode(pending, text, endOfInput);
+            if (endOfInput) {
+                decoder.flush(text);
+            }
+            pending.compact();
+            text.flip();
+
+            // Escaping can grow each character to six bytes, for control
+            // characters written as six-character JSON escapes.
+            int needed = text.remaining() * 6 + 64;
+            if (line.length < needed) {
+                line = new byte[needed];
+            }
+            int n = 0;
+            line[n++] = '[';
+            long micros = elapsedNanos / 1000;
+            n = putAscii(line, n, Long.toString(micros / 1_000_000));
+            line[n++] = '.';
+            n = putAscii(line, n, Long.toString(1_000_000 + micros % 1_000_000).substring(1));
+            n = putAscii(line, n, ", \"o\", \"");
+            n = escape(text.array(), text.position(), text.limit(), line, n);
+            n = putAscii(line, n, "\"]\n");
+            writeBytes(line, n);
+        }
+
+        private static int putAscii(byte[] out, int n, String s) {
+            for (int i = 0; i < s.length(); i++) {
+                out[n++] = (byte) s.charAt(i);
+            }
+            return n;
+        }
+
+        // Writes chars[from, to) as the UTF-8 bytes of a JSON string body.
+        private static int escape(char[] chars, int from, int to, byte[] out, int n) {
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c >= 0x20 && c < 0x7f && c != '"' && c != '\\') {
+                    out[n++] = (byte) c;
+                } else if (c < 0x80) {
+                    out[n++] = '\\';
+                    switch (c) {
+                        case '"':
+                        case '\\':
+                            out[n++] = (byte) c;
+                            break;
+                        case '\n':
+                            out[n++] = 'n';
+                            break;
+                        case '\r':
+                            out[n++] = 'r';
+                            break;
+                        case '\t':
+                            out[n++] = 't';
+                            break;
+                        default:
+                            out[n++] = 'u';
+                            out[n++] = '0';
+                            out[n++] = '0';
+                            out[n++] = (byte) HEX[c >> 4];
+                            out[n++] = (byte) HEX[c & 0xF];
+                    }
+                } else if (c < 0x800) {
+                    out[n++] = (byte) (0xC0 | (c >> 6));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c)
+                        && i + 1 < to
+                        && Character.isLowSurrogate(chars[i + 1])) {
+                    int cp = Character.toCodePoint(c, chars[++i]);
+                    out[n++] = (byte) (0xF0 | (cp >> 18));
+                    out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    if (Character.isSurrogate(c)) {
+                        c = '\uFFFD';
+                    }
+                    out[n++] = (byte) (0xE0 | (c >> 12));
+                    out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+
+        private static String jsonString(String s) {
+            byte[] out = new byte[s.length() * 6];
+            int n = escape(s.toCharArray(), 0, s.length(), out, 0);
+            return '"' + new String(out, 0, n, StandardCharsets.UTF_8) + '"';
+        }
+    }
+
+    private static class Binary extends ReplayExporter {
+        Binary(Path file, Query query) throws IOException {
+            super(file);
+            buffer.put(BINARY_MAGIC);
+            buffer.put(BINARY_VERSION);
+            String queryId = query.getId() == null ? "" : query.getId();
+            byte[] id = queryId.getBytes(StandardCharsets.UTF_8);
+            writeVarint(id.length);
+            writeBytes(id);
+        }
+
+        @Override
+        public void writeEvent(ReplayChunkEvent event) throws IOException {
+            byte[] data = event.getData();
+            ensureRemaining(20);
+            writeVarint(event.getDuration().toMillis());
+            writeVarint(data.length);
+            writeBytes(data);
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+    }
+
+    // Reads a binary archive written by ReplayExporter.binary, handing each
+    // event to the sink in order. The sink can be a ReplayScheduler playback
+    // or another exporter.
+    public static String readBinary(Path file, ReplayScheduler.Sink sink) throws Exception {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryReader reader = new BinaryReader(in);
+            for (byte b : BINARY_MAGIC) {
+                if (reader.readByte() != b) {
+                    throw new IOException(file + " is not a replay archive");
+                }
+            }
+            if (reader.readByte() != BINARY_VERSION) {
+                throw new IOException(file + " has an unsupported archive version");
+            }
+            String queryId =
+                    new String(reader.readBytes((int) reader.readVarint()), StandardCharsets.UTF_8);
+            while (reader.hasMore()) {
+                ReplayChunkEvent event = new ReplayChunkEvent();
+                event.setDuration(Duration.ofMillis(reader.readVarint()));
+                event.setData(reader.readBytes((int) reader.readVarint()));
+                sink.write(event);
+            }
+            return queryId;
+        }
+    }
+
+    private static class BinaryReader {
+        private final FileChannel in;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        BinaryReader(FileChannel in) {
+            this.in = in;
+            buffer.flip();
+        }
+
+        boolean hasMore() throws IOException {
+            return buffer.hasRemaining() || fill();
+        }
+
+        byte readByte() throws IOException {
+            if (!hasMore()) {
+                throw new EOFException("replay archive is truncated");
+            }
+            return buffer.get();
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed varint in replay archive");
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            byte[] out = new byte[n];
+            int off = 0;
+            while (off < n) {
+                if (!hasMore()) {
+                    throw new EOFException("replay archive is truncated");
+                }
+                int len = Math.min(n - off, buffer.remaining());
+                buffer.get(out, off, len);
+                off += len;
+            }
+            return out;
+        }
+
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int n = in.read(buffer);
+            buffer.flip();
+            return n > 0;
+        }
+    }
+}
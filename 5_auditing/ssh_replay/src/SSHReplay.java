@@ -14,9 +14,13 @@
 //
 import com.strongdm.api.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import org.json.JSONObject;
 
 public class SSHReplay {
+    // How many events of a session may wait to be played.
+    static final int PLAYBACK_BUFFER = 4096;
+
     public static void main(String[] args) {
         // Load the SDM API keys from the environment.
         // If these values are not set in your environment,
@@ -45,12 +49,37 @@ public class SSHReplay {
             }
             System.out.printf("Queries made against %s:\n", resourceName);
 
+            // Load the account history once, rather than looking up the
+            // account behind every query with its own snapshot request.
+            AccountResolver accounts = AccountResolver.load(client);
+
+            // Replays are played back on a scheduler rather than by sleeping
+            // between events. Set SDM_REPLAY_SPEED to "10" or "max" to play
+            // them faster, and SDM_REPLAY_IDLE_LIMIT_MS to skip idle time.
+            ReplayScheduler.Options playbackOpts = ReplayScheduler.Options.fromEnvironment();
+            ReplayScheduler scheduler = new ReplayScheduler(1);
+
+            // Set SDM_REPLAY_EXPORT_DIR to write replays to files instead of
+            // playing them: asciicast v2 files by default, which terminal
+            // players such as asciinema can play, or compact binary archives
+            // if SDM_REPLAY_EXPORT_FORMAT is "binary".
+            String exportDir = System.getenv("SDM_REPLAY_EXPORT_DIR");
+            boolean exportBinary = "binary".equals(System.getenv("SDM_REPLAY_EXPORT_FORMAT"));
+
+            // Every stage records how long it takes, for a report at the end.
+            // Set SDM_REPLAY_METRICS_FILE to also write the numbers in the
+            // Prometheus text format.
+            ReplayMetrics metrics = new ReplayMetrics("ssh_replay");
+            ReplayMetrics.Stage accountLookups = metrics.stage("account_lookup");
+            ReplayMetrics.Stage listChunks = metrics.stage("list_chunks");
+
             Iterable<Query> queryIterator =
                     client.queries().list("resource_id:?", resource.getId());
-            for (Query q : queryIterator) {
-                AccountGetResponse accountResponse =
-                        client.snapshotAt(q.getTimestamp()).accounts().get(q.getAccountId());
-                User user = (User) accountResponse.getAccount();
+            for (Query q : ReplayMetrics.timed(metrics.stage("list_queries"), queryIterator)) {
+                metrics.counter("queries").increment();
+                long start = System.nanoTime();
+                User user = (User) accounts.get(q.getAccountId(), q.getTimestamp());
+                accountLookups.record(start);
 
                 if (q.getEncrypted()) {
                     System.out.printf(
@@ -58,27 +87,76 @@ public class SSHReplay {
                             user.getEmail(), q.getTimestamp());
                     System.out.println(
                             "See encrypted_query_replay for an example of query decryption.");
+                } else if (q.getReplayable() && exportDir != null) {
+                    Path file = Path.of(exportDir, q.getId() + (exportBinary ? ".sdmr" : ".cast"));
+                    // The export time includes listing the chunks, which
+                    // happens as they are written.
+                    start = System.nanoTime();
+                    try (ReplayExporter exporter =
+                            exportBinary
+                                    ? ReplayExporter.binary(file, q)
+                                    : ReplayExporter.asciicast(file, q)) {
+                        exporter.write(
+                                ReplayMetrics.timed(
+                                        listChunks, client.replays().list("id:?", q.getId())));
+                        metrics.counter("export_bytes").add(exporter.getBytesWritten());
+                    }
+                    metrics.stage("export").record(start);
+                    System.out.printf(
+                            "Exported query made by %s at %s to %s\n",
+                            user.getEmail(), q.getTimestamp(), file);
                 } else if (q.getReplayable()) {
                     System.out.printf(
                             "Replaying query made by %s at %s\n",
                             user.getEmail(), q.getTimestamp());
-                    Iterable<ReplayChunk> replayChunks = client.replays().list("id:?", q.getId());
-                    for (ReplayChunk chunk : replayChunks) {
-                        for (ReplayChunkEvent ev : chunk.getEvents()) {
-                            // Some characters may not be printed cleanly by this method
-                            String data = new String(ev.getData(), StandardCharsets.UTF_8);
-                            System.out.print(data);
-                            Thread.sleep(ev.getDuration().toMillis());
+                    // Playback starts with the first chunk and the rest are
+                    // added as they are listed, so only a bounded number of
+                    // events is held at a time. The playback time includes
+                    // listing the chunks.
+                    ReplayScheduler.Session session =
+                            ReplayScheduler.Session.streaming(PLAYBACK_BUFFER);
+                    start = System.nanoTime();
+                    ReplayScheduler.Playback playback =
+                            scheduler.play(
+                                    session,
+                                    playbackOpts,
+                                    ev -> {
+                                        // Some characters may not be printed cleanly by this method
+                                        String data =
+                                                new String(ev.getData(), StandardCharsets.UTF_8);
+                                        System.out.print(data);
+                                    });
+                    try {
+                        for (ReplayChunk chunk :
+                                ReplayMetrics.timed(
+                                        listChunks, client.replays().list("id:?", q.getId()))) {
+                            metrics.counter("events").add(chunk.getEvents().size());
+                            session.addAll(chunk.getEvents());
                         }
-                        System.out.println();
+                    } catch (Exception e) {
+                        playback.cancel();
+                        throw e;
+                    } finally {
+                        session.end();
                     }
+                    playback.await();
+                    metrics.stage("playback").record(start);
+                    System.out.println();
                 } else {
+                    start = System.nanoTime();
                     String command = new JSONObject(q.getQueryBody()).optString("command");
+                    metrics.stage("json_parse").record(start);
                     System.out.printf(
                             "Command run by %s at %s: %s\n",
                             user.getEmail(), q.getTimestamp(), command);
                 }
             }
+            scheduler.close();
+            System.out.print(metrics.report());
+            String metricsFile = System.getenv("SDM_REPLAY_METRICS_FILE");
+            if (metricsFile != null) {
+                metrics.writePrometheus(Path.of(metricsFile));
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }